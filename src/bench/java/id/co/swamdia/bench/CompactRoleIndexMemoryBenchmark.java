@@ -0,0 +1,90 @@
+package id.co.swamdia.bench;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.index.CompactRoleIndex;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Membandingkan heap per role antara entity yang di-load Hibernate dan
+ * CompactRoleIndex untuk realm dengan banyak role.
+ *
+ * mvn -Pbench compile exec:java -Dexec.mainClass=id.co.swamdia.bench.CompactRoleIndexMemoryBenchmark
+ * -Dbench.roles=500000
+ */
+public class CompactRoleIndexMemoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int roleCount = Integer.getInteger("bench.roles", 500_000);
+        String realmId = UUID.randomUUID().toString();
+
+        String[] ids = new String[roleCount];
+        String[] names = new String[roleCount];
+        String[] descriptions = new String[roleCount];
+        for (int i = 0; i < roleCount; i++) {
+            ids[i] = UUID.randomUUID().toString();
+            names[i] = "app-role-" + i;
+            descriptions[i] = i % 4 == 0 ? null : "Role " + i + " for application access";
+        }
+
+        long baseline = usedHeap();
+
+        // Entity seperti hasil load Hibernate: string realm/client per baris, dua
+        // LocalDateTime, dan snapshot loaded state (Object[]) untuk dirty checking
+        List<Object> entities = new ArrayList<>(roleCount);
+        for (int i = 0; i < roleCount; i++) {
+            CustomRoleEntity entity = new CustomRoleEntity();
+            entity.setId(new String(ids[i]));
+            entity.setName(new String(names[i]));
+            entity.setDescription(descriptions[i] != null ? new String(descriptions[i]) : null);
+            entity.setRealmId(new String(realmId));
+            entity.setCreatedAt(LocalDateTime.now());
+            entity.setUpdatedAt(LocalDateTime.now());
+            entities.add(entity);
+            entities.add(new Object[] { entity.getId(), entity.getName(), entity.getDescription(),
+                    entity.getRealmId(), null, entity.getCreatedAt(), entity.getUpdatedAt() });
+        }
+        long entityBytes = usedHeap() - baseline;
+        int sink = entities.size();
+        entities = null;
+
+        baseline = usedHeap();
+        CompactRoleIndex.Builder builder = CompactRoleIndex.builder(realmId);
+        for (int i = 0; i < roleCount; i++) {
+            builder.add(ids[i], names[i], descriptions[i]);
+        }
+        CompactRoleIndex index = builder.build();
+        builder = null;
+        long indexBytes = usedHeap() - baseline;
+
+        // Pastikan index benar-benar bisa dipakai
+        int probe = roleCount / 2;
+        if (index.findByName(names[probe]) < 0 || index.findById(ids[probe]) < 0) {
+            throw new IllegalStateException("Compact index lookup failed");
+        }
+
+        System.out.printf("Roles:                      %,d%n", roleCount);
+        System.out.printf("Entities + snapshots:       %,d bytes (%.1f bytes/role)%n",
+                entityBytes, (double) entityBytes / roleCount);
+        System.out.printf("Compact index (measured):   %,d bytes (%.1f bytes/role)%n",
+                indexBytes, (double) indexBytes / roleCount);
+        System.out.printf("Compact index (estimated):  %,d bytes (%.1f bytes/role)%n",
+                index.estimatedBytes(), (double) index.estimatedBytes() / roleCount);
+        System.out.printf("Reduction:                  %.1fx%n", (double) entityBytes / indexBytes);
+        System.out.printf("(kept alive: %d, %d)%n", sink, index.size());
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
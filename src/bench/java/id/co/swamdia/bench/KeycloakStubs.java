@@ -0,0 +1,111 @@
+package id.co.swamdia.bench;
+
+import org.keycloak.models.KeycloakContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.provider.ProviderFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Stub KeycloakSession/RealmModel berbasis java.lang.reflect.Proxy.
+ * Hanya method yang dipakai provider dan event listener yang diisi; method
+ * lain mengembalikan nilai default (null, 0, false).
+ */
+final class KeycloakStubs {
+
+    private KeycloakStubs() {
+    }
+
+    static RealmModel realm(String id, String name) {
+        return proxy(RealmModel.class, Map.of("getId", id, "getName", name));
+    }
+
+    /**
+     * Session dengan context tanpa realm dan realms() yang mengenal realm ini saja
+     */
+    static KeycloakSession session(RealmModel realm) {
+        KeycloakContext context = proxy(KeycloakContext.class, Map.of());
+        RealmProvider realms = (RealmProvider) Proxy.newProxyInstance(KeycloakStubs.class.getClassLoader(),
+                new Class<?>[] { RealmProvider.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("getRealm") && args != null && args.length == 1
+                            && realm.getId().equals(args[0])) {
+                        return realm;
+                    }
+                    return defaultValue(method.getReturnType());
+                });
+        return proxy(KeycloakSession.class, Map.of("getContext", context, "realms", realms));
+    }
+
+    /**
+     * Session factory yang hanya mengenal satu provider factory (untuk postInit
+     * event listener factory)
+     */
+    static KeycloakSessionFactory sessionFactory(ProviderFactory<?> providerFactory) {
+        return (KeycloakSessionFactory) Proxy.newProxyInstance(KeycloakStubs.class.getClassLoader(),
+                new Class<?>[] { KeycloakSessionFactory.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("getProviderFactory") && args != null && args.length == 2
+                            && providerFactory.getId().equals(args[1])) {
+                        return providerFactory;
+                    }
+                    return defaultValue(method.getReturnType());
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Map<String, Object> answers) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return type.getSimpleName() + answers;
+                }
+            }
+            if ((args == null || args.length == 0) && answers.containsKey(method.getName())) {
+                return answers.get(method.getName());
+            }
+            return defaultValue(method.getReturnType());
+        };
+        return (T) Proxy.newProxyInstance(KeycloakStubs.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == Stream.class) {
+            return Stream.empty();
+        }
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
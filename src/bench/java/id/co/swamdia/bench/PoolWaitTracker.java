@@ -0,0 +1,50 @@
+package id.co.swamdia.bench;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * MetricsTrackerFactory Hikari untuk load harness: mencatat waktu tunggu
+ * connection dari pool dan jumlah timeout. Dipasang lewat
+ * hikaricp.configurationFile (metricsTrackerFactory=...) sehingga
+ * DatabaseService tidak perlu diubah.
+ */
+public class PoolWaitTracker implements MetricsTrackerFactory {
+
+    static final AtomicReference<LatencyHistogram> INTERVAL = new AtomicReference<>(new LatencyHistogram());
+    static final AtomicLong TIMEOUTS = new AtomicLong();
+    static final Map<String, PoolStats> POOLS = new ConcurrentHashMap<>();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        POOLS.put(poolName, poolStats);
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                INTERVAL.get().recordNanos(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                TIMEOUTS.incrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Jumlah thread yang sedang menunggu connection di semua pool
+     */
+    static int pendingThreads() {
+        int pending = 0;
+        for (PoolStats stats : POOLS.values()) {
+            pending += stats.getPendingThreads();
+        }
+        return pending;
+    }
+}
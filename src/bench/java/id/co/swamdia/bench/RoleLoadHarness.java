@@ -0,0 +1,421 @@
+package id.co.swamdia.bench;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.event.RoleEventListenerFactory;
+import id.co.swamdia.provider.CustomRoleStorageProvider;
+import id.co.swamdia.provider.CustomRoleStorageProviderFactory;
+import id.co.swamdia.repository.RoleChangeListener;
+import id.co.swamdia.repository.RoleChangeNotifier;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import org.keycloak.component.ComponentModel;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.storage.StorageId;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Load/soak harness: banyak thread yang masing-masing mensimulasikan session
+ * Keycloak (provider baru per operasi) dengan campuran getRoleById, search di
+ * admin console, dan write lewat RoleEventListener. Provider dan listener
+ * dibuat lewat factory asli, jadi semua fitur yang diaktifkan lewat system
+ * property quarkus.datasource.user-store.* ikut teruji.
+ *
+ * Laporan per interval: throughput, p50/p99/p999 per jenis operasi, waktu
+ * tunggu connection pool (Hikari), thread yang antri di pool, dan error.
+ *
+ * mvn -Pbench compile exec:java -Dexec.mainClass=id.co.swamdia.bench.RoleLoadHarness
+ * -Dbench.jdbc.url=jdbc:postgresql://localhost:5432/roles -Dbench.username=... -Dbench.password=...
+ * -Dbench.threads=500 -Dbench.duration-s=300 -Dbench.mix=read=90,search=8,write=2
+ *
+ * Tanpa bench.jdbc.url dipakai embedded PostgreSQL (tidak bisa dijalankan sebagai root).
+ */
+public class RoleLoadHarness {
+
+    enum Operation {
+        READ, SEARCH, WRITE
+    }
+
+    private static final String COMPONENT_ID = "bench-role-storage";
+
+    // Log INFO per operasi dari provider akan menenggelamkan laporan; disimpan supaya level tidak di-GC
+    private static final Logger PROVIDER_LOGGER = Logger.getLogger("id.co.swamdia");
+    private static final Logger HIBERNATE_LOGGER = Logger.getLogger("org.hibernate");
+
+    private final int threads = Integer.getInteger("bench.threads", 500);
+    private final int realmCount = Integer.getInteger("bench.realms", 1);
+    private final int rolesPerRealm = Integer.getInteger("bench.roles", 10_000);
+    private final int clientsPerRealm = Integer.getInteger("bench.clients", 20);
+    private final long durationSeconds = Long.getLong("bench.duration-s", 60L);
+    private final long warmupSeconds = Long.getLong("bench.warmup-s", 10L);
+    private final long reportSeconds = Long.getLong("bench.report-s", 5L);
+    private final int[] mix = parseMix(System.getProperty("bench.mix", "read=90,search=8,write=2"));
+
+    private final Map<Operation, AtomicReference<LatencyHistogram>> intervalLatency = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram> totalLatency = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> intervalErrors = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> totalErrors = new EnumMap<>(Operation.class);
+    private final LatencyHistogram totalPoolWait = new LatencyHistogram();
+    private final AtomicReference<Throwable> lastError = new AtomicReference<>();
+
+    // Diisi RoleChangeNotifier saat write benar-benar di-commit oleh listener
+    private final ThreadLocal<Boolean> writeApplied = ThreadLocal.withInitial(() -> false);
+
+    private final List<RealmModel> realms = new ArrayList<>();
+    private final Map<String, KeycloakSession> sessions = new HashMap<>();
+    private final Map<String, List<String[]>> roles = new HashMap<>();
+
+    private CustomRoleStorageProviderFactory providerFactory;
+    private RoleEventListenerFactory listenerFactory;
+    private ComponentModel componentModel;
+    private long measuredNanos;
+
+    public static void main(String[] args) throws Exception {
+        Level level = Level.parse(System.getProperty("bench.log-level", "WARNING"));
+        PROVIDER_LOGGER.setLevel(level);
+        HIBERNATE_LOGGER.setLevel(level);
+        new RoleLoadHarness().run();
+    }
+
+    private void run() throws Exception {
+        for (Operation operation : Operation.values()) {
+            intervalLatency.put(operation, new AtomicReference<>(new LatencyHistogram()));
+            totalLatency.put(operation, new LatencyHistogram());
+            intervalErrors.put(operation, new AtomicLong());
+            totalErrors.put(operation, new AtomicLong());
+        }
+
+        EmbeddedPostgres embedded = null;
+        String jdbcUrl = System.getProperty("bench.jdbc.url");
+        String username = System.getProperty("bench.username", "postgres");
+        String password = System.getProperty("bench.password", "postgres");
+        if (jdbcUrl == null) {
+            System.out.println("bench.jdbc.url not set, starting embedded PostgreSQL");
+            embedded = EmbeddedPostgres.start();
+            jdbcUrl = embedded.getJdbcUrl("postgres", "postgres");
+            username = "postgres";
+            password = "postgres";
+        }
+
+        try {
+            setUp(jdbcUrl, username, password);
+            seed(jdbcUrl, username, password);
+            runLoad();
+        } finally {
+            if (providerFactory != null) {
+                providerFactory.close();
+            }
+            if (listenerFactory != null) {
+                listenerFactory.close();
+            }
+            if (embedded != null) {
+                embedded.close();
+            }
+        }
+    }
+
+    private void setUp(String jdbcUrl, String username, String password) throws IOException {
+        // Pasang PoolWaitTracker ke semua pool Hikari yang dibuat DatabaseService
+        Path hikariProperties = Files.createTempFile("bench-hikari", ".properties");
+        hikariProperties.toFile().deleteOnExit();
+        try (Writer writer = Files.newBufferedWriter(hikariProperties)) {
+            writer.write("metricsTrackerFactory=" + PoolWaitTracker.class.getName() + "\n");
+        }
+        System.setProperty("hikaricp.configurationFile", hikariProperties.toString());
+
+        System.setProperty("quarkus.datasource.user-store.jdbc.url", jdbcUrl);
+        System.setProperty("quarkus.datasource.user-store.username", username);
+        System.setProperty("quarkus.datasource.user-store.password", password);
+
+        providerFactory = new CustomRoleStorageProviderFactory();
+        providerFactory.init(null);
+        listenerFactory = new RoleEventListenerFactory();
+        listenerFactory.init(null);
+        listenerFactory.postInit(KeycloakStubs.sessionFactory(providerFactory));
+
+        componentModel = new ComponentModel();
+        componentModel.setId(COMPONENT_ID);
+        componentModel.setProviderId(providerFactory.getId());
+
+        for (int i = 0; i < realmCount; i++) {
+            RealmModel realm = KeycloakStubs.realm("bench-realm-" + i, "bench-realm-" + i);
+            realms.add(realm);
+            sessions.put(realm.getId(), KeycloakStubs.session(realm));
+        }
+
+        RoleChangeNotifier.register(new RoleChangeListener() {
+            @Override
+            public void onRoleSaved(CustomRoleEntity role, boolean created) {
+                writeApplied.set(true);
+            }
+
+            @Override
+            public void onRoleDeleted(CustomRoleEntity role) {
+                writeApplied.set(true);
+            }
+
+            @Override
+            public void onRolesPurged(String realmId, String clientId) {
+                writeApplied.set(true);
+            }
+        });
+    }
+
+    /**
+     * Isi tabel sampai setiap realm punya bench.roles role (sebagian client role),
+     * lalu muat (id, nama, client) untuk dipakai workload
+     */
+    private void seed(String jdbcUrl, String username, String password) throws SQLException {
+        String insert = "INSERT INTO custom_roles (id, name, description, realm_id, client_id, created_at, updated_at) "
+                + "VALUES (?, ?, ?, ?, ?, now(), now()) ON CONFLICT DO NOTHING";
+        String select = "SELECT id, name, client_id FROM custom_roles WHERE realm_id = ?";
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, username, password)) {
+            connection.setAutoCommit(false);
+            for (RealmModel realm : realms) {
+                long start = System.nanoTime();
+                try (PreparedStatement statement = connection.prepareStatement(insert)) {
+                    for (int i = 0; i < rolesPerRealm; i++) {
+                        String clientId = clientsPerRealm > 0 && i % 4 == 0
+                                ? "bench-client-" + (i % clientsPerRealm) : null;
+                        // Tanpa tipe (OTHER) supaya cocok dengan kolom id varchar maupun uuid
+                        statement.setObject(1, UUID.nameUUIDFromBytes((realm.getId() + "/" + i).getBytes()).toString(),
+                                Types.OTHER);
+                        statement.setString(2, "role-" + i);
+                        statement.setString(3, "Bench role " + i + " for load testing");
+                        statement.setString(4, realm.getId());
+                        statement.setString(5, clientId);
+                        statement.addBatch();
+                        if (i % 1000 == 999) {
+                            statement.executeBatch();
+                        }
+                    }
+                    statement.executeBatch();
+                }
+                connection.commit();
+
+                List<String[]> realmRoles = new ArrayList<>();
+                try (PreparedStatement statement = connection.prepareStatement(select)) {
+                    statement.setString(1, realm.getId());
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            realmRoles.add(new String[] { resultSet.getString(1), resultSet.getString(2),
+                                    resultSet.getString(3) });
+                        }
+                    }
+                }
+                connection.commit();
+                roles.put(realm.getId(), realmRoles);
+                System.out.printf("Seeded realm %s: %,d roles in %d ms%n", realm.getId(), realmRoles.size(),
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+    }
+
+    private void runLoad() throws InterruptedException {
+        long start = System.nanoTime();
+        long warmupEnd = start + warmupSeconds * 1_000_000_000L;
+        long end = warmupEnd + durationSeconds * 1_000_000_000L;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> workerLoop(end), "bench-session-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+
+        System.out.printf("Running %d sessions for %ds (+%ds warmup), mix read/search/write = %d/%d/%d%n",
+                threads, durationSeconds, warmupSeconds, mix[0], mix[1], mix[2]);
+        System.out.printf("%6s %-7s %10s %9s %9s %9s %7s | %9s %9s %8s %7s%n", "time", "op", "ops/s", "p50 ms",
+                "p99 ms", "p999 ms", "errors", "pool p99", "pool p999", "pending", "p.tmo");
+
+        long lastReport = start;
+        while (System.nanoTime() < end) {
+            Thread.sleep(reportSeconds * 1000);
+            long now = System.nanoTime();
+            // Interval yang dimulai sebelum warmup selesai tidak masuk ringkasan
+            boolean measured = lastReport >= warmupEnd;
+            if (measured) {
+                measuredNanos += now - lastReport;
+            }
+            report(now, start, now - lastReport, measured);
+            lastReport = now;
+        }
+        for (Thread worker : workers) {
+            worker.join(5000);
+        }
+
+        printSummary();
+    }
+
+    private void workerLoop(long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            RealmModel realm = realms.get(random.nextInt(realms.size()));
+            int pick = random.nextInt(mix[0] + mix[1] + mix[2]);
+            Operation operation = pick < mix[0] ? Operation.READ
+                    : pick < mix[0] + mix[1] ? Operation.SEARCH : Operation.WRITE;
+
+            long started = System.nanoTime();
+            boolean ok;
+            try {
+                switch (operation) {
+                    case READ:
+                        ok = read(realm, random);
+                        break;
+                    case SEARCH:
+                        ok = search(realm, random);
+                        break;
+                    default:
+                        ok = write(realm, random);
+                }
+            } catch (RuntimeException e) {
+                lastError.set(e);
+                ok = false;
+            }
+            intervalLatency.get(operation).get().recordNanos(System.nanoTime() - started);
+            if (!ok) {
+                intervalErrors.get(operation).incrementAndGet();
+            }
+        }
+    }
+
+    private boolean read(RealmModel realm, ThreadLocalRandom random) {
+        List<String[]> realmRoles = roles.get(realm.getId());
+        String[] role = realmRoles.get(random.nextInt(realmRoles.size()));
+        CustomRoleStorageProvider provider = providerFactory.create(sessions.get(realm.getId()), componentModel);
+        try {
+            RoleModel model = provider.getRoleById(realm, new StorageId(COMPONENT_ID, role[0]).getId());
+            return model != null;
+        } finally {
+            provider.close();
+        }
+    }
+
+    private boolean search(RealmModel realm, ThreadLocalRandom random) {
+        // Term pendek seperti yang diketik di admin console
+        String term = "role-" + random.nextInt(100);
+        CustomRoleStorageProvider provider = providerFactory.create(sessions.get(realm.getId()), componentModel);
+        try {
+            provider.searchForRolesStream(realm, term, 0, 20).count();
+            return true;
+        } finally {
+            provider.close();
+        }
+    }
+
+    private boolean write(RealmModel realm, ThreadLocalRandom random) {
+        List<String[]> realmRoles = roles.get(realm.getId());
+        String[] role = realmRoles.get(random.nextInt(realmRoles.size()));
+        String roleName = role[1];
+        String clientId = role[2];
+
+        AdminEvent event = new AdminEvent();
+        event.setRealmId(realm.getId());
+        event.setOperationType(OperationType.UPDATE);
+        event.setResourceType(clientId != null ? ResourceType.CLIENT_ROLE : ResourceType.REALM_ROLE);
+        event.setResourcePath((clientId != null ? "clients/" + clientId + "/" : "") + "roles/" + roleName);
+        event.setRepresentation("{\"name\":\"" + roleName + "\",\"description\":\"Updated "
+                + random.nextLong() + "\",\"composite\":false,\"clientRole\":" + (clientId != null) + "}");
+
+        writeApplied.set(false);
+        EventListenerProvider listener = listenerFactory.create(sessions.get(realm.getId()));
+        try {
+            listener.onEvent(event, true);
+        } finally {
+            listener.close();
+        }
+        return writeApplied.get();
+    }
+
+    private void report(long now, long start, long intervalNanos, boolean measured) {
+        double seconds = intervalNanos / 1e9;
+        LatencyHistogram poolWait = PoolWaitTracker.INTERVAL.getAndSet(new LatencyHistogram());
+        if (measured) {
+            poolWait.addTo(totalPoolWait);
+        }
+
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = intervalLatency.get(operation).getAndSet(new LatencyHistogram());
+            long errors = intervalErrors.get(operation).getAndSet(0);
+            if (measured) {
+                latency.addTo(totalLatency.get(operation));
+                totalErrors.get(operation).addAndGet(errors);
+            }
+            String pool = operation == Operation.READ
+                    ? String.format("%9s %9s %8d %7d", millis(poolWait.percentileMicros(99)),
+                            millis(poolWait.percentileMicros(99.9)), PoolWaitTracker.pendingThreads(),
+                            PoolWaitTracker.TIMEOUTS.get())
+                    : "";
+            System.out.printf("%5ds %-7s %10.0f %9s %9s %9s %7d | %s%s%n", (now - start) / 1_000_000_000L,
+                    operation.name().toLowerCase(), latency.count() / seconds,
+                    millis(latency.percentileMicros(50)), millis(latency.percentileMicros(99)),
+                    millis(latency.percentileMicros(99.9)), errors, pool, measured ? "" : " (warmup)");
+        }
+        Throwable error = lastError.getAndSet(null);
+        if (error != null) {
+            System.out.println("  last error: " + error);
+        }
+    }
+
+    private void printSummary() {
+        System.out.println();
+        double seconds = Math.max(measuredNanos, 1) / 1e9;
+        System.out.printf("Summary (%.0fs measured, %d sessions)%n", seconds, threads);
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = totalLatency.get(operation);
+            System.out.printf("  %-7s %,12d ops %10.0f ops/s  p50 %s ms  p99 %s ms  p999 %s ms  errors %d%n",
+                    operation.name().toLowerCase(), latency.count(), latency.count() / seconds,
+                    millis(latency.percentileMicros(50)), millis(latency.percentileMicros(99)),
+                    millis(latency.percentileMicros(99.9)), totalErrors.get(operation).get());
+        }
+        System.out.printf("  pool wait: %,d acquisitions  p50 %s ms  p99 %s ms  p999 %s ms  timeouts %d%n",
+                totalPoolWait.count(), millis(totalPoolWait.percentileMicros(50)),
+                millis(totalPoolWait.percentileMicros(99)), millis(totalPoolWait.percentileMicros(99.9)),
+                PoolWaitTracker.TIMEOUTS.get());
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+
+    private static int[] parseMix(String value) {
+        int[] result = new int[3];
+        for (String part : value.split(",")) {
+            String[] keyValue = part.trim().split("=");
+            Operation operation = Operation.valueOf(keyValue[0].trim().toUpperCase());
+            result[operation.ordinal()] = Integer.parseInt(keyValue[1].trim());
+        }
+        if (result[0] + result[1] + result[2] <= 0) {
+            throw new IllegalArgumentException("bench.mix must contain at least one positive weight: " + value);
+        }
+        return result;
+    }
+}
@@ -1,19 +1,46 @@
 package id.co.swamdia.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+
 import java.time.LocalDateTime;
 
 @Entity
+// UPDATE hanya berisi kolom yang berubah
+@DynamicUpdate
 @Table(name = "custom_roles", uniqueConstraints = @UniqueConstraint(columnNames = { "realm_id", "name", "client_id" }))
 @NamedQueries({
-        @NamedQuery(name = "CustomRoleEntity.findByRealm", query = "SELECT r FROM CustomRoleEntity r WHERE r.realmId = :realmId AND r.clientId IS NULL"),
+        @NamedQuery(name = "CustomRoleEntity.findViewsByRealm", query = "SELECT new id.co.swamdia.entity.RoleView(r.id, r.name, r.realmId, r.clientId, r.version) FROM CustomRoleEntity r WHERE r.realmId = :realmId AND r.clientId IS NULL"),
         @NamedQuery(name = "CustomRoleEntity.findByRealmAndClient", query = "SELECT r FROM CustomRoleEntity r WHERE r.realmId = :realmId AND r.clientId = :clientId"),
         @NamedQuery(name = "CustomRoleEntity.findByNameAndRealm", query = "SELECT r FROM CustomRoleEntity r WHERE r.name = :name AND r.realmId = :realmId AND r.clientId IS NULL"),
         @NamedQuery(name = "CustomRoleEntity.findByNameAndRealmAndClient", query = "SELECT r FROM CustomRoleEntity r WHERE r.name = :name AND r.realmId = :realmId AND r.clientId = :clientId"),
-        @NamedQuery(name = "CustomRoleEntity.search", query = "SELECT r FROM CustomRoleEntity r WHERE r.realmId = :realmId AND "
+        @NamedQuery(name = "CustomRoleEntity.searchViews", query = "SELECT new id.co.swamdia.entity.RoleView(r.id, r.name, r.realmId, r.clientId, r.version) FROM CustomRoleEntity r WHERE r.realmId = :realmId AND "
+                +
+                "(LOWER(r.name) LIKE LOWER(:search) OR LOWER(r.description) LIKE LOWER(:search))"),
+        @NamedQuery(name = "CustomRoleEntity.searchViewsByClients", query = "SELECT new id.co.swamdia.entity.RoleView(r.id, r.name, r.realmId, r.clientId, r.version) FROM CustomRoleEntity r WHERE r.realmId = :realmId AND "
+                +
+                "r.clientId IN :clientIds AND "
+                +
+                "(LOWER(r.name) LIKE LOWER(:search) OR LOWER(r.description) LIKE LOWER(:search))"),
+        @NamedQuery(name = "CustomRoleEntity.countByRealm", query = "SELECT COUNT(r) FROM CustomRoleEntity r WHERE r.realmId = :realmId"),
+        @NamedQuery(name = "CustomRoleEntity.countRealmRoles", query = "SELECT COUNT(r) FROM CustomRoleEntity r WHERE r.realmId = :realmId AND r.clientId IS NULL"),
+        @NamedQuery(name = "CustomRoleEntity.countByRealmAndClient", query = "SELECT COUNT(r) FROM CustomRoleEntity r WHERE r.realmId = :realmId AND r.clientId = :clientId"),
+        @NamedQuery(name = "CustomRoleEntity.countSearch", query = "SELECT COUNT(r) FROM CustomRoleEntity r WHERE r.realmId = :realmId AND "
+                +
+                "(LOWER(r.name) LIKE LOWER(:search) OR LOWER(r.description) LIKE LOWER(:search))"),
+        @NamedQuery(name = "CustomRoleEntity.countSearchByClient", query = "SELECT COUNT(r) FROM CustomRoleEntity r WHERE r.realmId = :realmId AND "
+                +
+                "r.clientId = :clientId AND "
                 +
                 "(LOWER(r.name) LIKE LOWER(:search) OR LOWER(r.description) LIKE LOWER(:search))"),
-        @NamedQuery(name = "CustomRoleEntity.countByRealm", query = "SELECT COUNT(r) FROM CustomRoleEntity r WHERE r.realmId = :realmId")
+        @NamedQuery(name = "CustomRoleEntity.scanRealmRoles", query = "SELECT r.id, r.name, r.description FROM CustomRoleEntity r WHERE r.realmId = :realmId AND r.clientId IS NULL"),
+        @NamedQuery(name = "CustomRoleEntity.scanAllRoles", query = "SELECT r.id, r.name, r.description, r.clientId FROM CustomRoleEntity r WHERE r.realmId = :realmId"),
+        @NamedQuery(name = "CustomRoleEntity.findUpdatedSince", query = "SELECT r FROM CustomRoleEntity r WHERE r.realmId = :realmId AND r.updatedAt > :since"),
+        @NamedQuery(name = "CustomRoleEntity.findViewsByIds", query = "SELECT new id.co.swamdia.entity.RoleView(r.id, r.name, r.realmId, r.clientId, r.version) FROM CustomRoleEntity r WHERE r.realmId = :realmId AND r.id IN :ids"),
+        @NamedQuery(name = "CustomRoleEntity.findDescriptions", query = "SELECT r.id, r.description FROM CustomRoleEntity r WHERE r.id IN :ids"),
+        @NamedQuery(name = "CustomRoleEntity.findIdsByRealm", query = "SELECT r.id FROM CustomRoleEntity r WHERE r.realmId = :realmId"),
+        @NamedQuery(name = "CustomRoleEntity.maxUpdatedAt", query = "SELECT MAX(r.updatedAt) FROM CustomRoleEntity r WHERE r.realmId = :realmId"),
+        @NamedQuery(name = "CustomRoleEntity.findDistinctRealmIds", query = "SELECT DISTINCT r.realmId FROM CustomRoleEntity r")
 })
 public class CustomRoleEntity {
 
@@ -39,6 +66,11 @@ public class CustomRoleEntity {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Optimistic locking; null kalau entity tidak dibaca dari database (index/snapshot/event)
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private Long version;
+
     // Constructors
     public CustomRoleEntity() {
     }
@@ -108,6 +140,30 @@ public class CustomRoleEntity {
         this.updatedAt = updatedAt;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    /**
+     * Salinan detached dari entity ini (tidak terikat ke EntityManager manapun)
+     */
+    public CustomRoleEntity copy() {
+        CustomRoleEntity copy = new CustomRoleEntity();
+        copy.id = id;
+        copy.name = name;
+        copy.description = description;
+        copy.realmId = realmId;
+        copy.clientId = clientId;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        copy.version = version;
+        return copy;
+    }
+
     @PrePersist
     public void prePersist() {
         if (this.createdAt == null) {
@@ -133,6 +189,7 @@ public class CustomRoleEntity {
 
     @Override
     public int hashCode() {
-        return getClass().hashCode();
+        // ID di-assign sebelum persist (UUID), jadi stabil selama entity ada di set/map
+        return id != null ? id.hashCode() : 0;
     }
 }
@@ -0,0 +1,65 @@
+package id.co.swamdia.entity;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ID role: UUID versi 7 (RFC 9562) dalam bentuk string kanonik. Bagian depan
+ * adalah timestamp milidetik, jadi insert baru selalu masuk di ujung kanan
+ * B-tree primary key (bukan tersebar acak seperti UUID v4). Bentuk string
+ * sama dengan UUID biasa, sehingga external ID di StorageId tidak berubah.
+ */
+public final class RoleIds {
+
+    // Timestamp terakhir (48 bit) dan counter 12 bit di rand_a, supaya ID dari
+    // node ini tetap urut walaupun dibuat di milidetik yang sama
+    private static long lastMillis;
+    private static int sequence;
+
+    private RoleIds() {
+    }
+
+    public static String newId() {
+        long millis;
+        int counter;
+        synchronized (RoleIds.class) {
+            long now = System.currentTimeMillis();
+            if (now > lastMillis) {
+                lastMillis = now;
+                // Mulai dari setengah bawah supaya masih ada ruang untuk counter
+                sequence = ThreadLocalRandom.current().nextInt(0x800);
+            } else if (++sequence > 0xFFF) {
+                // Counter habis (atau jam mundur): pinjam milidetik berikutnya
+                lastMillis++;
+                sequence = 0;
+            }
+            millis = lastMillis;
+            counter = sequence;
+        }
+        long mostSigBits = (millis << 16) | 0x7000L | counter;
+        long leastSigBits = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
+    /**
+     * True kalau value berbentuk UUID 8-4-4-4-12 (hex, huruf besar/kecil).
+     * Dengan kolom id bertipe uuid, ID lain tidak mungkin ada dan tidak perlu
+     * dikirim ke database (PostgreSQL menolaknya dengan error).
+     */
+    public static boolean isUuid(String value) {
+        if (value == null || value.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = value.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f') && !(c >= 'A' && c <= 'F')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
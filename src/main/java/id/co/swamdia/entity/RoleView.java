@@ -0,0 +1,99 @@
+package id.co.swamdia.entity;
+
+/**
+ * Proyeksi role yang ringkas dan immutable untuk listing/search.
+ * Query listing hanya mengambil id, nama, realm dan client; deskripsi (TEXT)
+ * tidak ikut terbaca kecuali view dibuat dari entity lengkap.
+ */
+public final class RoleView {
+
+    private final String id;
+    private final String name;
+    private final String realmId;
+    private final String clientId;
+    private final String description;
+    private final boolean descriptionLoaded;
+    private final Long version;
+
+    /**
+     * View tanpa deskripsi dan tanpa versi (mis. dari data stale)
+     */
+    public RoleView(String id, String name, String realmId, String clientId) {
+        this(id, name, realmId, clientId, null, false, null);
+    }
+
+    /**
+     * Dipakai oleh query JPQL "SELECT new" (tanpa deskripsi)
+     */
+    public RoleView(String id, String name, String realmId, String clientId, Long version) {
+        this(id, name, realmId, clientId, null, false, version);
+    }
+
+    private RoleView(String id, String name, String realmId, String clientId, String description,
+            boolean descriptionLoaded, Long version) {
+        this.id = id;
+        this.name = name;
+        this.realmId = realmId;
+        this.clientId = clientId;
+        this.description = description;
+        this.descriptionLoaded = descriptionLoaded;
+        this.version = version;
+    }
+
+    /**
+     * View dari entity lengkap (index/snapshot di memory), deskripsi sudah ada
+     */
+    public static RoleView of(CustomRoleEntity entity) {
+        return new RoleView(entity.getId(), entity.getName(), entity.getRealmId(), entity.getClientId(),
+                entity.getDescription(), true, entity.getVersion());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRealmId() {
+        return realmId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Deskripsi kalau sudah dimuat; cek isDescriptionLoaded untuk membedakan
+     * dari deskripsi yang memang null
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    public boolean isDescriptionLoaded() {
+        return descriptionLoaded;
+    }
+
+    /**
+     * Versi baris saat view dibaca; null kalau tidak diketahui (index/snapshot)
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    /**
+     * Entity detached berisi field view ini (deskripsi null kalau belum dimuat)
+     */
+    public CustomRoleEntity toEntity() {
+        CustomRoleEntity entity = new CustomRoleEntity();
+        entity.setId(id);
+        entity.setName(name);
+        entity.setRealmId(realmId);
+        entity.setClientId(clientId);
+        entity.setDescription(description);
+        entity.setVersion(version);
+        return entity;
+    }
+}
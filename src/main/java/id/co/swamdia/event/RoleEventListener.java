@@ -10,14 +10,20 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.RoleModel;
 
 import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.entity.RoleIds;
+import id.co.swamdia.jfr.RoleStorageEvent;
+import id.co.swamdia.jfr.RoleSyncEvent;
 import id.co.swamdia.repository.CustomRoleRepository;
+import id.co.swamdia.repository.RoleUpdate;
 import id.co.swamdia.service.DatabaseService;
+import id.co.swamdia.service.ShardRouter;
 
 import org.jboss.logging.Logger;
 
-import jakarta.persistence.EntityManager;
-import java.util.UUID;
+import jakarta.persistence.OptimisticLockException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * Event Listener untuk menangkap event role creation/update/delete
@@ -28,11 +34,12 @@ public class RoleEventListener implements EventListenerProvider {
     private static final Logger logger = Logger.getLogger(RoleEventListener.class);
 
     private final KeycloakSession session;
-    private final DatabaseService databaseService;
+    // Realm ID -> database realm (database komponen realm itu atau database default)
+    private final Function<String, ShardRouter> routers;
 
-    public RoleEventListener(KeycloakSession session, DatabaseService databaseService) {
+    public RoleEventListener(KeycloakSession session, Function<String, ShardRouter> routers) {
         this.session = session;
-        this.databaseService = databaseService;
+        this.routers = routers;
     }
 
     @Override
@@ -52,216 +59,267 @@ public class RoleEventListener implements EventListenerProvider {
             return;
         }
 
-        RealmModel realm = session.realms().getRealm(adminEvent.getRealmId());
-        if (realm == null) {
-            logger.warnf("Realm not found: %s", adminEvent.getRealmId());
+        RoleResourcePath path = RoleResourcePath.parse(adminEvent.getResourcePath());
+        if (path == null) {
+            logger.debugf("Not a role resource path: %s", adminEvent.getResourcePath());
             return;
         }
 
-        EntityManager entityManager = null;
+        // RealmModel hanya di-load kalau perlu lookup role ke Keycloak
+        String realmId = adminEvent.getRealmId();
+
+        RoleSyncEvent event = new RoleSyncEvent();
+        event.start(realmId, adminEvent.getOperationType() + " " + adminEvent.getResourceType());
+        int rows = 0;
         try {
-            entityManager = databaseService.getEntityManagerFactory().createEntityManager();
-            CustomRoleRepository roleRepository = new CustomRoleRepository(entityManager);
+            ShardRouter shardRouter = routers.apply(realmId);
+            if (shardRouter == null) {
+                logger.warnf("No role database configured, skipping sync of %s", adminEvent.getResourcePath());
+                return;
+            }
+            DatabaseService databaseService = shardRouter.forRealm(realmId);
+            // Sinkronisasi membaca lalu menulis, jadi semua ke primary
+            CustomRoleRepository roleRepository = new CustomRoleRepository(databaseService, true);
+            boolean upsert = databaseService.isUpsertSupported();
 
             if (adminEvent.getOperationType() == OperationType.CREATE) {
-                handleRoleCreate(adminEvent, realm, roleRepository);
+                rows = handleRoleCreate(adminEvent, realmId, path, roleRepository, upsert);
             } else if (adminEvent.getOperationType() == OperationType.UPDATE) {
-                handleRoleUpdate(adminEvent, realm, roleRepository);
+                rows = handleRoleUpdate(adminEvent, realmId, path, roleRepository, upsert);
             } else if (adminEvent.getOperationType() == OperationType.DELETE) {
-                handleRoleDelete(adminEvent, realm, roleRepository);
+                rows = handleRoleDelete(adminEvent, realmId, path, roleRepository);
             }
 
         } catch (Exception e) {
             logger.error("Error handling admin event", e);
+            rows = -1;
         } finally {
-            if (entityManager != null && entityManager.isOpen()) {
-                entityManager.close();
+            if (rows < 0) {
+                event.setCache(RoleStorageEvent.CACHE_ERROR);
             }
+            event.finish(Math.max(0, rows));
         }
     }
 
-    private void handleRoleCreate(AdminEvent adminEvent, RealmModel realm, CustomRoleRepository roleRepository) {
+    /**
+     * @return jumlah baris yang ditulis, -1 kalau gagal
+     */
+    private int handleRoleCreate(AdminEvent adminEvent, String realmId, RoleResourcePath path,
+            CustomRoleRepository roleRepository, boolean upsert) {
         logger.infof("=== Handling ROLE CREATE event ===");
         logger.infof("ResourcePath: %s", adminEvent.getResourcePath());
 
         try {
-            // Extract role name from resource path
-            // Format: /realms/{realm}/roles/{role-name} or /realms/{realm}/clients/{client-id}/roles/{role-name}
-            String resourcePath = adminEvent.getResourcePath();
-            String roleName = extractRoleNameFromPath(resourcePath);
-            
-            if (roleName == null) {
-                logger.warnf("Could not extract role name from path: %s", resourcePath);
-                return;
+            CustomRoleEntity roleEntity = resolveRole(adminEvent, realmId, path);
+            if (roleEntity == null) {
+                logger.warnf("Role not found in Keycloak: %s", adminEvent.getResourcePath());
+                return 0;
             }
+            String roleName = roleEntity.getName();
+            logger.infof("Creating role in external database: %s in realm: %s", roleName, realmId);
 
-            logger.infof("Creating role in external database: %s in realm: %s", roleName, realm.getId());
-
-            // Get role from Keycloak to get full details
-            RoleModel role = realm.getRole(roleName);
-            if (role == null) {
-                // Try to get from client roles
-                String[] parts = resourcePath.split("/");
-                if (parts.length > 4 && "clients".equals(parts[3])) {
-                    String clientId = parts[4];
-                    var client = realm.getClientById(clientId);
-                    if (client != null) {
-                        role = client.getRole(roleName);
-                    }
-                }
-            }
-
-            if (role == null) {
-                logger.warnf("Role not found in Keycloak: %s", roleName);
-                return;
+            if (upsert) {
+                upsertRole(roleEntity, roleRepository);
+                return 1;
             }
 
             // Check if role already exists in external database
-            boolean isClientRole = role.isClientRole();
-            String clientId = isClientRole ? role.getContainerId() : null;
-
-            var existingRole = isClientRole 
-                ? roleRepository.findByNameAndRealmAndClient(roleName, realm.getId(), clientId)
-                : roleRepository.findByNameAndRealm(roleName, realm.getId());
-
+            var existingRole = findExisting(roleRepository, roleName, realmId, roleEntity.getClientId());
             if (existingRole.isPresent()) {
                 logger.infof("Role already exists in external database: %s", roleName);
-                return;
+                return 0;
             }
 
-            // Create new role entity
-            CustomRoleEntity roleEntity = new CustomRoleEntity();
-            roleEntity.setId(UUID.randomUUID().toString());
-            roleEntity.setName(roleName);
-            roleEntity.setDescription(role.getDescription());
-            roleEntity.setRealmId(realm.getId());
-            roleEntity.setClientId(clientId);
-
             // Save to external database
+            roleEntity.setId(RoleIds.newId());
             roleRepository.save(roleEntity);
             logger.infof("Successfully created role in external database: %s (ID: %s)", 
                     roleName, roleEntity.getId());
+            return 1;
 
         } catch (Exception e) {
             logger.errorf(e, "Error creating role in external database: %s", adminEvent.getResourcePath());
+            return -1;
         }
     }
 
-    private void handleRoleUpdate(AdminEvent adminEvent, RealmModel realm, CustomRoleRepository roleRepository) {
+    /**
+     * @return jumlah baris yang ditulis, -1 kalau gagal
+     */
+    private int handleRoleUpdate(AdminEvent adminEvent, String realmId, RoleResourcePath path,
+            CustomRoleRepository roleRepository, boolean upsert) {
         logger.infof("=== Handling ROLE UPDATE event ===");
         logger.infof("ResourcePath: %s", adminEvent.getResourcePath());
 
         try {
-            String resourcePath = adminEvent.getResourcePath();
-            String roleName = extractRoleNameFromPath(resourcePath);
-            
-            if (roleName == null) {
-                logger.warnf("Could not extract role name from path: %s", resourcePath);
-                return;
+            CustomRoleEntity roleEntity = resolveRole(adminEvent, realmId, path);
+            if (roleEntity == null) {
+                logger.warnf("Role not found in Keycloak: %s", adminEvent.getResourcePath());
+                return 0;
             }
-
-            // Get role from Keycloak
-            RoleModel role = realm.getRole(roleName);
-            if (role == null) {
-                String[] parts = resourcePath.split("/");
-                if (parts.length > 4 && "clients".equals(parts[3])) {
-                    String clientId = parts[4];
-                    var client = realm.getClientById(clientId);
-                    if (client != null) {
-                        role = client.getRole(roleName);
-                    }
+            String roleName = roleEntity.getName();
+
+            // Rename: path masih berisi nama lama; update baris lama supaya ID tetap sama
+            String previousName = path.getRoleName();
+            if (previousName != null && !previousName.equals(roleName)) {
+                var renamedRole = findExisting(roleRepository, previousName, realmId, roleEntity.getClientId());
+                if (renamedRole.isPresent()) {
+                    updateExisting(roleRepository, realmId, renamedRole.get(),
+                            new RoleUpdate().setName(roleName).setDescription(roleEntity.getDescription()));
+                    logger.infof("Successfully renamed role in external database: %s -> %s", previousName, roleName);
+                    return 1;
                 }
             }
 
-            if (role == null) {
-                logger.warnf("Role not found in Keycloak: %s", roleName);
-                return;
+            if (upsert) {
+                upsertRole(roleEntity, roleRepository);
+                return 1;
             }
 
-            boolean isClientRole = role.isClientRole();
-            String clientId = isClientRole ? role.getContainerId() : null;
-
             // Find existing role in external database
-            var existingRole = isClientRole 
-                ? roleRepository.findByNameAndRealmAndClient(roleName, realm.getId(), clientId)
-                : roleRepository.findByNameAndRealm(roleName, realm.getId());
-
+            var existingRole = findExisting(roleRepository, roleName, realmId, roleEntity.getClientId());
             if (existingRole.isEmpty()) {
                 logger.warnf("Role not found in external database, creating new one: %s", roleName);
                 // Create if not exists
-                handleRoleCreate(adminEvent, realm, roleRepository);
-                return;
+                roleEntity.setId(RoleIds.newId());
+                roleRepository.save(roleEntity);
+                return 1;
             }
 
-            // Update existing role
-            CustomRoleEntity roleEntity = existingRole.get();
-            roleEntity.setName(roleName);
-            roleEntity.setDescription(role.getDescription());
-            roleEntity.setRealmId(realm.getId());
-            roleEntity.setClientId(clientId);
-
-            roleRepository.save(roleEntity);
+            // Update existing role (hanya kalau deskripsinya memang berubah)
+            CustomRoleEntity existing = existingRole.get();
+            if (Objects.equals(existing.getDescription(), roleEntity.getDescription())) {
+                logger.debugf("Role unchanged in external database: %s", roleName);
+                return 0;
+            }
+            updateExisting(roleRepository, realmId, existing,
+                    new RoleUpdate().setDescription(roleEntity.getDescription()));
             logger.infof("Successfully updated role in external database: %s", roleName);
+            return 1;
 
         } catch (Exception e) {
             logger.errorf(e, "Error updating role in external database: %s", adminEvent.getResourcePath());
+            return -1;
+        }
+    }
+
+    /**
+     * UPDATE dengan cek versi baris yang baru dibaca. Kalau bentrok dengan write
+     * lain, baca ulang sekali lalu ulangi: isi event tetap data terbaru dari Keycloak.
+     */
+    private void updateExisting(CustomRoleRepository roleRepository, String realmId, CustomRoleEntity existing,
+            RoleUpdate changes) {
+        try {
+            roleRepository.update(realmId, existing.getId(), existing.getVersion(), changes);
+        } catch (OptimisticLockException e) {
+            CustomRoleEntity current = roleRepository.findById(realmId, existing.getId()).orElseThrow(() -> e);
+            logger.infof("Role %s changed concurrently, retrying update at version %d", current.getName(),
+                    current.getVersion());
+            roleRepository.update(realmId, current.getId(), current.getVersion(), changes);
         }
     }
 
-    private void handleRoleDelete(AdminEvent adminEvent, RealmModel realm, CustomRoleRepository roleRepository) {
+    /**
+     * Satu statement INSERT ... ON CONFLICT: tidak perlu find dulu dan tidak
+     * bentrok dengan unique constraint kalau event yang sama diproses bersamaan
+     */
+    private void upsertRole(CustomRoleEntity roleEntity, CustomRoleRepository roleRepository) {
+        boolean inserted = roleRepository.upsert(roleEntity);
+        logger.infof("Successfully %s role in external database: %s (ID: %s)",
+                inserted ? "created" : "updated", roleEntity.getName(), roleEntity.getId());
+    }
+
+    /**
+     * @return jumlah baris yang dihapus, -1 kalau gagal
+     */
+    private int handleRoleDelete(AdminEvent adminEvent, String realmId, RoleResourcePath path,
+            CustomRoleRepository roleRepository) {
         logger.infof("=== Handling ROLE DELETE event ===");
         logger.infof("ResourcePath: %s", adminEvent.getResourcePath());
 
         try {
-            String resourcePath = adminEvent.getResourcePath();
-            String roleName = extractRoleNameFromPath(resourcePath);
-            
+            // Role sudah terhapus di Keycloak, jadi hanya nama dari path yang bisa dipakai
+            String roleName = path.getRoleName();
             if (roleName == null) {
-                logger.warnf("Could not extract role name from path: %s", resourcePath);
-                return;
+                logger.warnf("Could not extract role name from path: %s", adminEvent.getResourcePath());
+                return 0;
             }
 
-            // Try to find role in external database
-            // We need to check both realm and client roles
-            var realmRole = roleRepository.findByNameAndRealm(roleName, realm.getId());
-            
-            if (realmRole.isPresent()) {
-                roleRepository.delete(realmRole.get().getId());
-                logger.infof("Successfully deleted realm role from external database: %s", roleName);
-                return;
+            var existingRole = findExisting(roleRepository, roleName, realmId, path.getClientId());
+            if (existingRole.isPresent()) {
+                boolean deleted = roleRepository.delete(realmId, existingRole.get().getId());
+                logger.infof("Successfully deleted %s role from external database: %s",
+                        path.getClientId() != null ? "client" : "realm", roleName);
+                return deleted ? 1 : 0;
             }
 
-            // Try client roles
-            realm.getClientsStream().forEach(client -> {
-                var clientRole = roleRepository.findByNameAndRealmAndClient(
-                        roleName, realm.getId(), client.getId());
-                if (clientRole.isPresent()) {
-                    roleRepository.delete(clientRole.get().getId());
-                    logger.infof("Successfully deleted client role from external database: %s (client: %s)", 
-                            roleName, client.getClientId());
-                }
-            });
-
             logger.warnf("Role not found in external database for deletion: %s", roleName);
+            return 0;
 
         } catch (Exception e) {
             logger.errorf(e, "Error deleting role from external database: %s", adminEvent.getResourcePath());
+            return -1;
         }
     }
 
-    private String extractRoleNameFromPath(String resourcePath) {
-        // Format: /realms/{realm}/roles/{role-name}
-        // or: /realms/{realm}/clients/{client-id}/roles/{role-name}
-        if (resourcePath == null || resourcePath.isEmpty()) {
+    /**
+     * Data role dari representation event kalau ada; lookup ke Keycloak hanya
+     * kalau representation tidak dikirim atau container role tidak bisa
+     * ditentukan dari path dan representation.
+     *
+     * @return entity baru (tanpa ID), atau null kalau role tidak ditemukan
+     */
+    private CustomRoleEntity resolveRole(AdminEvent adminEvent, String realmId, RoleResourcePath path) {
+        RoleEventRepresentation representation = RoleEventRepresentation.parse(adminEvent.getRepresentation());
+        if (representation != null && representation.getName() != null) {
+            String clientId = path.getClientId();
+            boolean containerKnown = !path.isById();
+            if (path.isById() && representation.getClientRole() != null) {
+                clientId = representation.getClientRole() ? representation.getContainerId() : null;
+                containerKnown = clientId != null || !representation.getClientRole();
+            }
+            if (containerKnown) {
+                logger.debugf("Using role representation from admin event: %s", representation.getName());
+                return toEntity(realmId, representation.getName(), representation.getDescription(), clientId);
+            }
+        }
+
+        RealmModel realm = session.realms().getRealm(realmId);
+        if (realm == null) {
+            logger.warnf("Realm not found: %s", realmId);
             return null;
         }
 
-        String[] parts = resourcePath.split("/");
-        if (parts.length >= 5 && "roles".equals(parts[parts.length - 2])) {
-            return parts[parts.length - 1];
+        RoleModel role;
+        if (path.isById()) {
+            role = realm.getRoleById(path.getRoleId());
+        } else if (path.getClientId() != null) {
+            var client = realm.getClientById(path.getClientId());
+            role = client != null ? client.getRole(path.getRoleName()) : null;
+        } else {
+            role = realm.getRole(path.getRoleName());
         }
+        if (role == null) {
+            return null;
+        }
+        return toEntity(realmId, role.getName(), role.getDescription(),
+                role.isClientRole() ? role.getContainerId() : null);
+    }
+
+    private static CustomRoleEntity toEntity(String realmId, String name, String description, String clientId) {
+        CustomRoleEntity roleEntity = new CustomRoleEntity();
+        roleEntity.setName(name);
+        roleEntity.setDescription(description);
+        roleEntity.setRealmId(realmId);
+        roleEntity.setClientId(clientId);
+        return roleEntity;
+    }
 
-        return null;
+    private static Optional<CustomRoleEntity> findExisting(CustomRoleRepository roleRepository, String name,
+            String realmId, String clientId) {
+        return clientId != null
+                ? roleRepository.findByNameAndRealmAndClient(name, realmId, clientId)
+                : roleRepository.findByNameAndRealm(name, realmId);
     }
 
     @Override
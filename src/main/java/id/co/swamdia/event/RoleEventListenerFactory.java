@@ -3,54 +3,96 @@ package id.co.swamdia.event;
 import org.keycloak.Config;
 import org.keycloak.events.EventListenerProvider;
 import org.keycloak.events.EventListenerProviderFactory;
+import org.keycloak.models.ClientModel;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.storage.role.RoleStorageProvider;
 
-import id.co.swamdia.service.DatabaseService;
+import id.co.swamdia.provider.CustomRoleStorageProviderFactory;
 
 import org.jboss.logging.Logger;
 
 /**
  * Factory untuk Role Event Listener
  * Event Listener ini akan menangkap event role creation/update/delete
- * dan menyinkronkannya ke database external
+ * dan menyinkronkannya ke database external. Role milik realm/client yang
+ * dihapus ikut di-purge (lihat RolePurgeTransaction).
+ * <p>
+ * Database diambil dari role storage provider factory: realm dengan komponen
+ * yang punya database sendiri disinkronkan ke database komponen itu.
  */
 public class RoleEventListenerFactory implements EventListenerProviderFactory {
 
     private static final Logger logger = Logger.getLogger(RoleEventListenerFactory.class);
     private static final String PROVIDER_ID = "custom-role-event-listener";
 
-    private DatabaseService databaseService;
+    private CustomRoleStorageProviderFactory roleStorageFactory;
+    private KeycloakSessionFactory sessionFactory;
+    private ProviderEventListener purgeListener;
 
     @Override
     public EventListenerProvider create(KeycloakSession session) {
         logger.infof("Creating RoleEventListener for session");
-        
-        // Initialize database service if not already done
-        if (databaseService == null) {
-            logger.info("Database service not initialized, initializing from system properties");
-            initializeDatabaseService();
-        }
-
-        return new RoleEventListener(session, databaseService);
+        return new RoleEventListener(session,
+                realmId -> roleStorageFactory != null ? roleStorageFactory.getRouter(session, realmId) : null);
     }
 
     @Override
     public void init(Config.Scope config) {
         logger.info("Initializing RoleEventListenerFactory");
-        initializeDatabaseService();
     }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
         logger.info("Post-initialization of RoleEventListenerFactory");
+        roleStorageFactory = (CustomRoleStorageProviderFactory) factory.getProviderFactory(RoleStorageProvider.class,
+                CustomRoleStorageProviderFactory.PROVIDER_ID);
+        if (roleStorageFactory == null) {
+            logger.warn("Custom role storage provider is not deployed. " +
+                    "Event listener will not be able to sync roles to external database.");
+            return;
+        }
+        // Penghapusan realm tidak menghasilkan admin event, jadi purge lewat provider event
+        if (Boolean.parseBoolean(System.getProperty("quarkus.datasource.user-store.purge.enabled", "true"))) {
+            int batchSize = Math.max(1, Integer.getInteger("quarkus.datasource.user-store.purge.batch-size", 1000));
+            purgeListener = event -> onProviderEvent(event, batchSize);
+            sessionFactory = factory;
+            factory.register(purgeListener);
+        }
+    }
+
+    /**
+     * Role milik realm/client yang dihapus di Keycloak di-purge dari database
+     * external setelah transaksi Keycloak commit. Database realm ditentukan
+     * sekarang, selagi komponen realm masih ada.
+     */
+    private void onProviderEvent(ProviderEvent event, int batchSize) {
+        try {
+            if (event instanceof RealmModel.RealmRemovedEvent) {
+                RealmModel.RealmRemovedEvent removed = (RealmModel.RealmRemovedEvent) event;
+                RealmModel realm = removed.getRealm();
+                RolePurgeTransaction.forSession(removed.getKeycloakSession(), batchSize)
+                        .realmRemoved(realm.getId(), roleStorageFactory.getRouter(realm));
+            } else if (event instanceof ClientModel.ClientRemovedEvent) {
+                ClientModel.ClientRemovedEvent removed = (ClientModel.ClientRemovedEvent) event;
+                ClientModel client = removed.getClient();
+                RolePurgeTransaction.forSession(removed.getKeycloakSession(), batchSize)
+                        .clientRemoved(client.getRealm().getId(), client.getId(),
+                                roleStorageFactory.getRouter(client.getRealm()));
+            }
+        } catch (RuntimeException e) {
+            logger.errorf(e, "Cannot schedule role purge, role database unavailable");
+        }
     }
 
     @Override
     public void close() {
         logger.info("Closing RoleEventListenerFactory");
-        if (databaseService != null) {
-            databaseService.close();
+        if (purgeListener != null) {
+            sessionFactory.unregister(purgeListener);
         }
     }
 
@@ -58,33 +100,4 @@ public class RoleEventListenerFactory implements EventListenerProviderFactory {
     public String getId() {
         return PROVIDER_ID;
     }
-
-    private void initializeDatabaseService() {
-        try {
-            String dbUrl = System.getProperty("quarkus.datasource.user-store.jdbc.url");
-            String dbUsername = System.getProperty("quarkus.datasource.user-store.username");
-            String dbPassword = System.getProperty("quarkus.datasource.user-store.password");
-            String dbKind = System.getProperty("quarkus.datasource.user-store.db-kind");
-
-            if (dbUrl != null && dbUsername != null) {
-                String dbDriver = "org.postgresql.Driver";
-                if (dbKind != null && !dbKind.contains(".")) {
-                    if ("postgresql".equalsIgnoreCase(dbKind) || "postgres".equalsIgnoreCase(dbKind)) {
-                        dbDriver = "org.postgresql.Driver";
-                    }
-                }
-
-                logger.infof("Initializing database service from system properties. URL: %s, Username: %s", 
-                        dbUrl, dbUsername);
-                databaseService = new DatabaseService(dbUrl, dbUsername, dbPassword, dbDriver);
-                logger.info("Database service initialized successfully from system properties");
-            } else {
-                logger.warn("System properties not found for database configuration. " +
-                        "Event listener will not be able to sync roles to external database.");
-            }
-        } catch (Exception e) {
-            logger.error("Failed to initialize database service from system properties", e);
-        }
-    }
 }
-
@@ -0,0 +1,103 @@
+package id.co.swamdia.event;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+
+/**
+ * Field role yang dibutuhkan sinkronisasi, dibaca dari representation JSON
+ * admin event dengan streaming parser (tanpa data binding). Field lain,
+ * termasuk attributes dan composites, dilewati.
+ */
+final class RoleEventRepresentation {
+    private static final Logger logger = Logger.getLogger(RoleEventRepresentation.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private String id;
+    private String name;
+    private String description;
+    private Boolean clientRole;
+    private String containerId;
+
+    private RoleEventRepresentation() {
+    }
+
+    /**
+     * @return representation, atau null kalau JSON kosong atau tidak valid
+     */
+    static RoleEventRepresentation parse(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            RoleEventRepresentation representation = new RoleEventRepresentation();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "id":
+                        representation.id = textValue(parser, value);
+                        break;
+                    case "name":
+                        representation.name = textValue(parser, value);
+                        break;
+                    case "description":
+                        representation.description = textValue(parser, value);
+                        break;
+                    case "clientRole":
+                        representation.clientRole = value == JsonToken.VALUE_TRUE ? Boolean.TRUE
+                                : value == JsonToken.VALUE_FALSE ? Boolean.FALSE : null;
+                        break;
+                    case "containerId":
+                        representation.containerId = textValue(parser, value);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            return representation;
+        } catch (IOException e) {
+            logger.debugf(e, "Could not parse role representation");
+            return null;
+        }
+    }
+
+    private static String textValue(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getDescription() {
+        return description;
+    }
+
+    /**
+     * null kalau representation tidak menyebutkan jenis role
+     */
+    Boolean getClientRole() {
+        return clientRole;
+    }
+
+    String getContainerId() {
+        return containerId;
+    }
+}
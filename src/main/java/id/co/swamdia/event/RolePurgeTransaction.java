@@ -0,0 +1,118 @@
+package id.co.swamdia.event;
+
+import org.keycloak.models.AbstractKeycloakTransaction;
+import org.keycloak.models.KeycloakSession;
+
+import id.co.swamdia.jfr.RoleStorageEvent;
+import id.co.swamdia.jfr.RoleSyncEvent;
+import id.co.swamdia.repository.CustomRoleRepository;
+import id.co.swamdia.service.ShardRouter;
+
+import org.jboss.logging.Logger;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Purge role milik realm/client yang dihapus di Keycloak. Dijalankan setelah
+ * transaksi Keycloak commit, jadi kalau penghapusan di-rollback tidak ada role
+ * yang ikut terhapus. Satu instance per session: menghapus realm juga menghapus
+ * semua client-nya, dan client dari realm yang dihapus tidak di-purge terpisah.
+ */
+final class RolePurgeTransaction extends AbstractKeycloakTransaction {
+
+    private static final Logger logger = Logger.getLogger(RolePurgeTransaction.class);
+    private static final String SESSION_ATTRIBUTE = RolePurgeTransaction.class.getName();
+
+    private final int batchSize;
+    private final Set<String> realms = new LinkedHashSet<>();
+    // realm ID -> client ID yang dihapus
+    private final Map<String, Set<String>> clients = new LinkedHashMap<>();
+    // realm ID -> database komponen realm, ditentukan saat event (komponen
+    // realm yang dihapus sudah tidak ada saat commit)
+    private final Map<String, ShardRouter> routers = new HashMap<>();
+
+    private RolePurgeTransaction(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    static RolePurgeTransaction forSession(KeycloakSession session, int batchSize) {
+        RolePurgeTransaction transaction = session.getAttribute(SESSION_ATTRIBUTE, RolePurgeTransaction.class);
+        if (transaction == null) {
+            transaction = new RolePurgeTransaction(batchSize);
+            session.setAttribute(SESSION_ATTRIBUTE, transaction);
+            session.getTransactionManager().enlistAfterCompletion(transaction);
+        }
+        return transaction;
+    }
+
+    /**
+     * @param shardRouter database realm; null kalau tidak ada (tidak di-purge)
+     */
+    void realmRemoved(String realmId, ShardRouter shardRouter) {
+        if (shardRouter != null) {
+            routers.put(realmId, shardRouter);
+            realms.add(realmId);
+        }
+    }
+
+    void clientRemoved(String realmId, String clientId, ShardRouter shardRouter) {
+        if (shardRouter != null) {
+            routers.putIfAbsent(realmId, shardRouter);
+            clients.computeIfAbsent(realmId, id -> new LinkedHashSet<>()).add(clientId);
+        }
+    }
+
+    @Override
+    protected void commitImpl() {
+        for (String realmId : realms) {
+            purge(realmId, null);
+        }
+        clients.forEach((realmId, clientIds) -> {
+            if (!realms.contains(realmId)) {
+                for (String clientId : clientIds) {
+                    purge(realmId, clientId);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void rollbackImpl() {
+        logger.debugf("Keycloak transaction rolled back, skipping role purge for %d realms and %d clients",
+                realms.size(), clients.values().stream().mapToInt(Set::size).sum());
+    }
+
+    /**
+     * Error dicatat tanpa menggagalkan purge lain; sisa baris akan ikut
+     * terhapus kalau realm/client yang sama dihapus lagi
+     */
+    private void purge(String realmId, String clientId) {
+        RoleSyncEvent event = new RoleSyncEvent();
+        event.start(realmId, clientId != null ? "DELETE CLIENT" : "DELETE REALM");
+        long rows = 0;
+        long start = System.nanoTime();
+        try {
+            // Purge hanya menulis, jadi langsung ke primary
+            CustomRoleRepository roleRepository = new CustomRoleRepository(routers.get(realmId).forRealm(realmId),
+                    true);
+            rows = roleRepository.purge(realmId, clientId, batchSize);
+            if (clientId != null) {
+                logger.infof("Purged %d roles of removed client %s in realm %s (%d ms)", rows, clientId, realmId,
+                        (System.nanoTime() - start) / 1_000_000);
+            } else {
+                logger.infof("Purged %d roles of removed realm %s (%d ms)", rows, realmId,
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (Exception e) {
+            event.setCache(RoleStorageEvent.CACHE_ERROR);
+            logger.errorf(e, "Error purging roles of removed %s from external database",
+                    clientId != null ? "client " + clientId : "realm " + realmId);
+        } finally {
+            event.finish((int) Math.min(Integer.MAX_VALUE, rows));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package id.co.swamdia.event;
+
+/**
+ * Hasil parsing resource path admin event untuk role, tanpa split/regex.
+ * Format yang dikenali (prefix "/realms/{realm}/" opsional):
+ * <ul>
+ * <li>roles/{role-name}</li>
+ * <li>clients/{client-id}/roles/{role-name}</li>
+ * <li>roles-by-id/{role-id}</li>
+ * </ul>
+ * Path lain (mis. .../composites) bukan perubahan role itu sendiri dan
+ * menghasilkan null.
+ */
+final class RoleResourcePath {
+
+    private static final String REALMS = "realms/";
+    private static final String ROLES = "roles/";
+    private static final String ROLES_BY_ID = "roles-by-id/";
+    private static final String CLIENTS = "clients/";
+
+    private final String clientId;
+    private final String roleName;
+    private final String roleId;
+
+    private RoleResourcePath(String clientId, String roleName, String roleId) {
+        this.clientId = clientId;
+        this.roleName = roleName;
+        this.roleId = roleId;
+    }
+
+    static RoleResourcePath parse(String path) {
+        if (path == null) {
+            return null;
+        }
+        int position = path.startsWith("/") ? 1 : 0;
+        if (path.startsWith(REALMS, position)) {
+            int end = path.indexOf('/', position + REALMS.length());
+            if (end < 0) {
+                return null;
+            }
+            position = end + 1;
+        }
+
+        if (path.startsWith(ROLES_BY_ID, position)) {
+            String roleId = lastSegment(path, position + ROLES_BY_ID.length());
+            return roleId != null ? new RoleResourcePath(null, null, roleId) : null;
+        }
+
+        String clientId = null;
+        if (path.startsWith(CLIENTS, position)) {
+            int start = position + CLIENTS.length();
+            int end = path.indexOf('/', start);
+            if (end <= start) {
+                return null;
+            }
+            clientId = path.substring(start, end);
+            position = end + 1;
+        }
+
+        if (!path.startsWith(ROLES, position)) {
+            return null;
+        }
+        String roleName = lastSegment(path, position + ROLES.length());
+        return roleName != null ? new RoleResourcePath(clientId, roleName, null) : null;
+    }
+
+    // Segmen terakhir mulai dari start; null kalau kosong atau masih ada segmen lain
+    private static String lastSegment(String path, int start) {
+        int end = path.length();
+        if (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        if (end <= start) {
+            return null;
+        }
+        int slash = path.indexOf('/', start);
+        if (slash >= 0 && slash < end) {
+            return null;
+        }
+        return path.substring(start, end);
+    }
+
+    /**
+     * ID client (internal) untuk client role, null untuk realm role atau roles-by-id
+     */
+    String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Nama role dari path; null untuk roles-by-id
+     */
+    String getRoleName() {
+        return roleName;
+    }
+
+    /**
+     * ID role Keycloak untuk roles-by-id, selain itu null
+     */
+    String getRoleId() {
+        return roleId;
+    }
+
+    boolean isById() {
+        return roleId != null;
+    }
+}
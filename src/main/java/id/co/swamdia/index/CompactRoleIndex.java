@@ -0,0 +1,321 @@
+package id.co.swamdia.index;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Index read-only yang ringkas untuk realm roles satu realm.
+ * Nama dan deskripsi disimpan sebagai UTF-8 dalam satu byte[] dengan array
+ * offset (urut berdasarkan nama), UUID disimpan sebagai dua long, dan realm ID
+ * hanya disimpan sekali. Tidak ada objek per role selain saat dibaca.
+ */
+public final class CompactRoleIndex {
+
+    private final String realmId;
+    private final int size;
+
+    // Urut berdasarkan nama (unsigned UTF-8)
+    private final byte[] nameBytes;
+    private final int[] nameOffsets;
+    private final byte[] descriptionBytes;
+    private final int[] descriptionOffsets;
+    private final BitSet nullDescriptions;
+
+    // ID sebagai UUID (high/low); rawIds hanya dipakai kalau ada ID yang bukan UUID kanonik
+    private final long[] idHigh;
+    private final long[] idLow;
+    private final String[] rawIds;
+    // Posisi role diurutkan berdasarkan ID, untuk binary search by ID
+    private final int[] idOrder;
+
+    private final long builtAt = System.currentTimeMillis();
+    private volatile long lastAccess = builtAt;
+
+    private CompactRoleIndex(String realmId, int size, byte[] nameBytes, int[] nameOffsets,
+            byte[] descriptionBytes, int[] descriptionOffsets, BitSet nullDescriptions,
+            long[] idHigh, long[] idLow, String[] rawIds, int[] idOrder) {
+        this.realmId = realmId;
+        this.size = size;
+        this.nameBytes = nameBytes;
+        this.nameOffsets = nameOffsets;
+        this.descriptionBytes = descriptionBytes;
+        this.descriptionOffsets = descriptionOffsets;
+        this.nullDescriptions = nullDescriptions;
+        this.idHigh = idHigh;
+        this.idLow = idLow;
+        this.rawIds = rawIds;
+        this.idOrder = idOrder;
+    }
+
+    public static Builder builder(String realmId) {
+        return new Builder(realmId);
+    }
+
+    public String getRealmId() {
+        return realmId;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return posisi role dengan nama tersebut, atau -1
+     */
+    public int findByName(String name) {
+        touch();
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareName(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return posisi role dengan ID tersebut, atau -1
+     */
+    public int findById(String id) {
+        touch();
+        if (rawIds != null) {
+            return findByRawId(id);
+        }
+        UUID uuid = parseCanonicalUuid(id);
+        if (uuid == null) {
+            return -1;
+        }
+        long keyHigh = uuid.getMostSignificantBits();
+        long keyLow = uuid.getLeastSignificantBits();
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int position = idOrder[mid];
+            int cmp = Long.compare(idHigh[position], keyHigh);
+            if (cmp == 0) {
+                cmp = Long.compare(idLow[position], keyLow);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private int findByRawId(String id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int position = idOrder[mid];
+            int cmp = rawIds[position].compareTo(id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    public String nameAt(int position) {
+        return new String(nameBytes, nameOffsets[position], nameOffsets[position + 1] - nameOffsets[position],
+                StandardCharsets.UTF_8);
+    }
+
+    public String descriptionAt(int position) {
+        if (nullDescriptions.get(position)) {
+            return null;
+        }
+        return new String(descriptionBytes, descriptionOffsets[position],
+                descriptionOffsets[position + 1] - descriptionOffsets[position], StandardCharsets.UTF_8);
+    }
+
+    public String idAt(int position) {
+        if (rawIds != null) {
+            return rawIds[position];
+        }
+        return new UUID(idHigh[position], idLow[position]).toString();
+    }
+
+    /**
+     * Entity detached baru untuk posisi ini
+     */
+    public CustomRoleEntity toEntity(int position) {
+        CustomRoleEntity entity = new CustomRoleEntity();
+        entity.setId(idAt(position));
+        entity.setName(nameAt(position));
+        entity.setDescription(descriptionAt(position));
+        entity.setRealmId(realmId);
+        return entity;
+    }
+
+    /**
+     * Perkiraan ukuran heap index ini (dipakai untuk budget memory cache)
+     */
+    public long estimatedBytes() {
+        long bytes = 96;
+        bytes += arrayBytes(nameBytes.length, 1) + arrayBytes(nameOffsets.length, 4);
+        bytes += arrayBytes(descriptionBytes.length, 1) + arrayBytes(descriptionOffsets.length, 4);
+        bytes += nullDescriptions.size() / 8 + 32;
+        bytes += arrayBytes(idOrder.length, 4);
+        if (rawIds != null) {
+            for (String rawId : rawIds) {
+                bytes += 4 + 40 + arrayBytes(rawId.length(), 1);
+            }
+        } else {
+            bytes += arrayBytes(idHigh.length, 8) + arrayBytes(idLow.length, 8);
+        }
+        return bytes;
+    }
+
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    private void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    private int compareName(int position, byte[] key) {
+        int start = nameOffsets[position];
+        int length = nameOffsets[position + 1] - start;
+        return Arrays.compareUnsigned(nameBytes, start, start + length, key, 0, key.length);
+    }
+
+    private static long arrayBytes(int length, int elementSize) {
+        return 16 + (long) length * elementSize;
+    }
+
+    static UUID parseCanonicalUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static final class Builder {
+        private final String realmId;
+        private final List<byte[]> names = new ArrayList<>();
+        private final List<byte[]> descriptions = new ArrayList<>();
+        private final List<String> ids = new ArrayList<>();
+
+        private Builder(String realmId) {
+            this.realmId = realmId;
+        }
+
+        public Builder add(String id, String name, String description) {
+            ids.add(id);
+            names.add(name.getBytes(StandardCharsets.UTF_8));
+            descriptions.add(description != null ? description.getBytes(StandardCharsets.UTF_8) : null);
+            return this;
+        }
+
+        public CompactRoleIndex build() {
+            int size = ids.size();
+            Integer[] byName = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                byName[i] = i;
+            }
+            Arrays.sort(byName, (a, b) -> Arrays.compareUnsigned(names.get(a), names.get(b)));
+
+            int nameLength = 0;
+            int descriptionLength = 0;
+            boolean allUuid = true;
+            for (int i = 0; i < size; i++) {
+                nameLength += names.get(i).length;
+                byte[] description = descriptions.get(i);
+                descriptionLength += description != null ? description.length : 0;
+                allUuid = allUuid && parseCanonicalUuid(ids.get(i)) != null;
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            int[] nameOffsets = new int[size + 1];
+            byte[] descriptionBytes = new byte[descriptionLength];
+            int[] descriptionOffsets = new int[size + 1];
+            BitSet nullDescriptions = new BitSet(size);
+            long[] idHigh = allUuid ? new long[size] : new long[0];
+            long[] idLow = allUuid ? new long[size] : new long[0];
+            String[] rawIds = allUuid ? null : new String[size];
+
+            int nameCursor = 0;
+            int descriptionCursor = 0;
+            for (int position = 0; position < size; position++) {
+                int source = byName[position];
+                byte[] name = names.get(source);
+                System.arraycopy(name, 0, nameBytes, nameCursor, name.length);
+                nameOffsets[position] = nameCursor;
+                nameCursor += name.length;
+
+                byte[] description = descriptions.get(source);
+                descriptionOffsets[position] = descriptionCursor;
+                if (description == null) {
+                    nullDescriptions.set(position);
+                } else {
+                    System.arraycopy(description, 0, descriptionBytes, descriptionCursor, description.length);
+                    descriptionCursor += description.length;
+                }
+
+                if (allUuid) {
+                    UUID uuid = UUID.fromString(ids.get(source));
+                    idHigh[position] = uuid.getMostSignificantBits();
+                    idLow[position] = uuid.getLeastSignificantBits();
+                } else {
+                    rawIds[position] = ids.get(source);
+                }
+            }
+            nameOffsets[size] = nameCursor;
+            descriptionOffsets[size] = descriptionCursor;
+
+            Integer[] byId = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                byId[i] = i;
+            }
+            if (allUuid) {
+                Arrays.sort(byId, (a, b) -> {
+                    int cmp = Long.compare(idHigh[a], idHigh[b]);
+                    return cmp != 0 ? cmp : Long.compare(idLow[a], idLow[b]);
+                });
+            } else {
+                Arrays.sort(byId, (a, b) -> rawIds[a].compareTo(rawIds[b]));
+            }
+            int[] idOrder = new int[size];
+            for (int i = 0; i < size; i++) {
+                idOrder[i] = byId[i];
+            }
+
+            return new CompactRoleIndex(realmId.intern(), size, nameBytes, nameOffsets, descriptionBytes,
+                    descriptionOffsets, nullDescriptions, idHigh, idLow, rawIds, idOrder);
+        }
+    }
+}
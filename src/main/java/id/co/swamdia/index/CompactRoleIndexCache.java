@@ -0,0 +1,235 @@
+package id.co.swamdia.index;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.repository.RoleChangeListener;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache CompactRoleIndex per realm dengan budget memory berbasis bobot
+ * (estimatedBytes). Index dibangun di background thread: selama index realm
+ * belum ada, lookup dijawab database, dan index lama tetap dipakai sampai
+ * penggantinya selesai (setelah refreshMillis atau setelah cukup banyak write).
+ * Role yang ditulis lewat node ini ditandai dirty dan dijawab database sampai
+ * index dibangun ulang. Realm yang paling lama tidak diakses dibuang kalau
+ * total bobot melebihi budget.
+ */
+public class CompactRoleIndexCache implements RoleChangeListener {
+    private static final Logger logger = Logger.getLogger(CompactRoleIndexCache.class);
+
+    // Jumlah role dirty sebelum index dibangun ulang lebih awal
+    private static final int MAX_DIRTY = 256;
+    private static final long FAILED_BUILD_RETRY_MILLIS = 10000L;
+
+    private final long maxBytes;
+    private final long refreshMillis;
+    private final Map<String, RealmIndex> realms = new ConcurrentHashMap<>();
+    // Nomor urut write (setelah commit), untuk menentukan write mana yang sudah masuk index
+    private final AtomicLong writeSequence = new AtomicLong();
+    // Satu thread build; satu realm paling banyak satu build di antrian
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "role-compact-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final class Built {
+        final CompactRoleIndex index;
+        // Write dengan nomor urut sampai sini sudah commit sebelum scan dimulai
+        final long sequence;
+
+        Built(CompactRoleIndex index, long sequence) {
+            this.index = index;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class RealmIndex {
+        final String realmId;
+        volatile Built built;
+        volatile long retryAt;
+        final AtomicBoolean building = new AtomicBoolean();
+        // ID dan nama role yang ditulis -> nomor urut write
+        final Map<String, Long> dirtyIds = new ConcurrentHashMap<>();
+        final Map<String, Long> dirtyNames = new ConcurrentHashMap<>();
+
+        RealmIndex(String realmId) {
+            this.realmId = realmId;
+        }
+
+        boolean isDirty(Map<String, Long> dirty, String key, Built built) {
+            Long sequence = dirty.get(key);
+            return sequence != null && sequence > built.sequence;
+        }
+    }
+
+    public CompactRoleIndexCache(long maxBytes, long refreshMillis) {
+        this.maxBytes = maxBytes;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Realm role dengan nama ini dari index, atau null kalau harus dicek ke
+     * database (index belum dibangun, nama tidak ada, atau role baru ditulis)
+     *
+     * @param loader membangun index dari scan database; dijalankan di background thread
+     */
+    public CustomRoleEntity findByName(String realmId, String name, Function<String, CompactRoleIndex> loader) {
+        RealmIndex realm = current(realmId, loader);
+        Built built = realm.built;
+        if (built == null || realm.isDirty(realm.dirtyNames, name, built)) {
+            return null;
+        }
+        int position = built.index.findByName(name);
+        if (position < 0 || realm.isDirty(realm.dirtyIds, built.index.idAt(position), built)) {
+            return null;
+        }
+        return built.index.toEntity(position);
+    }
+
+    /**
+     * Realm role dengan ID ini dari index, atau null kalau harus dicek ke database
+     */
+    public CustomRoleEntity findById(String realmId, String id, Function<String, CompactRoleIndex> loader) {
+        RealmIndex realm = current(realmId, loader);
+        Built built = realm.built;
+        if (built == null || realm.isDirty(realm.dirtyIds, id, built)) {
+            return null;
+        }
+        int position = built.index.findById(id);
+        return position >= 0 ? built.index.toEntity(position) : null;
+    }
+
+    private RealmIndex current(String realmId, Function<String, CompactRoleIndex> loader) {
+        RealmIndex realm = realms.computeIfAbsent(realmId, RealmIndex::new);
+        Built built = realm.built;
+        long now = System.currentTimeMillis();
+        if (built == null || now - built.index.getBuiltAt() > refreshMillis || realm.dirtyIds.size() >= MAX_DIRTY) {
+            if (now >= realm.retryAt && realm.building.compareAndSet(false, true)) {
+                try {
+                    buildExecutor.execute(() -> build(realm, loader));
+                } catch (RejectedExecutionException e) {
+                    realm.building.set(false);
+                }
+            }
+        }
+        return realm;
+    }
+
+    private void build(RealmIndex realm, Function<String, CompactRoleIndex> loader) {
+        long sequence = writeSequence.get();
+        try {
+            long start = System.nanoTime();
+            CompactRoleIndex index = loader.apply(realm.realmId);
+            // Realm di-invalidate atau dibuang selama build; index ini tidak dipakai
+            if (realms.get(realm.realmId) != realm) {
+                return;
+            }
+            Built previous = realm.built;
+            realm.built = new Built(index, sequence);
+            // Write yang sudah masuk index sebelumnya tidak diperlukan lagi oleh index mana pun
+            if (previous != null) {
+                realm.dirtyIds.values().removeIf(written -> written <= previous.sequence);
+                realm.dirtyNames.values().removeIf(written -> written <= previous.sequence);
+            }
+            logger.infof("Built compact role index for realm %s: %d roles, ~%d bytes in %d ms",
+                    realm.realmId, index.size(), index.estimatedBytes(), (System.nanoTime() - start) / 1_000_000);
+            enforceBudget();
+        } catch (RuntimeException e) {
+            realm.retryAt = System.currentTimeMillis() + Math.min(refreshMillis, FAILED_BUILD_RETRY_MILLIS);
+            logger.warnf(e, "Failed to build compact role index for realm %s", realm.realmId);
+        } finally {
+            realm.building.set(false);
+        }
+    }
+
+    public void invalidate(String realmId) {
+        realms.remove(realmId);
+    }
+
+    @Override
+    public void onRoleSaved(CustomRoleEntity role, boolean created) {
+        if (role.getClientId() == null) {
+            markDirty(role);
+        }
+    }
+
+    @Override
+    public void onRoleDeleted(CustomRoleEntity role) {
+        if (role.getClientId() == null) {
+            markDirty(role);
+        }
+    }
+
+    @Override
+    public void onRolesPurged(String realmId, String clientId) {
+        // Index hanya berisi realm roles; purge tanpa client berarti realm dihapus
+        if (clientId == null) {
+            invalidate(realmId);
+        }
+    }
+
+    // Nama lama (rename) tetap aman: posisinya menunjuk ke ID yang dirty
+    private void markDirty(CustomRoleEntity role) {
+        RealmIndex realm = realms.get(role.getRealmId());
+        if (realm == null) {
+            return;
+        }
+        long sequence = writeSequence.incrementAndGet();
+        realm.dirtyIds.put(role.getId(), sequence);
+        realm.dirtyNames.put(role.getName(), sequence);
+    }
+
+    public long totalBytes() {
+        long total = 0;
+        for (RealmIndex realm : realms.values()) {
+            Built built = realm.built;
+            if (built != null) {
+                total += built.index.estimatedBytes();
+            }
+        }
+        return total;
+    }
+
+    public void close() {
+        buildExecutor.shutdownNow();
+        realms.clear();
+    }
+
+    private void enforceBudget() {
+        long total = totalBytes();
+        if (total <= maxBytes) {
+            return;
+        }
+
+        List<RealmIndex> built = new ArrayList<>();
+        for (RealmIndex realm : realms.values()) {
+            if (realm.built != null) {
+                built.add(realm);
+            }
+        }
+        built.sort(Comparator.comparingLong(realm -> realm.built.index.getLastAccess()));
+        for (RealmIndex realm : built) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (realms.remove(realm.realmId, realm)) {
+                long bytes = realm.built.index.estimatedBytes();
+                total -= bytes;
+                logger.debugf("Evicted compact role index for realm %s (~%d bytes)", realm.realmId, bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package id.co.swamdia.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Snapshot immutable index pencarian untuk satu realm.
+ * Nama (lowercase) disimpan terurut untuk prefix search dengan binary search,
+ * ditambah posting list trigram untuk substring search pada nama dan
+ * index token terurut untuk deskripsi.
+ */
+final class RealmSearchIndex {
+
+    static final Comparator<Entry> BY_NAME = Comparator.comparing((Entry entry) -> entry.normalizedName)
+            .thenComparing(entry -> entry.id);
+
+    /**
+     * Satu role di index (immutable)
+     */
+    static final class Entry {
+        final String id;
+        final String name;
+        final String description;
+        final String clientId;
+        final String normalizedName;
+        final String normalizedDescription;
+
+        Entry(String id, String name, String description, String clientId) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+            this.clientId = clientId;
+            this.normalizedName = normalize(name);
+            this.normalizedDescription = description != null ? normalize(description) : null;
+        }
+    }
+
+    private final Entry[] entries;
+    private final String[] names;
+    private final Map<String, int[]> nameTrigrams;
+    private final String[] tokens;
+    private final int[][] tokenPostings;
+    private final long builtAt = System.currentTimeMillis();
+
+    RealmSearchIndex(Collection<Entry> roles) {
+        this.entries = roles.toArray(new Entry[0]);
+        Arrays.sort(entries, BY_NAME);
+        this.names = new String[entries.length];
+
+        Map<String, List<Integer>> trigrams = new HashMap<>();
+        TreeMap<String, List<Integer>> descriptionTokens = new TreeMap<>();
+        for (int position = 0; position < entries.length; position++) {
+            Entry entry = entries[position];
+            names[position] = entry.normalizedName;
+            for (int i = 0; i + 3 <= entry.normalizedName.length(); i++) {
+                List<Integer> postings = trigrams.computeIfAbsent(entry.normalizedName.substring(i, i + 3),
+                        key -> new ArrayList<>());
+                if (postings.isEmpty() || postings.get(postings.size() - 1) != position) {
+                    postings.add(position);
+                }
+            }
+            if (entry.normalizedDescription != null) {
+                for (String token : tokenize(entry.normalizedDescription)) {
+                    List<Integer> postings = descriptionTokens.computeIfAbsent(token, key -> new ArrayList<>());
+                    if (postings.isEmpty() || postings.get(postings.size() - 1) != position) {
+                        postings.add(position);
+                    }
+                }
+            }
+        }
+
+        this.nameTrigrams = new HashMap<>(trigrams.size() * 2);
+        trigrams.forEach((trigram, postings) -> nameTrigrams.put(trigram, toArray(postings)));
+        this.tokens = descriptionTokens.keySet().toArray(new String[0]);
+        this.tokenPostings = new int[tokens.length][];
+        int i = 0;
+        for (List<Integer> postings : descriptionTokens.values()) {
+            tokenPostings[i++] = toArray(postings);
+        }
+    }
+
+    int size() {
+        return entries.length;
+    }
+
+    long getBuiltAt() {
+        return builtAt;
+    }
+
+    List<Entry> entries() {
+        return Arrays.asList(entries);
+    }
+
+    /**
+     * Role yang namanya diawali prefix, terurut berdasarkan nama
+     */
+    List<Entry> prefix(String normalizedPrefix) {
+        List<Entry> results = new ArrayList<>();
+        for (int position = lowerBound(names, normalizedPrefix); position < names.length
+                && names[position].startsWith(normalizedPrefix); position++) {
+            results.add(entries[position]);
+        }
+        return results;
+    }
+
+    /**
+     * Role yang namanya mengandung term, atau deskripsinya mengandung term yang
+     * dimulai di awal kata. Hasil terurut: prefix match dulu, lalu sisanya per nama.
+     */
+    List<Entry> search(String normalizedTerm) {
+        BitSet matches = new BitSet(entries.length);
+
+        // Nama: kandidat dari irisan posting list trigram, lalu verifikasi
+        if (normalizedTerm.length() >= 3) {
+            int[] candidates = null;
+            for (int i = 0; i + 3 <= normalizedTerm.length(); i++) {
+                int[] postings = nameTrigrams.get(normalizedTerm.substring(i, i + 3));
+                if (postings == null) {
+                    candidates = new int[0];
+                    break;
+                }
+                candidates = candidates == null ? postings : intersect(candidates, postings);
+            }
+            for (int position : candidates) {
+                if (names[position].contains(normalizedTerm)) {
+                    matches.set(position);
+                }
+            }
+        } else {
+            for (int position = 0; position < names.length; position++) {
+                if (names[position].contains(normalizedTerm)) {
+                    matches.set(position);
+                }
+            }
+        }
+
+        // Deskripsi: token yang diawali token pertama dari term
+        String[] termTokens = tokenize(normalizedTerm);
+        if (termTokens.length > 0) {
+            String firstToken = termTokens[0];
+            for (int t = lowerBound(tokens, firstToken); t < tokens.length && tokens[t].startsWith(firstToken); t++) {
+                for (int position : tokenPostings[t]) {
+                    if (!matches.get(position) && containsAtWordStart(entries[position].normalizedDescription,
+                            normalizedTerm)) {
+                        matches.set(position);
+                    }
+                }
+            }
+        }
+
+        List<Entry> prefixMatches = new ArrayList<>();
+        List<Entry> otherMatches = new ArrayList<>();
+        for (int position = matches.nextSetBit(0); position >= 0; position = matches.nextSetBit(position + 1)) {
+            (names[position].startsWith(normalizedTerm) ? prefixMatches : otherMatches).add(entries[position]);
+        }
+        prefixMatches.addAll(otherMatches);
+        return prefixMatches;
+    }
+
+    static boolean matches(Entry entry, String normalizedTerm) {
+        return entry.normalizedName.contains(normalizedTerm)
+                || (entry.normalizedDescription != null
+                        && containsAtWordStart(entry.normalizedDescription, normalizedTerm));
+    }
+
+    static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean containsAtWordStart(String text, String term) {
+        for (int index = text.indexOf(term); index >= 0; index = text.indexOf(term, index + 1)) {
+            if (index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] tokenize(String text) {
+        List<String> result = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                result.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,191 @@
+package id.co.swamdia.index;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.repository.RoleChangeListener;
+
+import org.jboss.logging.Logger;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache jumlah role per (realm, client) dan per search term pendek.
+ * Nilai dihitung sekali dengan COUNT lalu disesuaikan +1/-1 saat role dibuat
+ * atau dihapus. Update (nama/deskripsi bisa berubah) membuang count search
+ * realm tersebut. Entry kadaluarsa setelah refreshMillis supaya perubahan dari
+ * node lain tetap terbaca.
+ */
+public class RoleCountCache implements RoleChangeListener {
+    private static final Logger logger = Logger.getLogger(RoleCountCache.class);
+
+    // Scope khusus: realm roles (client_id NULL) dan search di seluruh realm
+    private static final String REALM_SCOPE = "\u0000realm";
+    private static final String ALL_SCOPE = "\u0000all";
+
+    private final int maxTermLength;
+    private final int maxSearchEntries;
+    private final long refreshMillis;
+    private final Map<String, RealmCounts> realms = new ConcurrentHashMap<>();
+    private final AtomicLong searchEntries = new AtomicLong();
+
+    private static final class Count {
+        final AtomicLong value;
+        final long loadedAt = System.currentTimeMillis();
+
+        Count(long value) {
+            this.value = new AtomicLong(value);
+        }
+    }
+
+    private static final class RealmCounts {
+        // Naik setiap ada perubahan; hasil COUNT yang mulai sebelum perubahan tidak disimpan
+        long version;
+        final Map<String, Count> totals = new ConcurrentHashMap<>();
+        // scope + '\0' + term -> count
+        final Map<String, Count> searches = new ConcurrentHashMap<>();
+    }
+
+    public RoleCountCache(int maxTermLength, int maxSearchEntries, long refreshMillis) {
+        this.maxTermLength = maxTermLength;
+        this.maxSearchEntries = maxSearchEntries;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Jumlah realm roles (clientId null) atau client roles untuk satu client
+     *
+     * @param loader COUNT ke database; nilai negatif berarti gagal dan tidak di-cache
+     * @return jumlah, atau nilai negatif dari loader kalau COUNT gagal
+     */
+    public long count(String realmId, String clientId, LongSupplier loader) {
+        return get(realmId, clientId != null ? clientId : REALM_SCOPE, false, loader);
+    }
+
+    /**
+     * Jumlah role yang cocok dengan search term, di seluruh realm (clientId null)
+     * atau untuk satu client. Hanya term pendek yang di-cache; term panjang cukup
+     * selektif untuk langsung di-COUNT.
+     */
+    public long countSearch(String realmId, String clientId, String term, LongSupplier loader) {
+        String normalized = normalize(term);
+        if (!isCacheableTerm(normalized)) {
+            return loader.getAsLong();
+        }
+        return get(realmId, (clientId != null ? clientId : ALL_SCOPE) + '\u0000' + normalized, true, loader);
+    }
+
+    public void invalidate(String realmId) {
+        RealmCounts counts = realms.remove(realmId);
+        if (counts != null) {
+            synchronized (counts) {
+                counts.version++;
+                searchEntries.addAndGet(-counts.searches.size());
+                counts.searches.clear();
+                counts.totals.clear();
+            }
+        }
+    }
+
+    private long get(String realmId, String key, boolean search, LongSupplier loader) {
+        RealmCounts counts = realms.computeIfAbsent(realmId, id -> new RealmCounts());
+        Map<String, Count> map = search ? counts.searches : counts.totals;
+        Count cached = map.get(key);
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt <= refreshMillis) {
+            return cached.value.get();
+        }
+
+        long version;
+        synchronized (counts) {
+            version = counts.version;
+        }
+        long value = loader.getAsLong();
+        if (value < 0) {
+            // Gagal: diteruskan ke pemanggil, bukan dilaporkan sebagai 0 role
+            return value;
+        }
+        synchronized (counts) {
+            if (counts.version != version || realms.get(realmId) != counts) {
+                // Ada perubahan selama COUNT berjalan; jangan simpan nilai yang mungkin sudah usang
+                return value;
+            }
+            if (search && map.get(key) == null && searchEntries.get() >= maxSearchEntries) {
+                return value;
+            }
+            Count previous = map.put(key, new Count(value));
+            if (search && previous == null) {
+                searchEntries.incrementAndGet();
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void onRoleSaved(CustomRoleEntity role, boolean created) {
+        RealmCounts counts = realms.get(role.getRealmId());
+        if (counts == null) {
+            return;
+        }
+        synchronized (counts) {
+            counts.version++;
+            if (created) {
+                adjust(counts, role, 1);
+            } else {
+                // Nama atau deskripsi lama tidak diketahui; hitung ulang count search saat dibutuhkan
+                searchEntries.addAndGet(-counts.searches.size());
+                counts.searches.clear();
+            }
+        }
+    }
+
+    @Override
+    public void onRoleDeleted(CustomRoleEntity role) {
+        RealmCounts counts = realms.get(role.getRealmId());
+        if (counts == null) {
+            return;
+        }
+        synchronized (counts) {
+            counts.version++;
+            adjust(counts, role, -1);
+        }
+    }
+
+    @Override
+    public void onRolesPurged(String realmId, String clientId) {
+        invalidate(realmId);
+    }
+
+    private void adjust(RealmCounts counts, CustomRoleEntity role, long delta) {
+        Count total = counts.totals.get(role.getClientId() != null ? role.getClientId() : REALM_SCOPE);
+        if (total != null) {
+            total.value.addAndGet(delta);
+        }
+
+        String name = normalize(role.getName());
+        String description = role.getDescription() != null ? normalize(role.getDescription()) : null;
+        counts.searches.forEach((key, count) -> {
+            int separator = key.lastIndexOf('\u0000');
+            String scope = key.substring(0, separator);
+            String term = key.substring(separator + 1);
+            boolean inScope = ALL_SCOPE.equals(scope) || scope.equals(role.getClientId());
+            // Sama dengan LIKE '%term%' pada nama atau deskripsi
+            if (inScope && (name.contains(term) || (description != null && description.contains(term)))) {
+                count.value.addAndGet(delta);
+            }
+        });
+        logger.debugf("Adjusted cached role counts for realm %s by %d", role.getRealmId(), delta);
+    }
+
+    private boolean isCacheableTerm(String normalizedTerm) {
+        // Wildcard LIKE tidak bisa dicocokkan ulang dengan contains()
+        return normalizedTerm.length() <= maxTermLength
+                && normalizedTerm.indexOf('%') < 0 && normalizedTerm.indexOf('_') < 0
+                && normalizedTerm.indexOf('\\') < 0 && normalizedTerm.indexOf('\u0000') < 0;
+    }
+
+    private static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
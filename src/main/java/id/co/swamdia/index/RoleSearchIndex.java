@@ -0,0 +1,209 @@
+package id.co.swamdia.index;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.repository.CustomRoleRepository.RoleRowConsumer;
+import id.co.swamdia.repository.RoleChangeListener;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Index pencarian role per realm di memory untuk search di admin console.
+ * Snapshot dasar (RealmSearchIndex) dibangun sekali dari scan database;
+ * write dan event sinkronisasi dicatat sebagai overlay kecil, dan snapshot
+ * dibangun ulang di memory setelah overlay cukup besar.
+ */
+public class RoleSearchIndex implements RoleChangeListener {
+    private static final Logger logger = Logger.getLogger(RoleSearchIndex.class);
+
+    private static final int MAX_OVERLAY = 256;
+
+    private final long refreshMillis;
+    private final Map<String, RealmState> realms = new ConcurrentHashMap<>();
+
+    private static final class RealmState {
+        final CompletableFuture<RealmSearchIndex> base;
+        // id -> state terbaru (null = dihapus)
+        final Map<String, RealmSearchIndex.Entry> overlay = new LinkedHashMap<>();
+
+        RealmState(CompletableFuture<RealmSearchIndex> base) {
+            this.base = base;
+        }
+    }
+
+    public RoleSearchIndex(long refreshMillis) {
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Semua role di realm yang cocok dengan term (nama mengandung term, atau
+     * kata di deskripsi diawali term), prefix match di urutan pertama.
+     *
+     * @param scanner dipakai untuk membaca semua role realm kalau index belum ada
+     */
+    public List<CustomRoleEntity> search(String realmId, String term, Consumer<RoleRowConsumer> scanner) {
+        return searchPage(realmId, term, null, null, scanner);
+    }
+
+    public List<CustomRoleEntity> searchPage(String realmId, String term, Integer first, Integer max,
+            Consumer<RoleRowConsumer> scanner) {
+        List<RealmSearchIndex.Entry> matches = matches(realmId, RealmSearchIndex.normalize(term), scanner);
+        int from = first != null && first > 0 ? Math.min(first, matches.size()) : 0;
+        int to = max != null && max > 0 ? Math.min(matches.size(), from + max) : matches.size();
+
+        List<CustomRoleEntity> page = new ArrayList<>(to - from);
+        for (RealmSearchIndex.Entry entry : matches.subList(from, to)) {
+            page.add(toEntity(realmId, entry));
+        }
+        return page;
+    }
+
+    private List<RealmSearchIndex.Entry> matches(String realmId, String normalizedTerm,
+            Consumer<RoleRowConsumer> scanner) {
+        RealmState state = getState(realmId, scanner);
+        RealmSearchIndex base = state.base.join();
+
+        List<RealmSearchIndex.Entry> overlayMatches = new ArrayList<>();
+        Set<String> overridden;
+        synchronized (state) {
+            if (state.overlay.isEmpty()) {
+                return base.search(normalizedTerm);
+            }
+            overridden = new HashSet<>(state.overlay.keySet());
+            for (RealmSearchIndex.Entry entry : state.overlay.values()) {
+                if (entry != null && RealmSearchIndex.matches(entry, normalizedTerm)) {
+                    overlayMatches.add(entry);
+                }
+            }
+        }
+
+        List<RealmSearchIndex.Entry> results = new ArrayList<>();
+        for (RealmSearchIndex.Entry entry : base.search(normalizedTerm)) {
+            if (!overridden.contains(entry.id)) {
+                results.add(entry);
+            }
+        }
+        if (!overlayMatches.isEmpty()) {
+            results.addAll(overlayMatches);
+            results.sort(Comparator.comparing((RealmSearchIndex.Entry entry) ->
+                    entry.normalizedName.startsWith(normalizedTerm) ? 0 : 1).thenComparing(RealmSearchIndex.BY_NAME));
+        }
+        return results;
+    }
+
+    private RealmState getState(String realmId, Consumer<RoleRowConsumer> scanner) {
+        RealmState state = realms.get(realmId);
+        if (state != null && state.base.isDone() && (state.base.isCompletedExceptionally()
+                || System.currentTimeMillis() - state.base.join().getBuiltAt() > refreshMillis)) {
+            realms.remove(realmId, state);
+            state = null;
+        }
+        if (state != null) {
+            return state;
+        }
+
+        RealmState loading = new RealmState(new CompletableFuture<>());
+        state = realms.putIfAbsent(realmId, loading);
+        if (state != null) {
+            return state;
+        }
+        try {
+            long start = System.nanoTime();
+            List<RealmSearchIndex.Entry> entries = new ArrayList<>();
+            scanner.accept((id, name, description, clientId) ->
+                    entries.add(new RealmSearchIndex.Entry(id, name, description, clientId)));
+            loading.base.complete(new RealmSearchIndex(entries));
+            logger.infof("Built role search index for realm %s: %d roles in %d ms",
+                    realmId, entries.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            realms.remove(realmId, loading);
+            loading.base.completeExceptionally(e);
+            throw e;
+        }
+        return loading;
+    }
+
+    @Override
+    public void onRoleSaved(CustomRoleEntity role, boolean created) {
+        apply(role.getRealmId(), role.getId(), new RealmSearchIndex.Entry(
+                role.getId(), role.getName(), role.getDescription(), role.getClientId()));
+    }
+
+    @Override
+    public void onRoleDeleted(CustomRoleEntity role) {
+        apply(role.getRealmId(), role.getId(), null);
+    }
+
+    @Override
+    public void onRolesPurged(String realmId, String clientId) {
+        // Dibangun ulang dari database saat search berikutnya
+        invalidate(realmId);
+    }
+
+    public void invalidate(String realmId) {
+        realms.remove(realmId);
+    }
+
+    private void apply(String realmId, String roleId, RealmSearchIndex.Entry entry) {
+        while (true) {
+            RealmState state = realms.get(realmId);
+            if (state == null) {
+                return;
+            }
+            synchronized (state) {
+                // State bisa sudah diganti oleh compaction; ulangi dengan state terbaru
+                if (realms.get(realmId) != state) {
+                    continue;
+                }
+                state.overlay.put(roleId, entry);
+                if (state.overlay.size() >= MAX_OVERLAY && state.base.isDone()
+                        && !state.base.isCompletedExceptionally()) {
+                    compact(realmId, state);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gabungkan overlay ke snapshot baru (di memory, tanpa database).
+     * Dipanggil sambil memegang lock state.
+     */
+    private void compact(String realmId, RealmState state) {
+        Map<String, RealmSearchIndex.Entry> merged = new LinkedHashMap<>();
+        for (RealmSearchIndex.Entry entry : state.base.join().entries()) {
+            merged.put(entry.id, entry);
+        }
+        state.overlay.forEach((id, entry) -> {
+            if (entry == null) {
+                merged.remove(id);
+            } else {
+                merged.put(id, entry);
+            }
+        });
+        RealmState compacted = new RealmState(
+                CompletableFuture.completedFuture(new RealmSearchIndex(merged.values())));
+        realms.replace(realmId, state, compacted);
+        logger.debugf("Compacted role search index overlay for realm %s", realmId);
+    }
+
+    private static CustomRoleEntity toEntity(String realmId, RealmSearchIndex.Entry entry) {
+        CustomRoleEntity entity = new CustomRoleEntity();
+        entity.setId(entry.id);
+        entity.setName(entry.name);
+        entity.setDescription(entry.description);
+        entity.setRealmId(realmId);
+        entity.setClientId(entry.clientId);
+        return entity;
+    }
+}
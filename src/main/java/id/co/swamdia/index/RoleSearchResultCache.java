@@ -0,0 +1,345 @@
+package id.co.swamdia.index;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.entity.RoleView;
+import id.co.swamdia.repository.RoleChangeListener;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Cache hasil search role ke database: (realm, filter client, term) ke daftar
+ * ID role yang sudah berurutan. Halaman berikutnya dari search yang sama
+ * diambil dari daftar ini dan hanya role di halaman itu yang dibaca lewat
+ * primary key, tanpa LIKE scan lagi.
+ * <p>
+ * Ukuran cache dibatasi dengan bobot (kira-kira satu unit per ID yang
+ * disimpan), entry yang paling lama tidak dipakai dibuang lebih dulu (LRU).
+ * Write hanya membuang entry yang isinya berubah karena write tersebut:
+ * role baru yang cocok dengan term, role yang keluar dari hasil, atau role
+ * yang dihapus. Entry kadaluarsa setelah ttlMillis supaya perubahan dari
+ * node lain tetap terbaca.
+ */
+public class RoleSearchResultCache implements RoleChangeListener {
+    private static final Logger logger = Logger.getLogger(RoleSearchResultCache.class);
+
+    private final long maxWeight;
+    private final long maxEntryWeight;
+    private final long ttlMillis;
+
+    // Urutan akses (LRU); key = realm + '\0' + scope + '\0' + term
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // realm -> entry di realm itu, untuk invalidasi tanpa mengubah urutan LRU
+    private final Map<String, Map<String, Entry>> realmEntries = new HashMap<>();
+    // Naik setiap ada write di realm; hasil load yang mulai sebelum write tidak disimpan
+    private final Map<String, Long> generations = new HashMap<>();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private static final class Entry {
+        final String realmId;
+        final Scope scope;
+        final String term;
+        final String[] ids;
+        final long weight;
+        final long loadedAt = System.currentTimeMillis();
+
+        Entry(String realmId, Scope scope, String term, String[] ids) {
+            this.realmId = realmId;
+            this.scope = scope;
+            this.term = term;
+            this.ids = ids;
+            this.weight = 1L + ids.length + scope.clientCount();
+        }
+
+        boolean contains(String roleId) {
+            for (String id : ids) {
+                if (id.equals(roleId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Filter client dari search: semua role, semua client role, atau role dari
+     * client tertentu
+     */
+    public static final class Scope {
+        private static final Scope ALL_ROLES = new Scope("\u0000all", null);
+        private static final Scope CLIENT_ROLES = new Scope("\u0000clients", null);
+
+        private final String key;
+        private final Set<String> clientIds;
+
+        private Scope(String key, Set<String> clientIds) {
+            this.key = key;
+            this.clientIds = clientIds;
+        }
+
+        public static Scope allRoles() {
+            return ALL_ROLES;
+        }
+
+        /**
+         * Semua client role (tanpa realm roles)
+         */
+        public static Scope clientRoles() {
+            return CLIENT_ROLES;
+        }
+
+        public static Scope clients(Collection<String> clientIds) {
+            Set<String> sorted = new TreeSet<>(clientIds);
+            return new Scope(String.join(",", sorted), sorted);
+        }
+
+        /**
+         * Identitas scope, untuk key cache dan coalescing
+         */
+        public String getKey() {
+            return key;
+        }
+
+        boolean includes(String clientId) {
+            if (this == ALL_ROLES) {
+                return true;
+            }
+            if (this == CLIENT_ROLES) {
+                return clientId != null;
+            }
+            return clientId != null && clientIds.contains(clientId);
+        }
+
+        int clientCount() {
+            return clientIds != null ? clientIds.size() : 0;
+        }
+    }
+
+    /**
+     * @param maxWeight      total bobot semua entry (kira-kira jumlah ID yang disimpan)
+     * @param maxEntryWeight hasil yang lebih besar tidak di-cache supaya tidak
+     *                       mendorong keluar banyak entry lain
+     */
+    public RoleSearchResultCache(long maxWeight, long maxEntryWeight, long ttlMillis) {
+        this.maxWeight = maxWeight;
+        this.maxEntryWeight = Math.min(maxWeight, maxEntryWeight);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Term dengan wildcard LIKE tidak di-cache karena tidak bisa dicocokkan
+     * ulang dengan contains() saat invalidasi
+     */
+    public static boolean isCacheable(String term) {
+        return term != null && term.indexOf('%') < 0 && term.indexOf('_') < 0
+                && term.indexOf('\\') < 0 && term.indexOf('\u0000') < 0;
+    }
+
+    /**
+     * Satu halaman hasil search. Cache miss: loader menjalankan search penuh,
+     * ID hasilnya disimpan dan halaman diambil dari hasil itu. Cache hit: hanya
+     * ID di halaman yang dibaca lewat resolver.
+     *
+     * @param first    offset, null atau &lt;= 0 dari awal
+     * @param max      jumlah maksimal, null atau &lt;= 0 untuk semua
+     * @param loader   search penuh ke database; exception tidak di-cache
+     * @param resolver role untuk sekumpulan ID (urutan bebas, ID yang sudah
+     *                 dihapus boleh tidak ada)
+     */
+    public List<RoleView> getPage(String realmId, Scope scope, String term, Integer first, Integer max,
+            Supplier<List<RoleView>> loader, Function<List<String>, List<RoleView>> resolver) {
+        String normalized = term.toLowerCase(Locale.ROOT);
+        String key = realmId + '\u0000' + scope.getKey() + '\u0000' + normalized;
+
+        Entry entry;
+        long generation;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && System.currentTimeMillis() - entry.loadedAt > ttlMillis) {
+                remove(key, entry);
+                entry = null;
+            }
+            generation = generations.getOrDefault(realmId, 0L);
+        }
+
+        if (entry != null) {
+            hits.increment();
+            return resolve(key, entry, first, max, resolver);
+        }
+
+        misses.increment();
+        List<RoleView> results = loader.get();
+        String[] ids = new String[results.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = results.get(i).getId();
+        }
+        put(key, new Entry(realmId, scope, normalized, ids), generation);
+        int from = from(first, results.size());
+        return new ArrayList<>(results.subList(from, to(from, max, results.size())));
+    }
+
+    private List<RoleView> resolve(String key, Entry entry, Integer first, Integer max,
+            Function<List<String>, List<RoleView>> resolver) {
+        int from = from(first, entry.ids.length);
+        List<String> pageIds = Arrays.asList(entry.ids).subList(from, to(from, max, entry.ids.length));
+        if (pageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, RoleView> byId = new HashMap<>();
+        for (RoleView view : resolver.apply(pageIds)) {
+            byId.put(view.getId(), view);
+        }
+        List<RoleView> page = new ArrayList<>(pageIds.size());
+        for (String id : pageIds) {
+            RoleView view = byId.get(id);
+            if (view != null) {
+                page.add(view);
+            }
+        }
+        if (page.size() < pageIds.size()) {
+            // Role dihapus di node lain; search berikutnya dimuat ulang
+            synchronized (this) {
+                remove(key, entry);
+            }
+        }
+        return page;
+    }
+
+    private synchronized void put(String key, Entry entry, long generation) {
+        if (entry.weight > maxEntryWeight || generations.getOrDefault(entry.realmId, 0L) != generation) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            forget(key, previous);
+        }
+        realmEntries.computeIfAbsent(entry.realmId, id -> new HashMap<>()).put(key, entry);
+        weight += entry.weight;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            Map.Entry<String, Entry> next = eldest.next();
+            eldest.remove();
+            forget(next.getKey(), next.getValue());
+            evictions.increment();
+        }
+    }
+
+    // Dipanggil sambil memegang lock
+    private void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            forget(key, entry);
+        }
+    }
+
+    private void forget(String key, Entry entry) {
+        weight -= entry.weight;
+        Map<String, Entry> inRealm = realmEntries.get(entry.realmId);
+        if (inRealm != null && inRealm.remove(key, entry) && inRealm.isEmpty()) {
+            realmEntries.remove(entry.realmId);
+        }
+    }
+
+    public synchronized void invalidate(String realmId) {
+        generations.merge(realmId, 1L, Long::sum);
+        Map<String, Entry> inRealm = realmEntries.remove(realmId);
+        if (inRealm != null) {
+            inRealm.forEach((key, entry) -> {
+                entries.remove(key, entry);
+                weight -= entry.weight;
+            });
+        }
+    }
+
+    @Override
+    public void onRoleSaved(CustomRoleEntity role, boolean created) {
+        String name = role.getName() != null ? role.getName().toLowerCase(Locale.ROOT) : "";
+        String description = role.getDescription() != null ? role.getDescription().toLowerCase(Locale.ROOT) : null;
+        // Entry dibuang hanya kalau keanggotaan role di hasil berubah; data role
+        // di halaman selalu dibaca ulang lewat ID
+        invalidateWhere(role.getRealmId(), entry -> {
+            boolean matches = entry.scope.includes(role.getClientId())
+                    && (name.contains(entry.term) || (description != null && description.contains(entry.term)));
+            return created ? matches : matches != entry.contains(role.getId());
+        });
+    }
+
+    @Override
+    public void onRoleDeleted(CustomRoleEntity role) {
+        invalidateWhere(role.getRealmId(), entry -> entry.contains(role.getId()));
+    }
+
+    @Override
+    public void onRolesPurged(String realmId, String clientId) {
+        if (clientId == null) {
+            invalidate(realmId);
+        } else {
+            invalidateWhere(realmId, entry -> entry.scope.includes(clientId));
+        }
+    }
+
+    private synchronized void invalidateWhere(String realmId, Predicate<Entry> affected) {
+        generations.merge(realmId, 1L, Long::sum);
+        Map<String, Entry> inRealm = realmEntries.get(realmId);
+        if (inRealm == null) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> stale = new ArrayList<>();
+        for (Map.Entry<String, Entry> candidate : inRealm.entrySet()) {
+            if (affected.test(candidate.getValue())) {
+                stale.add(candidate);
+            }
+        }
+        for (Map.Entry<String, Entry> candidate : stale) {
+            remove(candidate.getKey(), candidate.getValue());
+            invalidations.increment();
+        }
+        if (!stale.isEmpty()) {
+            logger.debugf("Invalidated %d cached role searches in realm %s", stale.size(), realmId);
+        }
+    }
+
+    private static int from(Integer first, int size) {
+        return first != null && first > 0 ? Math.min(first, size) : 0;
+    }
+
+    private static int to(int from, Integer max, int size) {
+        return max != null && max > 0 ? (int) Math.min(size, (long) from + max) : size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+}
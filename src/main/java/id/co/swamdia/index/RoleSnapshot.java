@@ -0,0 +1,340 @@
+package id.co.swamdia.index;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot biner semua role satu realm yang di-memory-map dari disk.
+ * Lookup by ID dan by (client, nama) memakai binary search langsung di
+ * buffer, jadi bisa dipakai begitu file dibuka tanpa membangun index.
+ *
+ * <pre>
+ * header : magic, version, watermark (epoch mikrodetik updated_at), writtenAt (ms),
+ *          count, payloadLength, crc32(payload)
+ * payload: realmId, count x record [id, name, description, clientId],
+ *          int[count] offset record urut ID, int[count] offset record urut (clientId, name)
+ * </pre>
+ * String ditulis sebagai panjang (int, -1 untuk null) lalu byte UTF-8.
+ */
+public final class RoleSnapshot {
+
+    private static final int MAGIC = 0x52534e50; // "RSNP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+    public static final long NO_WATERMARK = Long.MIN_VALUE;
+
+    private final String realmId;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final long watermark;
+    private final long writtenAt;
+    private final int byIdStart;
+    private final int byNameStart;
+
+    private RoleSnapshot(String realmId, ByteBuffer buffer, int count, long watermark, long writtenAt,
+            int byIdStart, int byNameStart) {
+        this.realmId = realmId;
+        this.buffer = buffer;
+        this.count = count;
+        this.watermark = watermark;
+        this.writtenAt = writtenAt;
+        this.byIdStart = byIdStart;
+        this.byNameStart = byNameStart;
+    }
+
+    /**
+     * Tulis snapshot ke file sementara lalu pindahkan secara atomik ke target,
+     * sehingga pembaca tidak pernah melihat file setengah jadi
+     */
+    public static void write(Path target, String realmId, long watermark, List<CustomRoleEntity> roles)
+            throws IOException {
+        int size = roles.size();
+        byte[][] ids = new byte[size][];
+        byte[][] names = new byte[size][];
+        byte[][] descriptions = new byte[size][];
+        byte[][] clientIds = new byte[size][];
+        byte[] realmBytes = utf8(realmId);
+
+        int payloadLength = 4 + realmBytes.length + size * 8;
+        int[] offsets = new int[size];
+        int offset = 4 + realmBytes.length;
+        for (int i = 0; i < size; i++) {
+            CustomRoleEntity role = roles.get(i);
+            ids[i] = utf8(role.getId());
+            names[i] = utf8(role.getName());
+            descriptions[i] = utf8(role.getDescription());
+            clientIds[i] = utf8(role.getClientId());
+            offsets[i] = offset;
+            int recordLength = 16 + length(ids[i]) + length(names[i]) + length(descriptions[i])
+                    + length(clientIds[i]);
+            offset += recordLength;
+            payloadLength += recordLength;
+        }
+
+        Integer[] byId = order(size, Comparator.comparing(i -> ids[i], Arrays::compareUnsigned));
+        Integer[] byName = order(size, (a, b) -> compareNameKey(clientIds[a], names[a], clientIds[b], names[b]));
+
+        ByteBuffer payload = ByteBuffer.allocate(payloadLength).order(ByteOrder.BIG_ENDIAN);
+        putString(payload, realmBytes);
+        for (int i = 0; i < size; i++) {
+            putString(payload, ids[i]);
+            putString(payload, names[i]);
+            putString(payload, descriptions[i]);
+            putString(payload, clientIds[i]);
+        }
+        for (Integer position : byId) {
+            payload.putInt(offsets[position]);
+        }
+        for (Integer position : byName) {
+            payload.putInt(offsets[position]);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, payloadLength);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(watermark).putLong(System.currentTimeMillis())
+                .putInt(size).putInt(payloadLength).putInt((int) crc.getValue());
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temp)) {
+            output.write(header.array());
+            output.write(payload.array(), 0, payloadLength);
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Memory-map file snapshot dan validasi header serta checksum
+     *
+     * @throws IOException kalau file tidak bisa dibaca, versi tidak dikenal, atau checksum salah
+     */
+    public static RoleSnapshot open(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid role snapshot size: " + channel.size());
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a role snapshot: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported role snapshot version " + buffer.getInt(4) + ": " + file);
+        }
+        long watermark = buffer.getLong(8);
+        long writtenAt = buffer.getLong(16);
+        int count = buffer.getInt(24);
+        int payloadLength = buffer.getInt(28);
+        int expectedCrc = buffer.getInt(32);
+        if (count < 0 || payloadLength < 0 || HEADER_BYTES + (long) payloadLength != buffer.capacity()) {
+            throw new IOException("Truncated role snapshot: " + file);
+        }
+
+        ByteBuffer payload = buffer.slice(HEADER_BYTES, payloadLength).order(ByteOrder.BIG_ENDIAN);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Role snapshot checksum mismatch: " + file);
+        }
+
+        String realmId = readString(payload, 0);
+        int byIdStart = payloadLength - count * 8;
+        return new RoleSnapshot(realmId, payload, count, watermark, writtenAt, byIdStart, byIdStart + count * 4);
+    }
+
+    public String getRealmId() {
+        return realmId;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * updated_at terbesar saat snapshot dibuat (NO_WATERMARK kalau realm kosong)
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public long getWrittenAt() {
+        return writtenAt;
+    }
+
+    public CustomRoleEntity findById(String id) {
+        byte[] key = utf8(id);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = buffer.getInt(byIdStart + mid * 4);
+            int cmp = compareAt(record, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return toEntity(record);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param clientId null untuk realm role
+     */
+    public CustomRoleEntity findByName(String clientId, String name) {
+        byte[] clientKey = utf8(clientId);
+        byte[] nameKey = utf8(name);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = buffer.getInt(byNameStart + mid * 4);
+            int namePosition = skip(record);
+            int clientPosition = skip(skip(namePosition));
+            int cmp = compareAt(clientPosition, clientKey);
+            if (cmp == 0) {
+                cmp = compareAt(namePosition, nameKey);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return toEntity(record);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Semua role dalam snapshot sebagai entity detached (urut ID)
+     */
+    public void forEach(Consumer<CustomRoleEntity> consumer) {
+        for (int i = 0; i < count; i++) {
+            consumer.accept(toEntity(buffer.getInt(byIdStart + i * 4)));
+        }
+    }
+
+    private CustomRoleEntity toEntity(int record) {
+        CustomRoleEntity entity = new CustomRoleEntity();
+        int position = record;
+        entity.setId(readString(buffer, position));
+        position = skip(position);
+        entity.setName(readString(buffer, position));
+        position = skip(position);
+        entity.setDescription(readString(buffer, position));
+        position = skip(position);
+        entity.setClientId(readString(buffer, position));
+        entity.setRealmId(realmId);
+        return entity;
+    }
+
+    private int skip(int position) {
+        return position + 4 + Math.max(0, buffer.getInt(position));
+    }
+
+    // Bandingkan string di buffer dengan key (unsigned UTF-8); null lebih kecil dari string apapun
+    private int compareAt(int position, byte[] key) {
+        int length = buffer.getInt(position);
+        if (length < 0 || key == null) {
+            return Integer.compare(length < 0 ? 0 : 1, key == null ? 0 : 1);
+        }
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(buffer.get(position + 4 + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static int compareNameKey(byte[] clientA, byte[] nameA, byte[] clientB, byte[] nameB) {
+        int cmp = compareNullable(clientA, clientB);
+        return cmp != 0 ? cmp : compareNullable(nameA, nameB);
+    }
+
+    private static int compareNullable(byte[] a, byte[] b) {
+        if (a == null || b == null) {
+            return Integer.compare(a == null ? 0 : 1, b == null ? 0 : 1);
+        }
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    private static Integer[] order(int size, Comparator<Integer> comparator) {
+        Integer[] positions = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+        }
+        Arrays.sort(positions, comparator);
+        return positions;
+    }
+
+    private static String readString(ByteBuffer buffer, int position) {
+        int length = buffer.getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int length(byte[] value) {
+        return value != null ? value.length : 0;
+    }
+
+    /**
+     * Watermark dari updated_at (disimpan tanpa zona, sama seperti kolomnya)
+     */
+    public static long toWatermark(LocalDateTime updatedAt) {
+        if (updatedAt == null) {
+            return NO_WATERMARK;
+        }
+        return updatedAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + updatedAt.getNano() / 1_000;
+    }
+
+    public static LocalDateTime fromWatermark(long watermark) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(watermark, 1_000_000L),
+                (int) Math.floorMod(watermark, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+}
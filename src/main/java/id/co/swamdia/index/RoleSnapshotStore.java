@@ -0,0 +1,399 @@
+package id.co.swamdia.index;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.repository.CustomRoleRepository;
+import id.co.swamdia.repository.RoleChangeListener;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Snapshot role per realm di disk lokal supaya node yang baru start langsung
+ * punya data hangat. Saat boot file snapshot di-memory-map dan langsung dipakai
+ * untuk lookup; begitu database tersedia, perubahan sejak watermark diambil
+ * lewat query delta. Snapshot ditulis ulang penuh secara berkala.
+ * <p>
+ * Perubahan lokal (RoleChangeNotifier) dan hasil delta disimpan di overlay
+ * sampai snapshot berikutnya. Snapshot hanya menjawab lookup selama database
+ * tidak tersedia atau sebelum catch-up realm selesai (lihat isCatchingUp);
+ * perubahan dari node lain baru terlihat di snapshot pada refresh berikutnya.
+ */
+public class RoleSnapshotStore implements RoleChangeListener {
+    private static final Logger logger = Logger.getLogger(RoleSnapshotStore.class);
+
+    private static final String SUFFIX = ".snap";
+    // updated_at diisi jam node Keycloak; delta dimulai sedikit sebelum watermark
+    private static final Duration DELTA_OVERLAP = Duration.ofMinutes(1);
+
+    private final Path directory;
+    private final long refreshMillis;
+    private final Map<String, RealmSnapshot> realms = new ConcurrentHashMap<>();
+    private final AtomicLong changeSequence = new AtomicLong();
+
+    private volatile Function<String, CustomRoleRepository> repositories;
+    private ScheduledExecutorService scheduler;
+
+    public RoleSnapshotStore(Path directory, long refreshMillis) {
+        this.directory = directory;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Buka semua snapshot di direktori. File rusak (checksum/versi) dilewati
+     * dan akan ditimpa pada refresh berikutnya.
+     */
+    public void load() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            logger.warnf(e, "Cannot create role snapshot directory %s", directory);
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                long start = System.nanoTime();
+                try {
+                    RoleSnapshot snapshot = RoleSnapshot.open(file);
+                    realms.computeIfAbsent(snapshot.getRealmId(), id -> new RealmSnapshot()).snapshot = snapshot;
+                    logger.infof("Loaded role snapshot for realm %s: %d roles, written %d s ago (%d ms)",
+                            snapshot.getRealmId(), snapshot.size(),
+                            (System.currentTimeMillis() - snapshot.getWrittenAt()) / 1000,
+                            (System.nanoTime() - start) / 1_000_000);
+                } catch (IOException | RuntimeException e) {
+                    logger.warnf("Ignoring unreadable role snapshot %s: %s", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warnf(e, "Cannot list role snapshot directory %s", directory);
+        }
+    }
+
+    /**
+     * Mulai catch-up dan refresh berkala setelah database tersedia. Catch-up
+     * berjalan di background, jadi lookup tetap dilayani dari snapshot.
+     */
+    public synchronized void start(Function<String, CustomRoleRepository> repositories) {
+        this.repositories = repositories;
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "role-store-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (String realmId : realms.keySet()) {
+            scheduler.execute(() -> catchUp(realmId));
+        }
+        scheduler.scheduleWithFixedDelay(this::refreshAll, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * True selama realm punya snapshot dari disk yang belum disusul dengan
+     * database (catch-up atau refresh pertama belum selesai). Setelah itu
+     * lookup harus lewat jalur biasa ke database.
+     */
+    public boolean isCatchingUp(String realmId) {
+        RealmSnapshot realm = track(realmId);
+        return realm.snapshot != null && !realm.caughtUp;
+    }
+
+    /**
+     * Jadwalkan catch-up realm yang snapshot-nya belum disusul, misalnya
+     * karena database realm itu baru diketahui setelah start()
+     */
+    public void requestCatchUp(String realmId) {
+        RealmSnapshot realm = realms.get(realmId);
+        ScheduledExecutorService current = scheduler;
+        if (realm != null && !realm.caughtUp && current != null && !current.isShutdown()) {
+            current.execute(() -> catchUp(realmId));
+        }
+    }
+
+    /**
+     * Buang snapshot realm (misalnya database realm diganti); snapshot baru
+     * dibuat di background saat realm diakses lagi
+     */
+    public void invalidate(String realmId) {
+        if (realms.remove(realmId) != null) {
+            deleteFile(realmId);
+        }
+    }
+
+    public boolean hasSnapshots() {
+        for (RealmSnapshot realm : realms.values()) {
+            if (realm.snapshot != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return role, atau null kalau tidak ada di snapshot/overlay (tanya database)
+     */
+    public CustomRoleEntity findById(String realmId, String id) {
+        RealmSnapshot realm = track(realmId);
+        OverlayEntry changed = realm.overlay.get(id);
+        if (changed != null) {
+            return changed.role != null ? changed.role.copy() : null;
+        }
+        RoleSnapshot snapshot = realm.snapshot;
+        return snapshot != null ? snapshot.findById(id) : null;
+    }
+
+    /**
+     * @param clientId null untuk realm role
+     * @return role, atau null kalau tidak ada di snapshot/overlay (tanya database)
+     */
+    public CustomRoleEntity findByName(String realmId, String clientId, String name) {
+        RealmSnapshot realm = track(realmId);
+        for (OverlayEntry changed : realm.overlay.values()) {
+            if (changed.role != null && Objects.equals(changed.role.getClientId(), clientId)
+                    && changed.role.getName().equals(name)) {
+                return changed.role.copy();
+            }
+        }
+        RoleSnapshot snapshot = realm.snapshot;
+        CustomRoleEntity role = snapshot != null ? snapshot.findByName(clientId, name) : null;
+        // Role yang sudah diubah/dihapus sejak snapshot hanya berlaku versi overlay
+        if (role != null && realm.overlay.containsKey(role.getId())) {
+            return null;
+        }
+        return role;
+    }
+
+    /**
+     * Semua role realm dari snapshot + overlay; dipakai saat database tidak
+     * tersedia. List kosong kalau realm tidak punya snapshot.
+     */
+    public List<CustomRoleEntity> listRoles(String realmId) {
+        RealmSnapshot realm = track(realmId);
+        List<CustomRoleEntity> roles = new ArrayList<>();
+        RoleSnapshot snapshot = realm.snapshot;
+        if (snapshot != null) {
+            snapshot.forEach(role -> {
+                if (!realm.overlay.containsKey(role.getId())) {
+                    roles.add(role);
+                }
+            });
+        }
+        for (OverlayEntry changed : realm.overlay.values()) {
+            if (changed.role != null) {
+                roles.add(changed.role.copy());
+            }
+        }
+        return roles;
+    }
+
+    @Override
+    public void onRoleSaved(CustomRoleEntity role, boolean created) {
+        RealmSnapshot realm = realms.get(role.getRealmId());
+        if (realm != null) {
+            realm.overlay.put(role.getId(), new OverlayEntry(role, changeSequence.incrementAndGet()));
+        }
+    }
+
+    @Override
+    public void onRoleDeleted(CustomRoleEntity role) {
+        RealmSnapshot realm = realms.get(role.getRealmId());
+        if (realm != null) {
+            realm.overlay.put(role.getId(), new OverlayEntry(null, changeSequence.incrementAndGet()));
+        }
+    }
+
+    /**
+     * Realm dihapus: snapshot dan filenya dibuang. Client dihapus: role client
+     * itu ditandai terhapus di overlay sampai snapshot berikutnya.
+     */
+    @Override
+    public void onRolesPurged(String realmId, String clientId) {
+        RealmSnapshot realm = realms.get(realmId);
+        if (realm == null) {
+            return;
+        }
+        if (clientId == null) {
+            realms.remove(realmId, realm);
+            deleteFile(realmId);
+            return;
+        }
+        RoleSnapshot snapshot = realm.snapshot;
+        if (snapshot != null) {
+            snapshot.forEach(role -> {
+                if (clientId.equals(role.getClientId())) {
+                    realm.overlay.put(role.getId(), new OverlayEntry(null, changeSequence.incrementAndGet()));
+                }
+            });
+        }
+        realm.overlay.replaceAll((id, entry) -> entry.role != null && clientId.equals(entry.role.getClientId())
+                ? new OverlayEntry(null, changeSequence.incrementAndGet())
+                : entry);
+    }
+
+    private void deleteFile(String realmId) {
+        try {
+            Files.deleteIfExists(directory.resolve(fileName(realmId)));
+        } catch (IOException e) {
+            logger.warnf("Cannot delete role snapshot for removed realm %s: %s", realmId, e.getMessage());
+        }
+    }
+
+    // Realm yang pernah diakses ikut di-snapshot; snapshot pertama dibuat di background
+    private RealmSnapshot track(String realmId) {
+        RealmSnapshot realm = realms.get(realmId);
+        if (realm != null) {
+            return realm;
+        }
+        RealmSnapshot created = new RealmSnapshot();
+        realm = realms.putIfAbsent(realmId, created);
+        if (realm != null) {
+            return realm;
+        }
+        ScheduledExecutorService current = scheduler;
+        if (current != null && !current.isShutdown()) {
+            current.execute(() -> refresh(realmId));
+        }
+        return created;
+    }
+
+    /**
+     * Ambil role yang berubah sejak watermark snapshot dan hapus role yang sudah
+     * tidak ada di database, tanpa membaca ulang seluruh realm
+     */
+    private void catchUp(String realmId) {
+        RealmSnapshot realm = realms.get(realmId);
+        if (realm != null && realm.caughtUp) {
+            return;
+        }
+        RoleSnapshot snapshot = realm != null ? realm.snapshot : null;
+        if (snapshot == null) {
+            refresh(realmId);
+            return;
+        }
+        if (snapshot.getWatermark() == RoleSnapshot.NO_WATERMARK) {
+            refresh(realmId);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            CustomRoleRepository repository = repositories.apply(realmId);
+            LocalDateTime since = RoleSnapshot.fromWatermark(snapshot.getWatermark()).minus(DELTA_OVERLAP);
+            List<CustomRoleEntity> changed = repository.findUpdatedSince(realmId, since);
+            Set<String> liveIds = new HashSet<>(repository.findIdsByRealm(realmId));
+
+            for (CustomRoleEntity role : changed) {
+                realm.overlay.put(role.getId(), new OverlayEntry(role.copy(), changeSequence.incrementAndGet()));
+            }
+            int[] deleted = { 0 };
+            snapshot.forEach(role -> {
+                if (!liveIds.contains(role.getId())) {
+                    realm.overlay.putIfAbsent(role.getId(), new OverlayEntry(null, changeSequence.incrementAndGet()));
+                    deleted[0]++;
+                }
+            });
+            realm.caughtUp = true;
+            logger.infof("Role snapshot for realm %s caught up: %d changed, %d deleted in %d ms",
+                    realmId, changed.size(), deleted[0], (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            logger.warnf("Role snapshot catch-up for realm %s failed, serving snapshot as is: %s",
+                    realmId, e.getMessage());
+        }
+    }
+
+    private void refreshAll() {
+        for (String realmId : realms.keySet()) {
+            refresh(realmId);
+        }
+    }
+
+    /**
+     * Baca ulang seluruh realm, tulis ke disk, lalu ganti snapshot yang dipakai.
+     * Overlay yang lebih baru dari awal pembacaan tetap dipertahankan.
+     */
+    private void refresh(String realmId) {
+        RealmSnapshot realm = realms.get(realmId);
+        Function<String, CustomRoleRepository> current = repositories;
+        if (realm == null || current == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        long sequence = changeSequence.get();
+        try {
+            CustomRoleRepository repository = current.apply(realmId);
+            // Watermark diambil sebelum scan: baris yang masuk selama scan ikut delta berikutnya
+            long watermark = RoleSnapshot.toWatermark(repository.findMaxUpdatedAt(realmId));
+            List<CustomRoleEntity> roles = new ArrayList<>();
+            repository.scanAllRoles(realmId, (id, name, description, clientId) -> {
+                CustomRoleEntity role = new CustomRoleEntity();
+                role.setId(id);
+                role.setName(name);
+                role.setDescription(description);
+                role.setClientId(clientId);
+                roles.add(role);
+            });
+
+            Path file = directory.resolve(fileName(realmId));
+            RoleSnapshot.write(file, realmId, watermark, roles);
+            realm.snapshot = RoleSnapshot.open(file);
+            realm.overlay.values().removeIf(entry -> entry.sequence <= sequence);
+            realm.caughtUp = true;
+            if (realms.get(realmId) != realm) {
+                // Realm dihapus selama refresh; jangan tinggalkan file untuk boot berikutnya
+                deleteFile(realmId);
+                return;
+            }
+            logger.debugf("Wrote role snapshot for realm %s: %d roles in %d ms",
+                    realmId, roles.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            logger.warnf("Failed to refresh role snapshot for realm %s: %s", realmId, e.getMessage());
+        }
+    }
+
+    private static String fileName(String realmId) {
+        return URLEncoder.encode(realmId, StandardCharsets.UTF_8) + SUFFIX;
+    }
+
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static final class RealmSnapshot {
+        private volatile RoleSnapshot snapshot;
+        // Snapshot sudah disusul dengan database (catch-up atau refresh)
+        private volatile boolean caughtUp;
+        // ID role -> versi terbaru sejak snapshot (role null = dihapus)
+        private final Map<String, OverlayEntry> overlay = new ConcurrentHashMap<>();
+    }
+
+    private static final class OverlayEntry {
+        private final CustomRoleEntity role;
+        private final long sequence;
+
+        private OverlayEntry(CustomRoleEntity role, long sequence) {
+            this.role = role;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package id.co.swamdia.jfr;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Listener Hibernate (hibernate.session.events.auto, satu instance per session)
+ * yang mengukur waktu ambil connection dari pool dan waktu eksekusi statement
+ * untuk event JFR. Tanpa event aktif setiap callback hanya satu ThreadLocal.get.
+ */
+public class JdbcTimingListener extends BaseSessionEventListener {
+
+    private long acquireStart;
+    private long executeStart;
+    private long batchStart;
+
+    @Override
+    public void jdbcConnectionAcquisitionStart() {
+        acquireStart = JdbcTimings.active() != null ? System.nanoTime() : 0;
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionEnd() {
+        JdbcTimings timings = JdbcTimings.active();
+        if (timings != null && acquireStart != 0) {
+            timings.addPoolNanos(System.nanoTime() - acquireStart);
+        }
+        acquireStart = 0;
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        executeStart = JdbcTimings.active() != null ? System.nanoTime() : 0;
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        JdbcTimings timings = JdbcTimings.active();
+        if (timings != null && executeStart != 0) {
+            timings.addSqlNanos(System.nanoTime() - executeStart);
+        }
+        executeStart = 0;
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        batchStart = JdbcTimings.active() != null ? System.nanoTime() : 0;
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        JdbcTimings timings = JdbcTimings.active();
+        if (timings != null && batchStart != 0) {
+            timings.addSqlNanos(System.nanoTime() - batchStart);
+        }
+        batchStart = 0;
+    }
+}
@@ -0,0 +1,59 @@
+package id.co.swamdia.jfr;
+
+/**
+ * Akumulasi waktu tunggu pool dan waktu eksekusi SQL per thread, diisi oleh
+ * JdbcTimingListener. Hanya aktif selama ada RoleStorageEvent yang sedang
+ * direkam di thread tersebut; di luar itu listener tidak mencatat apapun.
+ */
+final class JdbcTimings {
+    private static final ThreadLocal<JdbcTimings> CURRENT = new ThreadLocal<>();
+
+    private long poolNanos;
+    private long sqlNanos;
+    private int depth;
+
+    private JdbcTimings() {
+    }
+
+    /**
+     * Aktifkan pencatatan di thread ini; event bersarang memakai akumulator yang sama
+     */
+    static JdbcTimings open() {
+        JdbcTimings timings = CURRENT.get();
+        if (timings == null) {
+            timings = new JdbcTimings();
+            CURRENT.set(timings);
+        }
+        timings.depth++;
+        return timings;
+    }
+
+    /**
+     * @return akumulator thread ini, atau null kalau tidak ada event yang direkam
+     */
+    static JdbcTimings active() {
+        return CURRENT.get();
+    }
+
+    void close() {
+        if (--depth == 0) {
+            CURRENT.remove();
+        }
+    }
+
+    void addPoolNanos(long nanos) {
+        poolNanos += nanos;
+    }
+
+    void addSqlNanos(long nanos) {
+        sqlNanos += nanos;
+    }
+
+    long getPoolNanos() {
+        return poolNanos;
+    }
+
+    long getSqlNanos() {
+        return sqlNanos;
+    }
+}
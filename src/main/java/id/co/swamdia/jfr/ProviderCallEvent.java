@@ -0,0 +1,14 @@
+package id.co.swamdia.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Satu panggilan SPI ke CustomRoleStorageProvider (lookup, search, listing)
+ */
+@Name("id.co.swamdia.RoleProviderCall")
+@Label("Role Provider Call")
+@Description("RoleStorageProvider call served by the custom role store")
+public class ProviderCallEvent extends RoleStorageEvent {
+}
@@ -0,0 +1,14 @@
+package id.co.swamdia.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Satu operasi CustomRoleRepository (satu transaksi ke database)
+ */
+@Name("id.co.swamdia.RoleQuery")
+@Label("Role Query")
+@Description("Database operation of the custom role repository")
+public class RoleQueryEvent extends RoleStorageEvent {
+}
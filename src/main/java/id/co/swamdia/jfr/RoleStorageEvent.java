@@ -0,0 +1,136 @@
+package id.co.swamdia.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Dasar event JFR role storage. Semua event nonaktif secara default dan baru
+ * direkam kalau diaktifkan lewat role-storage.jfc; selama nonaktif start() dan
+ * finish() tidak mengukur apapun.
+ *
+ * <pre>
+ * Event event = new RoleQueryEvent();
+ * event.start(realmId, "findById");
+ * ...
+ * event.finish(rows);
+ * </pre>
+ */
+@Category({ "Keycloak", "Role Storage" })
+@Enabled(false)
+@StackTrace(false)
+public abstract class RoleStorageEvent extends Event {
+
+    public static final String CACHE_NONE = "none";
+    public static final String CACHE_SNAPSHOT = "snapshot";
+    public static final String CACHE_INDEX = "index";
+    public static final String CACHE_SEARCH_INDEX = "search-index";
+    public static final String CACHE_COUNT = "count-cache";
+    public static final String CACHE_SEARCH_RESULTS = "search-results";
+    public static final String CACHE_COALESCED = "coalesced";
+    public static final String CACHE_STALE = "stale";
+    public static final String CACHE_ERROR = "error";
+    public static final String CACHE_REJECTED = "rejected";
+
+    @Label("Realm")
+    protected String realm;
+
+    @Label("Operation")
+    protected String operation;
+
+    @Label("Rows")
+    protected int rows;
+
+    @Label("Cache Outcome")
+    protected String cache;
+
+    @Label("Realm Queue Time")
+    @Timespan(Timespan.NANOSECONDS)
+    protected long admissionWait;
+
+    @Label("Pool Acquire Time")
+    @Timespan(Timespan.NANOSECONDS)
+    protected long poolAcquireTime;
+
+    @Label("SQL Time")
+    @Timespan(Timespan.NANOSECONDS)
+    protected long sqlTime;
+
+    private transient JdbcTimings timings;
+    private transient long poolStart;
+    private transient long sqlStart;
+
+    public final void start(String realm, String operation) {
+        if (!isEnabled()) {
+            return;
+        }
+        this.realm = realm;
+        this.operation = operation;
+        this.cache = CACHE_NONE;
+        timings = JdbcTimings.open();
+        poolStart = timings.getPoolNanos();
+        sqlStart = timings.getSqlNanos();
+        begin();
+    }
+
+    /**
+     * Dari mana hasil dilayani (snapshot, index, coalesced, stale, ...); default none
+     */
+    public final void setCache(String cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Waktu tunggu di antrian kuota realm (RealmAdmission)
+     */
+    public final void setAdmissionWait(long nanos) {
+        this.admissionWait = nanos;
+    }
+
+    public final void finish(int rows) {
+        JdbcTimings current = timings;
+        if (current == null) {
+            return;
+        }
+        timings = null;
+        end();
+        if (shouldCommit()) {
+            this.rows = rows;
+            poolAcquireTime = current.getPoolNanos() - poolStart;
+            sqlTime = current.getSqlNanos() - sqlStart;
+            commit();
+        }
+        current.close();
+    }
+
+    /**
+     * Jumlah baris dari hasil query: ukuran collection/map, 0/1 untuk Optional
+     * dan nilai tunggal. Scan yang tidak mengembalikan list memakai Integer
+     * sebagai jumlah baris.
+     */
+    public static int rowsOf(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Map) {
+            return ((Map<?, ?>) result).size();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        if (result instanceof Integer) {
+            return (Integer) result;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,14 @@
+package id.co.swamdia.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Sinkronisasi satu admin event role ke database external
+ */
+@Name("id.co.swamdia.RoleSync")
+@Label("Role Sync")
+@Description("Admin event synchronized to the custom role store")
+public class RoleSyncEvent extends RoleStorageEvent {
+}
@@ -1,60 +1,92 @@
 package id.co.swamdia.model;
 
-import org.keycloak.component.ComponentModel;
 import org.keycloak.models.*;
-import org.keycloak.storage.StorageId;
+import org.keycloak.storage.ReadOnlyException;
 
-import id.co.swamdia.entity.CustomRoleEntity;
-import id.co.swamdia.repository.CustomRoleRepository;
+import id.co.swamdia.entity.RoleView;
+import id.co.swamdia.repository.RoleDescriptionBatch;
+import id.co.swamdia.repository.RoleUpdate;
 
 import org.jboss.logging.Logger;
 
 import java.util.*;
 import java.util.stream.Stream;
 
+/**
+ * RoleModel per session di atas StoredRole yang immutable. Storage ID dan hash
+ * sudah dihitung saat StoredRole dibuat, container diresolve sekali per model,
+ * dan perubahan disimpan lewat CustomRoleStore.
+ */
 public class CustomRoleModel implements RoleModel {
     private static final Logger logger = Logger.getLogger(CustomRoleModel.class);
 
-    private final CustomRoleEntity entity;
+    private volatile StoredRole role;
     private final RealmModel realm;
-    private final ComponentModel model;
-    private final CustomRoleRepository roleRepository;
+    // null kalau database tidak tersedia (role dari snapshot disk, read-only)
+    private final CustomRoleStore store;
+    private final RoleDescriptionBatch descriptions;
+    private RoleContainerModel container;
 
-    public CustomRoleModel(CustomRoleEntity entity, RealmModel realm, KeycloakSession session,
-            ComponentModel model, CustomRoleRepository roleRepository) {
-        this.entity = entity;
+    public CustomRoleModel(StoredRole role, RealmModel realm, CustomRoleStore store) {
+        this(role, realm, store, null);
+    }
+
+    /**
+     * @param descriptions deskripsi halaman listing, dimuat saat pertama diminta
+     */
+    public CustomRoleModel(StoredRole role, RealmModel realm, CustomRoleStore store,
+            RoleDescriptionBatch descriptions) {
+        this.role = role;
         this.realm = realm;
-        this.model = model;
-        this.roleRepository = roleRepository;
+        this.store = store;
+        this.descriptions = descriptions;
     }
 
     @Override
     public String getId() {
-        return new StorageId(model.getId(), entity.getId()).getId();
+        return role.getStorageId();
     }
 
     @Override
     public String getName() {
-        return entity.getName();
+        return role.getView().getName();
     }
 
     @Override
     public void setName(String name) {
-        logger.infof("Updating role name from %s to %s", entity.getName(), name);
-        entity.setName(name);
-        roleRepository.save(entity);
+        if (Objects.equals(name, getName())) {
+            return;
+        }
+        logger.infof("Updating role name from %s to %s", getName(), name);
+        update(new RoleUpdate().setName(name));
     }
 
     @Override
     public String getDescription() {
-        return entity.getDescription();
+        RoleView view = role.getView();
+        if (view.isDescriptionLoaded() || descriptions == null) {
+            return view.getDescription();
+        }
+        return descriptions.get(view.getId());
     }
 
     @Override
     public void setDescription(String description) {
-        logger.infof("Updating role description for role: %s", entity.getName());
-        entity.setDescription(description);
-        roleRepository.save(entity);
+        // Admin console selalu memanggil setName dan setDescription; yang tidak berubah tidak ditulis
+        RoleView view = role.getView();
+        if (view.isDescriptionLoaded() && Objects.equals(description, view.getDescription())) {
+            return;
+        }
+        logger.infof("Updating role description for role: %s", getName());
+        update(new RoleUpdate().setDescription(description));
+    }
+
+    private void update(RoleUpdate changes) {
+        // Role dari snapshot disk saat database tidak tersedia tidak bisa diubah
+        if (store == null) {
+            throw new ReadOnlyException("Role storage is read-only while the database is unavailable");
+        }
+        role = role.withView(store.store(role.getView(), changes));
     }
 
     // Tidak support composite roles
@@ -83,26 +115,31 @@ public class CustomRoleModel implements RoleModel {
 
     @Override
     public boolean isClientRole() {
-        return entity.getClientId() != null;
+        return role.getView().getClientId() != null;
     }
 
     @Override
     public String getContainerId() {
-        return isClientRole() ? entity.getClientId() : realm.getId();
+        return isClientRole() ? role.getView().getClientId() : realm.getId();
     }
 
     @Override
     public RoleContainerModel getContainer() {
+        if (container != null) {
+            return container;
+        }
         if (isClientRole()) {
-            ClientModel client = realm.getClientById(entity.getClientId());
+            String clientId = role.getView().getClientId();
+            ClientModel client = realm.getClientById(clientId);
             if (client == null) {
-                logger.warnf("Client not found for ID: %s", entity.getClientId());
+                logger.warnf("Client not found for ID: %s", clientId);
                 return null;
             }
-            return client;
+            container = client;
         } else {
-            return realm;
+            container = realm;
         }
+        return container;
     }
 
     // Simple implementation - hanya check equality
@@ -141,8 +178,8 @@ public class CustomRoleModel implements RoleModel {
         return Collections.emptyMap();
     }
 
-    public CustomRoleEntity getEntity() {
-        return entity;
+    public StoredRole getStoredRole() {
+        return role;
     }
 
     @Override
@@ -152,11 +189,11 @@ public class CustomRoleModel implements RoleModel {
         if (!(o instanceof CustomRoleModel))
             return false;
         CustomRoleModel that = (CustomRoleModel) o;
-        return Objects.equals(entity.getId(), that.entity.getId());
+        return role.equals(that.role);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(entity.getId());
+        return role.hashCode();
     }
 }
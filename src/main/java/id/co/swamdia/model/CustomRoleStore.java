@@ -0,0 +1,19 @@
+package id.co.swamdia.model;
+
+import id.co.swamdia.entity.RoleView;
+import id.co.swamdia.repository.RoleUpdate;
+
+/**
+ * Jalur tulis untuk CustomRoleModel. Model sendiri tidak memegang entity;
+ * perubahan dikirim sebagai satu UPDATE dengan cek versi dari view.
+ */
+@FunctionalInterface
+public interface CustomRoleStore {
+
+    /**
+     * @param role    role yang diubah (versinya dipakai untuk optimistic locking)
+     * @param changes kolom yang diubah
+     * @return data role setelah disimpan
+     */
+    RoleView store(RoleView role, RoleUpdate changes);
+}
@@ -0,0 +1,61 @@
+package id.co.swamdia.model;
+
+import org.keycloak.component.ComponentModel;
+import org.keycloak.storage.StorageId;
+
+import id.co.swamdia.entity.RoleView;
+
+/**
+ * Data role yang immutable beserta storage ID dan hash yang sudah dihitung.
+ * Tidak menyimpan referensi ke session, realm, atau EntityManager, jadi aman
+ * dibagi antar session dan disimpan di cache.
+ */
+public final class StoredRole {
+
+    private final RoleView view;
+    private final String storageId;
+    private final int hash;
+
+    private StoredRole(RoleView view, String storageId) {
+        this.view = view;
+        this.storageId = storageId;
+        this.hash = storageId.hashCode();
+    }
+
+    public static StoredRole of(ComponentModel model, RoleView view) {
+        return new StoredRole(view, StorageId.keycloakId(model, view.getId()));
+    }
+
+    /**
+     * Versi baru role yang sama setelah disimpan (storage ID tidak berubah)
+     */
+    public StoredRole withView(RoleView updated) {
+        return new StoredRole(updated, storageId);
+    }
+
+    public RoleView getView() {
+        return view;
+    }
+
+    /**
+     * ID Keycloak ("f:&lt;component&gt;:&lt;id&gt;")
+     */
+    public String getStorageId() {
+        return storageId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof StoredRole))
+            return false;
+        StoredRole that = (StoredRole) o;
+        return hash == that.hash && storageId.equals(that.storageId);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
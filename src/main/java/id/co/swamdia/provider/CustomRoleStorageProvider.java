@@ -6,102 +6,329 @@ import org.keycloak.storage.StorageId;
 import org.keycloak.storage.role.RoleStorageProvider;
 
 import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.entity.RoleView;
+import id.co.swamdia.index.CompactRoleIndex;
+import id.co.swamdia.index.CompactRoleIndexCache;
+import id.co.swamdia.index.RoleCountCache;
+import id.co.swamdia.index.RoleSearchIndex;
+import id.co.swamdia.index.RoleSearchResultCache;
+import id.co.swamdia.index.RoleSnapshotStore;
+import id.co.swamdia.jfr.ProviderCallEvent;
+import id.co.swamdia.jfr.RoleStorageEvent;
 import id.co.swamdia.model.CustomRoleModel;
+import id.co.swamdia.model.CustomRoleStore;
+import id.co.swamdia.model.StoredRole;
+import id.co.swamdia.repository.CustomRoleExporter;
 import id.co.swamdia.repository.CustomRoleRepository;
+import id.co.swamdia.repository.RoleDescriptionBatch;
+import id.co.swamdia.repository.RoleUpdate;
 import id.co.swamdia.service.DatabaseService;
+import id.co.swamdia.service.ShardRouter;
 
 import org.jboss.logging.Logger;
 
-import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class CustomRoleStorageProvider implements RoleStorageProvider {
 
     private static final Logger logger = Logger.getLogger(CustomRoleStorageProvider.class);
+    private static final int CLIENT_ID_CHUNK_SIZE = 500;
 
     private final KeycloakSession session;
     private final ComponentModel model;
-    private final DatabaseService databaseService;
-    private EntityManager entityManager;
-    private CustomRoleRepository roleRepository;
-
-    public CustomRoleStorageProvider(KeycloakSession session, ComponentModel model, DatabaseService databaseService) {
+    private final ShardRouter shardRouter;
+    private final RequestCoalescer coalescer;
+    private final FanOutExecutor fanOutExecutor;
+    private final CompactRoleIndexCache roleIndexCache;
+    private final RoleSearchIndex searchIndex;
+    private final RoleCountCache countCache;
+    private final RoleSearchResultCache searchResultCache;
+    private final RoleSnapshotStore snapshotStore;
+    // Satu repository per shard yang disentuh session ini; connection hanya
+    // dipegang selama satu operasi, bukan sepanjang session
+    private final Map<String, CustomRoleRepository> roleRepositories = new HashMap<>();
+    private final CustomRoleStore roleStore = this::storeRole;
+
+    public CustomRoleStorageProvider(KeycloakSession session, ComponentModel model, ShardRouter shardRouter,
+            RequestCoalescer coalescer, FanOutExecutor fanOutExecutor, CompactRoleIndexCache roleIndexCache,
+            RoleSearchIndex searchIndex, RoleCountCache countCache, RoleSearchResultCache searchResultCache,
+            RoleSnapshotStore snapshotStore) {
         logger.infof("=== CustomRoleStorageProvider CONSTRUCTOR CALLED ===");
         logger.infof("Component ID: %s, Provider ID: %s", model.getId(), model.getProviderId());
         logger.infof("Realm: %s",
                 session.getContext().getRealm() != null ? session.getContext().getRealm().getName() : "null");
         this.session = session;
         this.model = model;
-        this.databaseService = databaseService;
+        this.shardRouter = shardRouter;
+        this.coalescer = coalescer;
+        this.fanOutExecutor = fanOutExecutor;
+        this.roleIndexCache = roleIndexCache;
+        this.searchIndex = searchIndex;
+        this.countCache = countCache;
+        this.searchResultCache = searchResultCache;
+        this.snapshotStore = snapshotStore;
         logger.info("CustomRoleStorageProvider instance created successfully");
     }
 
-    private CustomRoleRepository getRoleRepository() {
-        if (roleRepository == null) {
-            entityManager = databaseService.getEntityManagerFactory().createEntityManager();
-            roleRepository = new CustomRoleRepository(entityManager);
+    /**
+     * True kalau database belum bisa dihubungi sejak start; provider hanya
+     * melayani baca dari snapshot di disk
+     */
+    private boolean offline() {
+        return shardRouter == null;
+    }
+
+    /**
+     * Lookup dijawab dari snapshot hanya saat offline atau sebelum catch-up
+     * realm selesai; setelah itu snapshot bisa tertinggal dari node lain
+     */
+    private boolean fromSnapshot(String realmId) {
+        return offline() || (snapshotStore != null && snapshotStore.isCatchingUp(realmId));
+    }
+
+    private CustomRoleRepository getRoleRepository(String realmId) {
+        if (offline()) {
+            throw new IllegalStateException("Role database unavailable, serving snapshot only");
         }
-        return roleRepository;
+        String shardName = shardRouter.shardNameFor(realmId);
+        return roleRepositories.computeIfAbsent(shardName, name -> {
+            logger.debugf("Using shard '%s' for realm: %s", name, realmId);
+            // Lookup dan search boleh ke read replica; write tetap ke primary
+            return new CustomRoleRepository(shardRouter.getShard(name));
+        });
     }
 
-    @Override
-    public Stream<RoleModel> searchForRolesStream(RealmModel realm, String search, Integer first, Integer max) {
-        logger.infof("=== searchForRolesStream CALLED ===");
-        logger.infof("Realm: %s (ID: %s)", realm.getName(), realm.getId());
-        logger.infof("Search: '%s' (null: %s, empty: %s)",
-                search, search == null, search != null && search.trim().isEmpty());
-        logger.infof("Pagination: first=%s, max=%s", first, max);
+    // Lookup identik yang bersamaan dari session lain hanya menghasilkan satu query;
+    // hasilnya RoleView immutable sehingga dibagi ke semua pemanggil tanpa salinan
+    private Optional<RoleView> coalesceOne(String realmId, String key,
+            Supplier<Optional<CustomRoleEntity>> loader, ProviderCallEvent event) {
+        Supplier<Optional<RoleView>> views = () -> loader.get().map(RoleView::of);
+        if (coalescer == null) {
+            return views.get();
+        }
+        // onShared hanya dipanggil untuk caller yang menunggu hasil leader
+        return coalescer.execute(realmId, model.getId() + ":" + key, views, result -> {
+            event.setCache(RoleStorageEvent.CACHE_COALESCED);
+            return result;
+        });
+    }
+
+    // RoleView immutable, jadi hasil yang digabung cukup dibagi tanpa salinan per role
+    private List<RoleView> coalesceList(String realmId, String key, Supplier<List<RoleView>> loader,
+            ProviderCallEvent event) {
+        if (coalescer == null) {
+            return loader.get();
+        }
+        return coalescer.execute(realmId, model.getId() + ":" + key, loader, result -> {
+            event.setCache(RoleStorageEvent.CACHE_COALESCED);
+            return List.copyOf(result);
+        });
+    }
 
-        List<CustomRoleEntity> roles;
+    /**
+     * Realm role dari index di memory (kalau diaktifkan); null kalau harus dicek ke database
+     */
+    private CustomRoleEntity indexedByName(String realmId, String name) {
+        if (roleIndexCache == null || offline()) {
+            return null;
+        }
+        return roleIndexCache.findByName(realmId, name, indexLoader(realmId));
+    }
 
-        // Special case: "*" means get all roles (workaround for Keycloak not calling
-        // provider for default list)
-        if (search != null && search.trim().equals("*")) {
-            logger.info("Search term is '*' - fetching ALL realm roles from database (special wildcard)");
-            roles = getRoleRepository().findByRealm(realm.getId());
-            logger.infof("Retrieved %d realm roles from database (wildcard search)", roles.size());
+    private CustomRoleEntity indexedById(String realmId, String id) {
+        if (roleIndexCache == null || offline()) {
+            return null;
         }
-        // If search is null or empty, get all realm roles
-        else if (search == null || search.trim().isEmpty()) {
-            logger.info("Search term is null or empty - fetching ALL realm roles from database");
-            roles = getRoleRepository().findByRealm(realm.getId());
-            logger.infof("Retrieved %d realm roles from database (no search filter)", roles.size());
-        } else {
-            // For search, use search method which does LIKE query
-            logger.infof("Search term provided: '%s' - using search method", search);
-            roles = getRoleRepository().search(realm.getId(), search);
-            logger.infof("Retrieved %d realm roles matching search term '%s'", roles.size(), search);
-        }
-
-        // Log role names for debugging
-        if (!roles.isEmpty()) {
-            logger.infof("Roles found: %s",
-                    roles.stream()
-                            .map(CustomRoleEntity::getName)
-                            .collect(Collectors.joining(", ")));
+        return roleIndexCache.findById(realmId, id, indexLoader(realmId));
+    }
+
+    // Index dibangun di thread lain, jadi memakai repository sendiri (bukan milik session ini)
+    private Function<String, CompactRoleIndex> indexLoader(String realmId) {
+        DatabaseService databaseService = shardRouter.forRealm(realmId);
+        return id -> {
+            CompactRoleIndex.Builder builder = CompactRoleIndex.builder(id);
+            new CustomRoleRepository(databaseService).scanRealmRoles(id,
+                    (roleId, name, description, clientId) -> builder.add(roleId, name, description));
+            return builder.build();
+        };
+    }
+
+    // Role dari snapshot saja (database tidak tersedia)
+    private List<RoleView> snapshotRoles(String realmId, String search) {
+        if (snapshotStore == null) {
+            return List.of();
+        }
+        String term = search != null ? search.toLowerCase(Locale.ROOT) : "";
+        return snapshotStore.listRoles(realmId).stream()
+                .filter(role -> role.getName().toLowerCase(Locale.ROOT).contains(term)
+                        || (role.getDescription() != null
+                                && role.getDescription().toLowerCase(Locale.ROOT).contains(term)))
+                .map(RoleView::of)
+                .collect(Collectors.toList());
+    }
+
+    private List<RoleView> findRealmRoles(String realmId, ProviderCallEvent event) {
+        if (offline()) {
+            event.setCache(RoleStorageEvent.CACHE_SNAPSHOT);
+            return snapshotRoles(realmId, null).stream()
+                    .filter(role -> role.getClientId() == null)
+                    .collect(Collectors.toList());
+        }
+        return coalesceList(realmId, "realm", () -> getRoleRepository(realmId).findViewsByRealm(realmId), event);
+    }
+
+    /**
+     * Search lewat index di memory (kalau diaktifkan); null kalau index tidak
+     * tersedia sehingga pemanggil harus query database
+     */
+    private List<CustomRoleEntity> searchIndexed(String realmId, String search, Integer first, Integer max) {
+        if (searchIndex == null || search == null || offline()) {
+            return null;
+        }
+        try {
+            return searchIndex.searchPage(realmId, search, first, max,
+                    consumer -> getRoleRepository(realmId).scanAllRoles(realmId, consumer));
+        } catch (RuntimeException e) {
+            logger.warnf(e, "Role search index unavailable for realm %s, falling back to database", realmId);
+            return null;
+        }
+    }
+
+    /**
+     * Satu halaman search lewat cache hasil search (kalau diaktifkan): search
+     * yang sama hanya di-scan sekali, halaman berikutnya dibaca per ID. Null
+     * kalau cache tidak dipakai atau gagal, sehingga pemanggil memakai jalur
+     * biasa (dengan circuit breaker dan data stale).
+     *
+     * @param clientIds null untuk semua role (scope allRoles) atau semua client role
+     */
+    private List<RoleView> searchPageCached(String realmId, RoleSearchResultCache.Scope scope, String search,
+            List<String> clientIds, Integer first, Integer max, ProviderCallEvent event) {
+        if (searchResultCache == null || offline() || !RoleSearchResultCache.isCacheable(search)) {
+            return null;
+        }
+        CustomRoleRepository repository = getRoleRepository(realmId);
+        Supplier<List<RoleView>> loader;
+        if (clientIds != null && !clientIds.isEmpty()) {
+            loader = () -> searchChunks(clientIds, chunk -> repository.fetchSearchViews(realmId, search, chunk));
+        } else if (scope == RoleSearchResultCache.Scope.allRoles()) {
+            loader = () -> repository.fetchSearchViews(realmId, search, null);
         } else {
-            logger.warn("No roles found in database for realm: " + realm.getId());
+            loader = () -> repository.fetchSearchViews(realmId, search, null).stream()
+                    .filter(role -> role.getClientId() != null)
+                    .collect(Collectors.toList());
         }
+        try {
+            event.setCache(RoleStorageEvent.CACHE_SEARCH_RESULTS);
+            return searchResultCache.getPage(realmId, scope, search, first, max,
+                    () -> {
+                        event.setCache(RoleStorageEvent.CACHE_NONE);
+                        return coalesceList(realmId, "search-results:" + scope.getKey() + ":" + search, loader,
+                                event);
+                    },
+                    ids -> repository.findViewsByIds(realmId, ids));
+        } catch (RuntimeException e) {
+            logger.debugf("Cached role search unavailable for realm %s (%s), using direct search",
+                    realmId, e.getMessage());
+            event.setCache(RoleStorageEvent.CACHE_NONE);
+            return null;
+        }
+    }
 
-        // Apply pagination
-        Stream<CustomRoleEntity> roleStream = roles.stream();
-        if (first != null && first > 0) {
-            logger.debugf("Skipping first %d roles", first);
-            roleStream = roleStream.skip(first);
+    private List<RoleView> searchRoles(String realmId, String search, ProviderCallEvent event) {
+        if (offline()) {
+            event.setCache(RoleStorageEvent.CACHE_SNAPSHOT);
+            return snapshotRoles(realmId, search);
         }
-        if (max != null && max > 0) {
-            logger.debugf("Limiting to %d roles", max);
-            roleStream = roleStream.limit(max);
+        List<CustomRoleEntity> indexed = searchIndexed(realmId, search, null, null);
+        if (indexed != null) {
+            event.setCache(RoleStorageEvent.CACHE_SEARCH_INDEX);
+            return indexed.stream().map(RoleView::of).collect(Collectors.toList());
         }
+        return coalesceList(realmId, "search:" + search,
+                () -> getRoleRepository(realmId).searchViews(realmId, search), event);
+    }
 
-        // Map to RoleModel and log
-        return roleStream.map(entity -> {
-            logger.debugf("Mapping role entity to RoleModel: %s (ID: %s)", entity.getName(), entity.getId());
-            RoleModel roleModel = toRoleModel(realm, entity);
-            logger.debugf("Created RoleModel: %s (ID: %s)", roleModel.getName(), roleModel.getId());
-            return roleModel;
+    @Override
+    public Stream<RoleModel> searchForRolesStream(RealmModel realm, String search, Integer first, Integer max) {
+        logger.infof("=== searchForRolesStream CALLED ===");
+        logger.infof("Realm: %s (ID: %s)", realm.getName(), realm.getId());
+        logger.infof("Search: '%s' (null: %s, empty: %s)",
+                search, search == null, search != null && search.trim().isEmpty());
+        logger.infof("Pagination: first=%s, max=%s", first, max);
+
+        return traced(realm.getId(), "searchForRolesStream", event -> {
+            List<RoleView> roles;
+
+            // Special case: "*" means get all roles (workaround for Keycloak not calling
+            // provider for default list)
+            if (search != null && search.trim().equals("*")) {
+                logger.info("Search term is '*' - fetching ALL realm roles from database (special wildcard)");
+                roles = findRealmRoles(realm.getId(), event);
+                logger.infof("Retrieved %d realm roles from database (wildcard search)", roles.size());
+            }
+            // If search is null or empty, get all realm roles
+            else if (search == null || search.trim().isEmpty()) {
+                logger.info("Search term is null or empty - fetching ALL realm roles from database");
+                roles = findRealmRoles(realm.getId(), event);
+                logger.infof("Retrieved %d realm roles from database (no search filter)", roles.size());
+            } else {
+                // Index di memory langsung mengembalikan halaman yang diminta
+                List<CustomRoleEntity> page = searchIndexed(realm.getId(), search, first, max);
+                if (page != null) {
+                    logger.debugf("Served %d roles for search '%s' from search index", page.size(), search);
+                    event.setCache(RoleStorageEvent.CACHE_SEARCH_INDEX);
+                    return toRoleModels(event, realm, page.stream().map(RoleView::of));
+                }
+                List<RoleView> cached = searchPageCached(realm.getId(), RoleSearchResultCache.Scope.allRoles(), search,
+                        null, first, max, event);
+                if (cached != null) {
+                    logger.debugf("Served %d roles for search '%s' from search result cache", cached.size(), search);
+                    return toRoleModels(event, realm, cached.stream());
+                }
+
+                // For search, use search method which does LIKE query
+                logger.infof("Search term provided: '%s' - using search method", search);
+                roles = searchRoles(realm.getId(), search, event);
+                logger.infof("Retrieved %d realm roles matching search term '%s'", roles.size(), search);
+            }
+
+            // Log role names for debugging
+            if (!roles.isEmpty()) {
+                logger.infof("Roles found: %s",
+                        roles.stream()
+                                .map(RoleView::getName)
+                                .collect(Collectors.joining(", ")));
+            } else {
+                logger.warn("No roles found in database for realm: " + realm.getId());
+            }
+
+            // Apply pagination
+            Stream<RoleView> roleStream = roles.stream();
+            if (first != null && first > 0) {
+                logger.debugf("Skipping first %d roles", first);
+                roleStream = roleStream.skip(first);
+            }
+            if (max != null && max > 0) {
+                logger.debugf("Limiting to %d roles", max);
+                roleStream = roleStream.limit(max);
+            }
+
+            return toRoleModels(event, realm, roleStream);
         });
     }
 
@@ -111,15 +338,37 @@ public class CustomRoleStorageProvider implements RoleStorageProvider {
         logger.infof("Getting realm role by name: '%s' in realm: %s (ID: %s)",
                 name, realm.getName(), realm.getId());
 
-        return getRoleRepository().findByNameAndRealm(name, realm.getId())
-                .map(entity -> {
-                    logger.infof("Found role in database: %s (ID: %s)", entity.getName(), entity.getId());
-                    return toRoleModel(realm, entity);
-                })
-                .orElseGet(() -> {
-                    logger.warnf("Role not found in database: '%s' in realm: %s", name, realm.getId());
-                    return null;
-                });
+        return traced(realm.getId(), "getRealmRole", event -> {
+            if (fromSnapshot(realm.getId())) {
+                CustomRoleEntity snapshotted = snapshotStore != null
+                        ? snapshotStore.findByName(realm.getId(), null, name)
+                        : null;
+                if (snapshotted != null || offline()) {
+                    event.setCache(RoleStorageEvent.CACHE_SNAPSHOT);
+                    return finish(event, snapshotted != null ? toRoleModel(realm, snapshotted) : null);
+                }
+            }
+
+            // Nama yang tidak ada di index tetap dicek ke database: role bisa baru
+            // dibuat atau di-rename di node lain setelah index dibangun
+            CustomRoleEntity indexed = indexedByName(realm.getId(), name);
+            if (indexed != null) {
+                logger.debugf("Realm role '%s' resolved from compact index", name);
+                event.setCache(RoleStorageEvent.CACHE_INDEX);
+                return finish(event, toRoleModel(realm, indexed));
+            }
+
+            return finish(event, coalesceOne(realm.getId(), "name:" + name,
+                    () -> getRoleRepository(realm.getId()).findByNameAndRealm(name, realm.getId()), event)
+                    .map(view -> {
+                        logger.infof("Found role in database: %s (ID: %s)", view.getName(), view.getId());
+                        return toRoleModel(realm, view);
+                    })
+                    .orElseGet(() -> {
+                        logger.warnf("Role not found in database: '%s' in realm: %s", name, realm.getId());
+                        return null;
+                    }));
+        });
     }
 
     @Override
@@ -127,9 +376,22 @@ public class CustomRoleStorageProvider implements RoleStorageProvider {
         logger.infof("Getting client role by name: %s for client: %s",
                 name, client.getClientId());
 
-        return getRoleRepository().findByNameAndRealmAndClient(name, client.getRealm().getId(), client.getId())
-                .map(entity -> toRoleModel(client.getRealm(), entity))
-                .orElse(null);
+        String realmId = client.getRealm().getId();
+        return traced(realmId, "getClientRole", event -> {
+            if (fromSnapshot(realmId)) {
+                CustomRoleEntity snapshotted = snapshotStore != null
+                        ? snapshotStore.findByName(realmId, client.getId(), name)
+                        : null;
+                if (snapshotted != null || offline()) {
+                    event.setCache(RoleStorageEvent.CACHE_SNAPSHOT);
+                    return finish(event, snapshotted != null ? toRoleModel(client.getRealm(), snapshotted) : null);
+                }
+            }
+            return finish(event, coalesceOne(realmId, "client:" + client.getId() + ":" + name,
+                    () -> getRoleRepository(realmId).findByNameAndRealmAndClient(name, realmId, client.getId()), event)
+                    .map(view -> toRoleModel(client.getRealm(), view))
+                    .orElse(null));
+        });
     }
 
     @Override
@@ -148,32 +410,63 @@ public class CustomRoleStorageProvider implements RoleStorageProvider {
             return null;
         }
 
-        return getRoleRepository().findById(storageId.getExternalId())
-                .map(entity -> {
-                    logger.infof("Found role in database by ID: %s (Name: %s)", entity.getId(), entity.getName());
-                    return toRoleModel(realm, entity);
-                })
-                .orElseGet(() -> {
-                    logger.warnf("Role not found in database by ID: %s", storageId.getExternalId());
-                    return null;
-                });
+        String externalId = storageId.getExternalId();
+        return traced(realm.getId(), "getRoleById", event -> {
+            if (fromSnapshot(realm.getId())) {
+                CustomRoleEntity snapshotted = snapshotStore != null
+                        ? snapshotStore.findById(realm.getId(), externalId)
+                        : null;
+                if (snapshotted != null || offline()) {
+                    event.setCache(RoleStorageEvent.CACHE_SNAPSHOT);
+                    return finish(event, snapshotted != null ? toRoleModel(realm, snapshotted) : null);
+                }
+            }
+            // Index hanya berisi realm roles; ID yang tidak ada bisa jadi client role
+            CustomRoleEntity indexed = indexedById(realm.getId(), externalId);
+            if (indexed != null) {
+                event.setCache(RoleStorageEvent.CACHE_INDEX);
+                return finish(event, toRoleModel(realm, indexed));
+            }
+            return finish(event, coalesceOne(realm.getId(), "id:" + externalId,
+                    () -> getRoleRepository(realm.getId()).findById(realm.getId(), externalId), event)
+                    .map(view -> {
+                        logger.infof("Found role in database by ID: %s (Name: %s)", view.getId(), view.getName());
+                        return toRoleModel(realm, view);
+                    })
+                    .orElseGet(() -> {
+                        logger.warnf("Role not found in database by ID: %s", storageId.getExternalId());
+                        return null;
+                    }));
+        });
     }
 
     @Override
     public Stream<RoleModel> searchForClientRolesStream(ClientModel client, String search, Integer first, Integer max) {
         logger.infof("Searching for client roles with query: %s for client: %s", search, client.getClientId());
 
-        List<CustomRoleEntity> roles = getRoleRepository().search(client.getRealm().getId(), search);
-        roles = roles.stream()
-                .filter(role -> client.getId().equals(role.getClientId()))
-                .collect(Collectors.toList());
+        String realmId = client.getRealm().getId();
+        return traced(realmId, "searchForClientRolesStream", event -> {
+            if (searchIndex == null) {
+                List<String> clientIds = List.of(client.getId());
+                List<RoleView> cached = searchPageCached(realmId, RoleSearchResultCache.Scope.clients(clientIds),
+                        search, clientIds, first != null && max != null ? first : null,
+                        first != null && max != null ? max : null, event);
+                if (cached != null) {
+                    return toRoleModels(event, client.getRealm(), cached.stream());
+                }
+            }
+            List<RoleView> roles = searchRoles(realmId, search, event);
+            roles = roles.stream()
+                    .filter(role -> client.getId().equals(role.getClientId()))
+                    .collect(Collectors.toList());
 
-        Stream<CustomRoleEntity> roleStream = roles.stream();
-        if (first != null && max != null) {
-            roleStream = roleStream.skip(first).limit(max);
-        }
+            Stream<RoleView> roleStream = roles.stream();
+            if (first != null && max != null) {
+                roleStream = roleStream.skip(first).limit(max);
+            }
 
-        return roleStream.map(entity -> toRoleModel(client.getRealm(), entity));
+            return toRoleModels(event, client.getRealm(), roleStream);
+        });
     }
 
     @Override
@@ -184,26 +477,7 @@ public class CustomRoleStorageProvider implements RoleStorageProvider {
 
         List<String> clientIdList = clientIds != null ? clientIds.collect(Collectors.toList()) : null;
 
-        List<CustomRoleEntity> roles = getRoleRepository().search(realm.getId(), search);
-
-        // Filter by client IDs if provided
-        if (clientIdList != null && !clientIdList.isEmpty()) {
-            roles = roles.stream()
-                    .filter(role -> role.getClientId() != null && clientIdList.contains(role.getClientId()))
-                    .collect(Collectors.toList());
-        } else {
-            // Only client roles (not realm roles)
-            roles = roles.stream()
-                    .filter(role -> role.getClientId() != null)
-                    .collect(Collectors.toList());
-        }
-
-        Stream<CustomRoleEntity> roleStream = roles.stream();
-        if (first != null && max != null) {
-            roleStream = roleStream.skip(first != null ? first : 0).limit(max != null ? max : Integer.MAX_VALUE);
-        }
-
-        return roleStream.map(entity -> toRoleModel(realm, entity));
+        return searchClientRolesPage(realm, search, clientIdList, first, max);
     }
 
     @Override
@@ -215,37 +489,257 @@ public class CustomRoleStorageProvider implements RoleStorageProvider {
 
         List<String> clientIdList = clientIds != null ? clientIds.collect(Collectors.toList()) : null;
 
-        List<CustomRoleEntity> roles = getRoleRepository().search(realm.getId(), search);
+        return searchClientRolesPage(realm, search, clientIdList, first, max);
+    }
 
-        // Filter by client IDs if provided
-        if (clientIdList != null && !clientIdList.isEmpty()) {
-            roles = roles.stream()
-                    .filter(role -> role.getClientId() != null && clientIdList.contains(role.getClientId()))
-                    .collect(Collectors.toList());
-        } else {
-            // Only client roles (not realm roles)
-            roles = roles.stream()
+    private Stream<RoleModel> searchClientRolesPage(RealmModel realm, String search, List<String> clientIdList,
+            Integer first, Integer max) {
+        return traced(realm.getId(), "searchForClientRolesStream", event -> {
+            boolean filtered = clientIdList != null && !clientIdList.isEmpty();
+            // Semua client role bisa dilayani search index; daftar client ID selalu ke database
+            if (filtered || searchIndex == null) {
+                RoleSearchResultCache.Scope scope = filtered
+                        ? RoleSearchResultCache.Scope.clients(clientIdList)
+                        : RoleSearchResultCache.Scope.clientRoles();
+                List<RoleView> cached = searchPageCached(realm.getId(), scope, search, clientIdList,
+                        first != null && max != null ? first : null, first != null && max != null ? max : null, event);
+                if (cached != null) {
+                    return toRoleModels(event, realm, cached.stream());
+                }
+            }
+            List<RoleView> roles = findClientRoles(realm.getId(), search, clientIdList, event);
+
+            Stream<RoleView> roleStream = roles.stream();
+            if (first != null && max != null) {
+                roleStream = roleStream.skip(first).limit(max);
+            }
+
+            return toRoleModels(event, realm, roleStream);
+        });
+    }
+
+    private List<RoleView> findClientRoles(String realmId, String search, List<String> clientIdList,
+            ProviderCallEvent event) {
+        // Tanpa filter client ID: semua client roles (bukan realm roles)
+        if (clientIdList == null || clientIdList.isEmpty()) {
+            return searchRoles(realmId, search, event).stream()
                     .filter(role -> role.getClientId() != null)
                     .collect(Collectors.toList());
         }
+        if (offline()) {
+            event.setCache(RoleStorageEvent.CACHE_SNAPSHOT);
+            return snapshotRoles(realmId, search).stream()
+                    .filter(role -> clientIdList.contains(role.getClientId()))
+                    .collect(Collectors.toList());
+        }
+
+        CustomRoleRepository repository = getRoleRepository(realmId);
+        return searchChunks(clientIdList, chunk -> repository.searchViewsByClients(realmId, search, chunk));
+    }
+
+    // Daftar client ID besar dipecah per chunk; chunk dijalankan paralel,
+    // masing-masing dengan transaksi dan connection sendiri, lalu digabung sesuai urutan
+    private List<RoleView> searchChunks(List<String> clientIdList, Function<List<String>, List<RoleView>> search) {
+        List<List<String>> chunks = FanOutExecutor.chunk(clientIdList, CLIENT_ID_CHUNK_SIZE);
+        if (chunks.size() == 1 || fanOutExecutor == null) {
+            List<RoleView> roles = new ArrayList<>();
+            for (List<String> chunk : chunks) {
+                roles.addAll(search.apply(chunk));
+            }
+            return roles;
+        }
+
+        logger.debugf("Searching client roles for %d client IDs in %d parallel chunks",
+                clientIdList.size(), chunks.size());
+        List<List<RoleView>> results = fanOutExecutor.mapOrdered(chunks, search);
+
+        List<RoleView> roles = new ArrayList<>();
+        results.forEach(roles::addAll);
+        return roles;
+    }
+
+    /**
+     * Total realm roles, untuk pagination di admin UI dan sync job
+     * (GET /realms/{realm}/role-store/roles/count)
+     */
+    public long getRealmRolesCount(RealmModel realm) {
+        String realmId = realm.getId();
+        return traced(realmId, "getRealmRolesCount", event -> {
+            if (offline()) {
+                return finish(event, findRealmRoles(realmId, event).size());
+            }
+            LongSupplier loader = () -> getRoleRepository(realmId).countRealmRoles(realmId);
+            return finish(event, requireCount(realmId, countCache != null
+                    ? countCache.count(realmId, null, counted(event, loader)) : loader.getAsLong()));
+        });
+    }
+
+    public long getClientRolesCount(ClientModel client) {
+        if (offline()) {
+            return getClientRolesCount(client, "");
+        }
+        String realmId = client.getRealm().getId();
+        return traced(realmId, "getClientRolesCount", event -> {
+            LongSupplier loader = () -> getRoleRepository(realmId).countByRealmAndClient(realmId, client.getId());
+            return finish(event, requireCount(realmId, countCache != null
+                    ? countCache.count(realmId, client.getId(), counted(event, loader)) : loader.getAsLong()));
+        });
+    }
 
-        Stream<CustomRoleEntity> roleStream = roles.stream();
-        if (first != null && max != null) {
-            roleStream = roleStream.skip(first != null ? first : 0).limit(max != null ? max : Integer.MAX_VALUE);
+    /**
+     * Total hasil searchForRolesStream untuk search term ini (tanpa pagination)
+     */
+    public long getRolesCount(RealmModel realm, String search) {
+        if (search == null || search.trim().isEmpty() || search.trim().equals("*")) {
+            return getRealmRolesCount(realm);
         }
+        String realmId = realm.getId();
+        return traced(realmId, "getRolesCount", event -> {
+            if (offline()) {
+                event.setCache(RoleStorageEvent.CACHE_SNAPSHOT);
+                return finish(event, snapshotRoles(realmId, search).size());
+            }
+            LongSupplier loader = () -> getRoleRepository(realmId).countSearch(realmId, search);
+            return finish(event, requireCount(realmId, countCache != null
+                    ? countCache.countSearch(realmId, null, search, counted(event, loader)) : loader.getAsLong()));
+        });
+    }
+
+    public long getClientRolesCount(ClientModel client, String search) {
+        if (!offline() && (search == null || search.trim().isEmpty())) {
+            return getClientRolesCount(client);
+        }
+        String realmId = client.getRealm().getId();
+        return traced(realmId, "getClientRolesCount", event -> {
+            if (offline()) {
+                event.setCache(RoleStorageEvent.CACHE_SNAPSHOT);
+                return finish(event, snapshotRoles(realmId, search).stream()
+                        .filter(role -> client.getId().equals(role.getClientId()))
+                        .count());
+            }
+            LongSupplier loader = () -> getRoleRepository(realmId).countSearchByClient(realmId, client.getId(), search);
+            return finish(event, requireCount(realmId, countCache != null
+                    ? countCache.countSearch(realmId, client.getId(), search, counted(event, loader))
+                    : loader.getAsLong()));
+        });
+    }
 
-        return roleStream.map(entity -> toRoleModel(realm, entity));
+    // COUNT yang gagal (-1 dari repository) bukan berarti realm tidak punya role
+    private static long requireCount(String realmId, long count) {
+        if (count < 0) {
+            throw new ModelException("Failed to count roles in realm " + realmId);
+        }
+        return count;
+    }
+
+    // Hasil count dianggap dari cache kecuali loader benar-benar dipanggil
+    private static LongSupplier counted(ProviderCallEvent event, LongSupplier loader) {
+        event.setCache(RoleStorageEvent.CACHE_COUNT);
+        return () -> {
+            event.setCache(RoleStorageEvent.CACHE_NONE);
+            return loader.getAsLong();
+        };
+    }
+
+    /**
+     * False kalau database tidak tersedia (snapshot saja); export tidak mungkin
+     */
+    public boolean isExportAvailable() {
+        return !offline();
+    }
+
+    /**
+     * Export semua role realm sebagai NDJSON (opsional gzip) langsung ke output,
+     * tanpa memuat seluruh realm ke memory (GET /realms/{realm}/role-store/export)
+     */
+    public CustomRoleExporter.ExportResult exportRoles(RealmModel realm, OutputStream output, boolean gzip)
+            throws IOException {
+        if (offline()) {
+            throw new IllegalStateException("Role database unavailable, export is not possible from snapshot");
+        }
+        DatabaseService databaseService = shardRouter.forRealm(realm.getId());
+        return new CustomRoleExporter(databaseService).exportRealm(realm.getId(), output, gzip);
     }
 
     @Override
     public void close() {
         logger.info("Closing Simple CustomRoleStorageProvider");
-        if (entityManager != null && entityManager.isOpen()) {
-            entityManager.close();
+        roleRepositories.clear();
+    }
+
+    /**
+     * RoleModel untuk satu halaman listing; deskripsi semua role di halaman
+     * dimuat sekaligus hanya kalau ada yang memanggil getDescription()
+     */
+    private Stream<RoleModel> toRoleModels(ProviderCallEvent event, RealmModel realm, Stream<RoleView> views) {
+        List<RoleView> page = views.collect(Collectors.toList());
+        event.finish(page.size());
+        CustomRoleRepository repository = offline() ? null : getRoleRepository(realm.getId());
+        RoleDescriptionBatch descriptions = repository != null ? new RoleDescriptionBatch(repository, page) : null;
+        CustomRoleStore store = offline() ? null : roleStore;
+        return page.stream().map(view -> new CustomRoleModel(StoredRole.of(model, view), realm, store, descriptions));
+    }
+
+    /**
+     * Jalankan body dengan event JFR untuk satu panggilan provider. Event selalu
+     * di-finish, juga kalau body melempar exception; finish di sini tidak
+     * berpengaruh kalau body sudah finish dengan jumlah hasilnya.
+     */
+    private static <T> T traced(String realmId, String operation, Function<ProviderCallEvent, T> body) {
+        ProviderCallEvent event = new ProviderCallEvent();
+        event.start(realmId, operation);
+        try {
+            return body.apply(event);
+        } catch (RuntimeException e) {
+            event.setCache(RoleStorageEvent.CACHE_ERROR);
+            throw e;
+        } finally {
+            event.finish(0);
         }
     }
 
+    private static RoleModel finish(ProviderCallEvent event, RoleModel role) {
+        event.finish(role != null ? 1 : 0);
+        return role;
+    }
+
+    private static long finish(ProviderCallEvent event, long count) {
+        event.finish(1);
+        return count;
+    }
+
     private RoleModel toRoleModel(RealmModel realm, CustomRoleEntity entity) {
-        return new CustomRoleModel(entity, realm, session, model, getRoleRepository());
+        return toRoleModel(realm, RoleView.of(entity));
+    }
+
+    private RoleModel toRoleModel(RealmModel realm, RoleView view) {
+        // Tanpa database model read-only: setter melempar ReadOnlyException
+        return new CustomRoleModel(StoredRole.of(model, view), realm, offline() ? null : roleStore);
+    }
+
+    /**
+     * Simpan perubahan dari CustomRoleModel dengan satu UPDATE yang dicek
+     * terhadap versi view. View dari index/snapshot tidak membawa versi: versi
+     * dibaca dulu dari database, dan write ditolak kalau role di database sudah
+     * berbeda dari yang dilihat pemanggil.
+     */
+    private RoleView storeRole(RoleView role, RoleUpdate changes) {
+        CustomRoleRepository repository = getRoleRepository(role.getRealmId());
+        try {
+            long version = role.getVersion() != null ? role.getVersion() : currentVersion(repository, role);
+            return RoleView.of(repository.update(role.getRealmId(), role.getId(), version, changes));
+        } catch (OptimisticLockException e) {
+            throw new ModelException("Role was modified or deleted by another request: " + role.getName(), e);
+        }
+    }
+
+    private static long currentVersion(CustomRoleRepository repository, RoleView role) {
+        CustomRoleEntity current = repository.findById(role.getRealmId(), role.getId()).orElse(null);
+        // Versi tidak diketahui (mis. data stale saat database bermasalah): jangan tulis tanpa cek
+        if (current == null || current.getVersion() == null || !current.getName().equals(role.getName())
+                || (role.isDescriptionLoaded() && !Objects.equals(current.getDescription(), role.getDescription()))) {
+            throw new OptimisticLockException("Role " + role.getId() + " was modified or deleted concurrently");
+        }
+        return current.getVersion();
     }
 }
@@ -4,43 +4,79 @@ import org.keycloak.Config;
 import org.keycloak.component.ComponentModel;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
 import org.keycloak.provider.ProviderConfigProperty;
+import org.keycloak.storage.role.RoleStorageProvider;
 import org.keycloak.storage.role.RoleStorageProviderFactory;
 
+import id.co.swamdia.index.CompactRoleIndexCache;
+import id.co.swamdia.index.RoleCountCache;
+import id.co.swamdia.index.RoleSearchIndex;
+import id.co.swamdia.index.RoleSearchResultCache;
+import id.co.swamdia.index.RoleSnapshotStore;
+import id.co.swamdia.repository.CustomRoleRepository;
+import id.co.swamdia.repository.RoleChangeNotifier;
 import id.co.swamdia.service.DatabaseService;
+import id.co.swamdia.service.ShardRouter;
+import id.co.swamdia.service.Workload;
 
 import org.jboss.logging.Logger;
 
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CustomRoleStorageProviderFactory implements RoleStorageProviderFactory<CustomRoleStorageProvider> {
 
     private static final Logger logger = Logger.getLogger(CustomRoleStorageProviderFactory.class);
-    private static final String PROVIDER_ID = "simple-mysql-role-storage";
+    public static final String PROVIDER_ID = "simple-mysql-role-storage";
 
     // Configuration properties
     private static final String DB_URL = "dbUrl";
     private static final String DB_USERNAME = "dbUsername";
     private static final String DB_PASSWORD = "dbPassword";
     private static final String DB_DRIVER = "dbDriver";
-
-    private DatabaseService databaseService;
+    private static final String DB_POOL_SIZE = "dbPoolSize";
+
+    // Jeda minimal antar percobaan koneksi ulang saat berjalan dari snapshot saja
+    private static final long OFFLINE_RETRY_MILLIS = 10000L;
+
+    // Database per component ID; komponen yang koneksinya sama dengan system
+    // properties berbagi systemDatabase, komponen lain punya pool sendiri
+    private final Map<String, ComponentDatabase> componentDatabases = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastInitAttempts = new ConcurrentHashMap<>();
+    // Realm ID -> component ID yang melayani realm itu (parent component = realm)
+    private final Map<String, String> realmComponents = new ConcurrentHashMap<>();
+    private volatile ComponentDatabase systemDatabase;
+    // Dibagi semua session supaya lookup identik yang bersamaan bisa digabung
+    private RequestCoalescer coalescer;
+    private CompactRoleIndexCache roleIndexCache;
+    private RoleSearchIndex searchIndex;
+    private RoleCountCache countCache;
+    private RoleSearchResultCache searchResultCache;
+    private RoleSnapshotStore snapshotStore;
 
     @Override
     public CustomRoleStorageProvider create(KeycloakSession session, ComponentModel model) {
         logger.infof("Creating Simple CustomRoleStorageProvider with MySQL storage. Component ID: %s, Provider ID: %s",
                 model.getId(), model.getProviderId());
 
-        // Initialize database service if not already done
-        if (databaseService == null) {
-            logger.info("Database service not initialized, initializing from ComponentModel");
-            initializeDatabaseService(model);
-        } else {
-            logger.info("Using existing database service");
+        // null: database tidak tersedia, provider hanya membaca snapshot
+        ComponentDatabase database = getComponentDatabase(model);
+        if (database != null) {
+            mapRealm(model);
         }
 
-        CustomRoleStorageProvider provider = new CustomRoleStorageProvider(session, model, databaseService);
+        CustomRoleStorageProvider provider = new CustomRoleStorageProvider(session, model,
+                database != null ? database.router : null, coalescer,
+                database != null ? database.fanOutExecutor : null, roleIndexCache, searchIndex, countCache,
+                searchResultCache, snapshotStore);
         logger.info("CustomRoleStorageProvider instance created successfully");
         return provider;
     }
@@ -87,6 +123,13 @@ public class CustomRoleStorageProviderFactory implements RoleStorageProviderFact
                 ProviderConfigProperty.STRING_TYPE,
                 "org.postgresql.Driver"));
 
+        configProperties.add(new ProviderConfigProperty(
+                DB_POOL_SIZE,
+                "Database Pool Size",
+                "Maximum connections for this component's own pool. Changes are applied without restart.",
+                ProviderConfigProperty.STRING_TYPE,
+                String.valueOf(DatabaseService.DEFAULT_MAXIMUM_POOL_SIZE)));
+
         return configProperties;
     }
 
@@ -94,25 +137,53 @@ public class CustomRoleStorageProviderFactory implements RoleStorageProviderFact
     public void init(Config.Scope config) {
         logger.info("Initializing Simple CustomRoleStorageProviderFactory");
 
+        if (Boolean.parseBoolean(System.getProperty("quarkus.datasource.user-store.coalescing.enabled", "true"))) {
+            coalescer = new RequestCoalescer(
+                    Long.getLong("quarkus.datasource.user-store.coalescing.timeout-ms", 3000L));
+        }
+        if (Boolean.getBoolean("quarkus.datasource.user-store.compact-index.enabled")) {
+            roleIndexCache = new CompactRoleIndexCache(
+                    Long.getLong("quarkus.datasource.user-store.compact-index.max-bytes", 256L * 1024 * 1024),
+                    Long.getLong("quarkus.datasource.user-store.compact-index.refresh-ms", 60000L));
+            RoleChangeNotifier.register(roleIndexCache);
+        }
+        if (Boolean.getBoolean("quarkus.datasource.user-store.search-index.enabled")) {
+            searchIndex = new RoleSearchIndex(
+                    Long.getLong("quarkus.datasource.user-store.search-index.refresh-ms", 300000L));
+            RoleChangeNotifier.register(searchIndex);
+        }
+        if (Boolean.getBoolean("quarkus.datasource.user-store.count-cache.enabled")) {
+            countCache = new RoleCountCache(
+                    Integer.getInteger("quarkus.datasource.user-store.count-cache.max-term-length", 3),
+                    Integer.getInteger("quarkus.datasource.user-store.count-cache.max-search-entries", 10000),
+                    Long.getLong("quarkus.datasource.user-store.count-cache.refresh-ms", 300000L));
+            RoleChangeNotifier.register(countCache);
+        }
+        if (Boolean.getBoolean("quarkus.datasource.user-store.search-cache.enabled")) {
+            searchResultCache = new RoleSearchResultCache(
+                    Long.getLong("quarkus.datasource.user-store.search-cache.max-weight", 200000L),
+                    Long.getLong("quarkus.datasource.user-store.search-cache.max-entry-weight", 20000L),
+                    Long.getLong("quarkus.datasource.user-store.search-cache.ttl-ms", 60000L));
+            RoleChangeNotifier.register(searchResultCache);
+        }
+        if (Boolean.getBoolean("quarkus.datasource.user-store.snapshot.enabled")) {
+            snapshotStore = new RoleSnapshotStore(
+                    Paths.get(System.getProperty("quarkus.datasource.user-store.snapshot.dir",
+                            System.getProperty("kc.home.dir", ".") + "/data/role-snapshots")),
+                    Long.getLong("quarkus.datasource.user-store.snapshot.refresh-ms", 300000L));
+            snapshotStore.load();
+            RoleChangeNotifier.register(snapshotStore);
+        }
+
         // Try to initialize database service from system properties if available
         // This allows provider to work even without component configuration
         try {
-            String dbUrl = System.getProperty("quarkus.datasource.user-store.jdbc.url");
-            String dbUsername = System.getProperty("quarkus.datasource.user-store.username");
-            String dbPassword = System.getProperty("quarkus.datasource.user-store.password");
-            String dbKind = System.getProperty("quarkus.datasource.user-store.db-kind");
-
-            if (dbUrl != null && dbUsername != null) {
-                String dbDriver = "org.postgresql.Driver";
-                if (dbKind != null && !dbKind.contains(".")) {
-                    if ("postgresql".equalsIgnoreCase(dbKind) || "postgres".equalsIgnoreCase(dbKind)) {
-                        dbDriver = "org.postgresql.Driver";
-                    }
-                }
-
-                logger.infof("Initializing database service from system properties. URL: %s, Username: %s", dbUrl,
-                        dbUsername);
-                databaseService = new DatabaseService(dbUrl, dbUsername, dbPassword, dbDriver);
+            ConnectionSettings settings = systemConnectionSettings();
+            if (settings != null) {
+                logger.infof("Initializing database service from system properties. URL: %s, Username: %s",
+                        settings.url, settings.username);
+                systemDatabase = ComponentDatabase.fromSystemProperties(settings);
+                startSnapshots();
                 logger.info("Database service initialized successfully from system properties");
             } else {
                 logger.info(
@@ -126,22 +197,300 @@ public class CustomRoleStorageProviderFactory implements RoleStorageProviderFact
     @Override
     public void postInit(KeycloakSessionFactory factory) {
         logger.info("Post-initialization of Simple CustomRoleStorageProviderFactory");
-        if (databaseService != null) {
+        if (systemDatabase != null) {
             logger.info("Database service is ready");
+            reconcileShardPlacement(systemDatabase);
         } else {
             logger.info("Database service will be initialized when provider component is created");
         }
     }
 
+    /**
+     * Konfigurasi koneksi komponen berubah: bangun pool baru, tukar secara
+     * atomik, lalu tutup pool lama di background setelah connection yang masih
+     * dipakai selesai. Kalau pool baru gagal dibuat, pool lama tetap dipakai.
+     */
+    @Override
+    public void onUpdate(KeycloakSession session, RealmModel realm, ComponentModel oldModel,
+            ComponentModel newModel) {
+        ComponentDatabase current = componentDatabases.get(newModel.getId());
+        if (current == null) {
+            return;
+        }
+        ConnectionSettings settings = connectionSettings(newModel);
+        if (settings.equals(current.settings)) {
+            logger.debugf("Connection settings of component %s unchanged", newModel.getId());
+            return;
+        }
+        synchronized (this) {
+            try {
+                ComponentDatabase replacement = databaseFor(newModel.getId(), settings);
+                if (componentDatabases.replace(newModel.getId(), current, replacement)) {
+                    logger.infof("Switched component %s to database %s (pool size %d)",
+                            newModel.getId(), settings.url, settings.poolSize);
+                    if (!settings.sameDatabase(current.settings)) {
+                        invalidateRealms(newModel.getId());
+                    }
+                    retire(newModel.getId(), current);
+                } else {
+                    retire(newModel.getId(), replacement);
+                }
+            } catch (RuntimeException e) {
+                logger.errorf(e, "Failed to apply new database settings for component %s, keeping the current pool",
+                        newModel.getId());
+            }
+        }
+    }
+
+    @Override
+    public void preRemove(KeycloakSession session, RealmModel realm, ComponentModel model) {
+        lastInitAttempts.remove(model.getId());
+        realmComponents.values().removeIf(model.getId()::equals);
+        ComponentDatabase removed = componentDatabases.remove(model.getId());
+        if (removed != null) {
+            logger.infof("Component %s removed, releasing its database", model.getId());
+            synchronized (this) {
+                retire(model.getId(), removed);
+            }
+        }
+    }
+
     @Override
     public void close() {
         logger.info("Closing Simple CustomRoleStorageProviderFactory");
-        if (databaseService != null) {
-            databaseService.close();
+        if (roleIndexCache != null) {
+            RoleChangeNotifier.unregister(roleIndexCache);
+            roleIndexCache.close();
+        }
+        if (searchIndex != null) {
+            RoleChangeNotifier.unregister(searchIndex);
+        }
+        if (countCache != null) {
+            RoleChangeNotifier.unregister(countCache);
+        }
+        if (searchResultCache != null) {
+            RoleChangeNotifier.unregister(searchResultCache);
+            logger.infof("Role search result cache: %d hits, %d misses, %d evictions, %d invalidations",
+                    searchResultCache.getHits(), searchResultCache.getMisses(),
+                    searchResultCache.getEvictions(), searchResultCache.getInvalidations());
+        }
+        if (snapshotStore != null) {
+            RoleChangeNotifier.unregister(snapshotStore);
+            snapshotStore.close();
+        }
+        if (coalescer != null) {
+            logger.infof("Request coalescing collapsed %d lookups (timeouts: %d)",
+                    coalescer.getCollapsed(), coalescer.getTimeouts());
+        }
+        Set<ComponentDatabase> databases = Collections.newSetFromMap(new IdentityHashMap<>());
+        databases.addAll(componentDatabases.values());
+        if (systemDatabase != null) {
+            databases.add(systemDatabase);
+        }
+        componentDatabases.clear();
+        databases.forEach(ComponentDatabase::close);
+    }
+
+    /**
+     * Router database untuk realm: database komponen role storage realm itu,
+     * atau database default kalau realm tidak punya komponen ini. Dipakai
+     * event listener supaya sinkronisasi dan purge menulis ke database yang
+     * sama dengan yang dibaca provider.
+     *
+     * @return null kalau tidak ada database yang bisa dipakai
+     */
+    public ShardRouter getRouter(KeycloakSession session, String realmId) {
+        ComponentDatabase database = mappedDatabase(realmId);
+        if (database != null) {
+            return database.router;
+        }
+        RealmModel realm = session.realms().getRealm(realmId);
+        return realm != null ? getRouter(realm) : systemRouter();
+    }
+
+    public ShardRouter getRouter(RealmModel realm) {
+        ComponentDatabase database = mappedDatabase(realm.getId());
+        if (database != null) {
+            return database.router;
+        }
+        ComponentModel component = realm.getComponentsStream(realm.getId(), RoleStorageProvider.class.getName())
+                .filter(candidate -> PROVIDER_ID.equals(candidate.getProviderId()))
+                .findFirst()
+                .orElse(null);
+        if (component == null) {
+            return systemRouter();
+        }
+        database = getComponentDatabase(component);
+        if (database == null) {
+            throw new IllegalStateException("Role database unavailable for realm " + realm.getId());
+        }
+        mapRealm(component);
+        return database.router;
+    }
+
+    private ShardRouter systemRouter() {
+        ComponentDatabase database = systemDatabase;
+        return database != null ? database.router : null;
+    }
+
+    private ComponentDatabase mappedDatabase(String realmId) {
+        String componentId = realmComponents.get(realmId);
+        return componentId != null ? componentDatabases.get(componentId) : null;
+    }
+
+    // Realm yang baru terlihat: snapshot dari disk disusul ke database komponennya
+    private void mapRealm(ComponentModel model) {
+        if (model.getParentId() == null) {
+            return;
+        }
+        String previous = realmComponents.put(model.getParentId(), model.getId());
+        if (!model.getId().equals(previous) && snapshotStore != null) {
+            snapshotStore.requestCatchUp(model.getParentId());
+        }
+    }
+
+    /**
+     * Komponen pindah ke database lain: cache realm yang dilayani komponen
+     * itu berisi data database lama
+     */
+    private void invalidateRealms(String componentId) {
+        realmComponents.forEach((realmId, mappedComponent) -> {
+            if (!componentId.equals(mappedComponent)) {
+                return;
+            }
+            if (roleIndexCache != null) {
+                roleIndexCache.invalidate(realmId);
+            }
+            if (searchIndex != null) {
+                searchIndex.invalidate(realmId);
+            }
+            if (countCache != null) {
+                countCache.invalidate(realmId);
+            }
+            if (searchResultCache != null) {
+                searchResultCache.invalidate(realmId);
+            }
+            if (snapshotStore != null) {
+                snapshotStore.invalidate(realmId);
+            }
+            logger.infof("Invalidated cached roles of realm %s after database switch", realmId);
+        });
+    }
+
+    /**
+     * Database untuk komponen ini; dibuat sekali per component ID. Kalau database
+     * tidak bisa dihubungi tapi ada snapshot di disk, kembalikan null (provider
+     * read-only dari snapshot) dan coba lagi paling cepat setiap OFFLINE_RETRY_MILLIS.
+     */
+    private ComponentDatabase getComponentDatabase(ComponentModel model) {
+        ComponentDatabase database = componentDatabases.get(model.getId());
+        if (database != null) {
+            return database;
+        }
+        synchronized (this) {
+            database = componentDatabases.get(model.getId());
+            if (database != null) {
+                return database;
+            }
+            boolean snapshotOnly = snapshotStore != null && snapshotStore.hasSnapshots();
+            Long lastAttempt = lastInitAttempts.get(model.getId());
+            if (snapshotOnly && lastAttempt != null
+                    && System.currentTimeMillis() - lastAttempt < OFFLINE_RETRY_MILLIS) {
+                return null;
+            }
+            lastInitAttempts.put(model.getId(), System.currentTimeMillis());
+            logger.infof("Database service not initialized for component %s, initializing from ComponentModel",
+                    model.getId());
+            try {
+                database = databaseFor(model.getId(), connectionSettings(model));
+            } catch (RuntimeException e) {
+                if (!snapshotOnly) {
+                    throw e;
+                }
+                logger.warnf("Role database unavailable, serving roles read-only from disk snapshot: %s",
+                        e.getMessage());
+                return null;
+            }
+            componentDatabases.put(model.getId(), database);
+            lastInitAttempts.remove(model.getId());
+            startSnapshots();
+            return database;
         }
     }
 
-    private void initializeDatabaseService(ComponentModel model) {
+    /**
+     * Komponen dengan koneksi yang sama dengan system properties berbagi
+     * database default (termasuk shard dan replica); selain itu pool sendiri
+     */
+    private ComponentDatabase databaseFor(String componentId, ConnectionSettings settings) {
+        if (systemDatabase != null && systemDatabase.settings.equals(settings)) {
+            return systemDatabase;
+        }
+        if (systemDatabase == null && settings.equals(systemConnectionSettings())) {
+            try {
+                systemDatabase = ComponentDatabase.fromSystemProperties(settings);
+            } catch (Exception e) {
+                logger.error("Failed to initialize database service", e);
+                throw new RuntimeException("Database initialization failed", e);
+            }
+            return systemDatabase;
+        }
+        try {
+            logger.infof("Initializing dedicated database for component %s. URL: %s, Username: %s, pool size: %d",
+                    componentId, settings.url, settings.username, settings.poolSize);
+            return ComponentDatabase.dedicated(componentId, settings);
+        } catch (Exception e) {
+            logger.error("Failed to initialize database service", e);
+            throw new RuntimeException("Database initialization failed", e);
+        }
+    }
+
+    // Tutup database yang tidak lagi dipakai komponen manapun (drain di background)
+    private void retire(String componentId, ComponentDatabase database) {
+        if (database == systemDatabase || componentDatabases.containsValue(database)) {
+            return;
+        }
+        long drainTimeout = Long.getLong("quarkus.datasource.user-store.drain-timeout-ms", 30000L);
+        Thread drain = new Thread(() -> {
+            database.closeGracefully(drainTimeout);
+            logger.infof("Closed previous database pool of component %s", componentId);
+        }, "role-store-drain-" + componentId);
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    private void startSnapshots() {
+        if (snapshotStore != null) {
+            snapshotStore.start(this::snapshotRepository);
+        }
+    }
+
+    // Snapshot realm dibaca dari database komponen realm itu; realm yang
+    // komponennya belum terlihat disusul saat provider pertama dibuat (mapRealm)
+    private CustomRoleRepository snapshotRepository(String realmId) {
+        ComponentDatabase database = mappedDatabase(realmId);
+        if (database == null) {
+            throw new IllegalStateException("No role database known yet for realm " + realmId);
+        }
+        return new CustomRoleRepository(database.router.forRealm(realmId));
+    }
+
+    /**
+     * Koneksi dari system properties (null kalau tidak dikonfigurasi)
+     */
+    private static ConnectionSettings systemConnectionSettings() {
+        String dbUrl = System.getProperty("quarkus.datasource.user-store.jdbc.url");
+        String dbUsername = System.getProperty("quarkus.datasource.user-store.username");
+        if (dbUrl == null || dbUsername == null) {
+            return null;
+        }
+        return new ConnectionSettings(dbUrl, dbUsername,
+                System.getProperty("quarkus.datasource.user-store.password"),
+                toDriverClass(System.getProperty("quarkus.datasource.user-store.db-kind", "org.postgresql.Driver")),
+                DatabaseService.DEFAULT_MAXIMUM_POOL_SIZE);
+    }
+
+    private ConnectionSettings connectionSettings(ComponentModel model) {
         // Try to get from ComponentModel first, then fallback to system
         // properties/environment variables
         String dbUrl = getConfigValue(model, DB_URL,
@@ -161,13 +510,8 @@ public class CustomRoleStorageProviderFactory implements RoleStorageProviderFact
                 System.getenv("DB_DRIVER"),
                 "org.postgresql.Driver"); // default
 
-        // Convert db-kind to driver if needed
-        if (dbDriver != null && !dbDriver.contains(".")) {
-            // If it's just "postgresql" or "postgres", convert to driver class
-            if ("postgresql".equalsIgnoreCase(dbDriver) || "postgres".equalsIgnoreCase(dbDriver)) {
-                dbDriver = "org.postgresql.Driver";
-            }
-        }
+        String poolSize = getConfigValue(model, DB_POOL_SIZE,
+                String.valueOf(DatabaseService.DEFAULT_MAXIMUM_POOL_SIZE));
 
         if (dbUrl == null || dbUsername == null) {
             throw new IllegalStateException("Database configuration is missing. " +
@@ -175,12 +519,52 @@ public class CustomRoleStorageProviderFactory implements RoleStorageProviderFact
                     "quarkus.datasource.user-store.jdbc.url, quarkus.datasource.user-store.username");
         }
 
+        int maximumPoolSize;
+        try {
+            maximumPoolSize = Integer.parseInt(poolSize.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid database pool size: " + poolSize, e);
+        }
+        return new ConnectionSettings(dbUrl, dbUsername, dbPassword, toDriverClass(dbDriver), maximumPoolSize);
+    }
+
+    // Convert db-kind to driver if needed
+    private static String toDriverClass(String dbDriver) {
+        if (dbDriver != null && !dbDriver.contains(".")) {
+            // If it's just "postgresql" or "postgres", convert to driver class
+            if ("postgresql".equalsIgnoreCase(dbDriver) || "postgres".equalsIgnoreCase(dbDriver)) {
+                return "org.postgresql.Driver";
+            }
+        }
+        return dbDriver;
+    }
+
+    /**
+     * Cek di semua shard (paralel) apakah ada realm yang datanya tersimpan
+     * di shard lain dari yang dipilih router, misalnya setelah shard ditambah
+     */
+    private void reconcileShardPlacement(ComponentDatabase database) {
+        ShardRouter shardRouter = database.router;
+        if (shardRouter.getShardNames().size() < 2) {
+            return;
+        }
         try {
-            databaseService = new DatabaseService(dbUrl, dbUsername, dbPassword, dbDriver);
-            logger.info("Database service initialized from component model");
+            List<String> shardNames = new ArrayList<>(shardRouter.getShardNames());
+            List<List<String>> realmsPerShard = database.fanOutExecutor.mapOrdered(shardNames,
+                    shardName -> new CustomRoleRepository(shardRouter.getShard(shardName), true)
+                            .findDistinctRealmIds());
+            for (int i = 0; i < shardNames.size(); i++) {
+                String shardName = shardNames.get(i);
+                for (String realmId : realmsPerShard.get(i)) {
+                    String expected = shardRouter.shardNameFor(realmId);
+                    if (!expected.equals(shardName)) {
+                        logger.warnf("Realm %s has roles on shard '%s' but is routed to shard '%s'",
+                                realmId, shardName, expected);
+                    }
+                }
+            }
         } catch (Exception e) {
-            logger.error("Failed to initialize database service", e);
-            throw new RuntimeException("Database initialization failed", e);
+            logger.warn("Failed to reconcile shard placement", e);
         }
     }
 
@@ -203,4 +587,83 @@ public class CustomRoleStorageProviderFactory implements RoleStorageProviderFact
 
         return null;
     }
+
+    /**
+     * Pool (router shard) dan executor fan-out milik satu konfigurasi koneksi
+     */
+    private static final class ComponentDatabase {
+        private final ConnectionSettings settings;
+        private final ShardRouter router;
+        private final FanOutExecutor fanOutExecutor;
+
+        // Task fan-out berjalan di lane SCAN, jadi dibatasi ukuran lane itu
+        private ComponentDatabase(ConnectionSettings settings, ShardRouter router, int scanPoolSize) {
+            this.settings = settings;
+            this.router = router;
+            this.fanOutExecutor = new FanOutExecutor(scanPoolSize);
+        }
+
+        static ComponentDatabase fromSystemProperties(ConnectionSettings settings) {
+            DatabaseService databaseService = new DatabaseService(settings.url, settings.username,
+                    settings.password, settings.driver, settings.poolSize, null);
+            ShardRouter router = ShardRouter.fromSystemProperties(databaseService, settings.username,
+                    settings.password, settings.driver);
+            return new ComponentDatabase(settings, router, databaseService.getMaximumPoolSize(Workload.SCAN));
+        }
+
+        static ComponentDatabase dedicated(String componentId, ConnectionSettings settings) {
+            DatabaseService databaseService = new DatabaseService(settings.url, settings.username,
+                    settings.password, settings.driver, settings.poolSize, "role-store-" + componentId);
+            return new ComponentDatabase(settings, ShardRouter.single(databaseService),
+                    databaseService.getMaximumPoolSize(Workload.SCAN));
+        }
+
+        void closeGracefully(long drainTimeoutMillis) {
+            fanOutExecutor.close();
+            router.closeGracefully(drainTimeoutMillis);
+        }
+
+        void close() {
+            fanOutExecutor.close();
+            router.close();
+        }
+    }
+
+    private static final class ConnectionSettings {
+        private final String url;
+        private final String username;
+        private final String password;
+        private final String driver;
+        private final int poolSize;
+
+        private ConnectionSettings(String url, String username, String password, String driver, int poolSize) {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+            this.driver = driver;
+            this.poolSize = poolSize;
+        }
+
+        // Pool size saja yang berubah: data tetap sama, cache tidak perlu dibuang
+        boolean sameDatabase(ConnectionSettings other) {
+            return Objects.equals(url, other.url) && Objects.equals(username, other.username);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof ConnectionSettings))
+                return false;
+            ConnectionSettings that = (ConnectionSettings) o;
+            return poolSize == that.poolSize && Objects.equals(url, that.url)
+                    && Objects.equals(username, that.username) && Objects.equals(password, that.password)
+                    && Objects.equals(driver, that.driver);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, username, driver, poolSize);
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package id.co.swamdia.provider;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Menjalankan potongan kerja repository yang saling independen secara paralel
+ * (chunk client ID, shard, realm) dan menggabungkan hasilnya sesuai urutan input.
+ * Di JVM 21+ memakai virtual thread (dideteksi saat runtime, JAR tetap target
+ * Java 17), di Java 17 memakai pool platform thread.
+ * Jumlah task yang berjalan bersamaan dibatasi ukuran lane SCAN (tempat
+ * chunk dijalankan) supaya fan-out tidak mengantri melebihi pool-nya.
+ */
+public class FanOutExecutor {
+    private static final Logger logger = Logger.getLogger(FanOutExecutor.class);
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final boolean virtualThreads;
+    private final int maxConcurrency;
+
+    public FanOutExecutor(int maxConcurrency) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.permits = new Semaphore(this.maxConcurrency);
+            this.virtualThreads = true;
+        } else {
+            this.executor = Executors.newFixedThreadPool(this.maxConcurrency, runnable -> {
+                Thread thread = new Thread(runnable, "role-fan-out");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.permits = null;
+            this.virtualThreads = false;
+        }
+        logger.infof("Fan-out executor initialized (virtual threads: %s, max concurrency: %d)",
+                virtualThreads, this.maxConcurrency);
+    }
+
+    /**
+     * Virtual thread executor hanya tersedia di Java 21+ (dipanggil via reflection
+     * karena build default masih target Java 17)
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        if (Runtime.version().feature() < 21) {
+            return null;
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.debug("Virtual threads not available, using platform thread pool", e);
+            return null;
+        }
+    }
+
+    /**
+     * Jalankan task untuk setiap input secara paralel; hasil dikembalikan dengan
+     * urutan yang sama seperti input. Input tunggal dijalankan di thread pemanggil.
+     */
+    public <T, R> List<R> mapOrdered(List<T> inputs, Function<T, R> task) {
+        if (inputs.size() <= 1) {
+            List<R> results = new ArrayList<>(inputs.size());
+            for (T input : inputs) {
+                results.add(task.apply(input));
+            }
+            return results;
+        }
+
+        List<CompletableFuture<R>> futures = new ArrayList<>(inputs.size());
+        for (T input : inputs) {
+            futures.add(CompletableFuture.supplyAsync(() -> runWithPermit(task, input), executor));
+        }
+
+        List<R> results = new ArrayList<>(inputs.size());
+        try {
+            for (CompletableFuture<R> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private <T, R> R runWithPermit(Function<T, R> task, T input) {
+        if (permits == null) {
+            return task.apply(input);
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        try {
+            return task.apply(input);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Pecah list menjadi potongan berukuran maksimal chunkSize
+     */
+    public static <T> List<List<T>> chunk(List<T> items, int chunkSize) {
+        List<List<T>> chunks = new ArrayList<>((items.size() + chunkSize - 1) / chunkSize);
+        for (int i = 0; i < items.size(); i += chunkSize) {
+            chunks.add(items.subList(i, Math.min(items.size(), i + chunkSize)));
+        }
+        return chunks;
+    }
+
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+}
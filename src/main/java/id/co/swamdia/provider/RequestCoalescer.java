@@ -0,0 +1,92 @@
+package id.co.swamdia.provider;
+
+import org.jboss.logging.Logger;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Single-flight untuk lookup yang identik dan bersamaan.
+ * Caller pertama untuk sebuah key (per realm) menjalankan query, caller lain
+ * menunggu hasil yang sama. Kalau menunggu melebihi timeout, caller
+ * menjalankan query sendiri supaya tidak ikut tertahan.
+ */
+public class RequestCoalescer {
+    private static final Logger logger = Logger.getLogger(RequestCoalescer.class);
+
+    private final long timeoutMillis;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> collapsedPerRealm = new ConcurrentHashMap<>();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public RequestCoalescer(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Hasil leader dibagi apa adanya ke semua caller, jadi loader harus
+     * mengembalikan data immutable (RoleView/StoredRole).
+     *
+     * @param onShared dipanggil hanya untuk caller yang menunggu hasil leader,
+     *                 misalnya untuk menandai hasil sebagai coalesced atau
+     *                 membungkus list supaya read-only; bukan untuk menyalin
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String realmId, String key, Supplier<T> loader, UnaryOperator<T> onShared) {
+        String flightKey = realmId + '\u0000' + key;
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, flight);
+
+        if (existing == null) {
+            try {
+                T result = loader.get();
+                flight.complete(result);
+                return result;
+            } catch (RuntimeException e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(flightKey, flight);
+            }
+        }
+
+        try {
+            T result = (T) existing.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            long total = collapsed.incrementAndGet();
+            collapsedPerRealm.computeIfAbsent(realmId, id -> new AtomicLong()).incrementAndGet();
+            if (total % 1000 == 0) {
+                logger.infof("Coalesced %d duplicate role lookups so far (timeouts: %d)", total, timeouts.get());
+            }
+            return onShared.apply(result);
+        } catch (TimeoutException e) {
+            timeouts.incrementAndGet();
+            logger.debugf("Timed out waiting for in-flight lookup %s in realm %s, querying directly", key, realmId);
+        } catch (ExecutionException e) {
+            logger.debugf("In-flight lookup %s in realm %s failed, querying directly", key, realmId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return loader.get();
+    }
+
+    public long getCollapsed() {
+        return collapsed.get();
+    }
+
+    public long getCollapsed(String realmId) {
+        AtomicLong counter = collapsedPerRealm.get(realmId);
+        return counter != null ? counter.get() : 0;
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+}
@@ -0,0 +1,237 @@
+package id.co.swamdia.provider;
+
+import org.keycloak.Config;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.models.AdminRoles;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.Constants;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.ModelException;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.services.managers.AppAuthManager;
+import org.keycloak.services.managers.AuthenticationManager.AuthResult;
+import org.keycloak.services.resource.RealmResourceProvider;
+import org.keycloak.storage.role.RoleStorageProvider;
+
+import id.co.swamdia.service.RealmAdmission;
+import id.co.swamdia.service.SlowQueryLog;
+
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.NotAuthorizedException;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.ServiceUnavailableException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Endpoint admin role storage: /realms/{realm}/role-store/...
+ * <p>
+ * Admin realm (role view-realm di realm-management) hanya melihat data
+ * realm-nya sendiri. Admin master (role "admin" di realm master) melihat
+ * semua realm, termasuk statement yang tidak terikat ke realm.
+ */
+public class RoleStoreResourceProvider implements RealmResourceProvider {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final KeycloakSession session;
+
+    public RoleStoreResourceProvider(KeycloakSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public Object getResource() {
+        return this;
+    }
+
+    /**
+     * Statement lambat terbaru lebih dulu
+     *
+     * @param realmName filter realm, hanya untuk admin master
+     */
+    @GET
+    @Path("slow-queries")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<SlowQueryLog.Entry> getSlowQueries(@QueryParam("realm") String realmName) {
+        return SlowQueryLog.getEntries(visibleRealmId(realmName));
+    }
+
+    /**
+     * Kuota konkurensi per realm: permit dipakai, antrian, jumlah ditolak dan waktu tunggu
+     *
+     * @param realmName filter realm, hanya untuk admin master
+     */
+    @GET
+    @Path("admission")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<RealmAdmission.Stats> getAdmission(@QueryParam("realm") String realmName) {
+        return RealmAdmission.getAllStats(visibleRealmId(realmName));
+    }
+
+    /**
+     * Jumlah role realm ini, untuk pagination admin UI dan sync job. Dengan
+     * search: jumlah hasil search tanpa pagination.
+     */
+    @GET
+    @Path("roles/count")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Long> getRolesCount(@QueryParam("search") String search) {
+        RealmModel realm = authorizedRealm();
+        CustomRoleStorageProvider provider = roleStorage(realm);
+        return count(() -> provider.getRolesCount(realm, search));
+    }
+
+    /**
+     * Jumlah role satu client (ID internal client, seperti di admin API)
+     */
+    @GET
+    @Path("clients/{client-id}/roles/count")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Long> getClientRolesCount(@PathParam("client-id") String clientId,
+            @QueryParam("search") String search) {
+        RealmModel realm = authorizedRealm();
+        ClientModel client = realm.getClientById(clientId);
+        if (client == null) {
+            throw new NotFoundException("Client not found");
+        }
+        CustomRoleStorageProvider provider = roleStorage(realm);
+        return count(() -> provider.getClientRolesCount(client, search));
+    }
+
+    // COUNT gagal (database tidak bisa dihubungi) dilaporkan 503, bukan count 0
+    private static Map<String, Long> count(LongSupplier counter) {
+        try {
+            return Map.of("count", counter.getAsLong());
+        } catch (ModelException e) {
+            throw new ServiceUnavailableException(e.getMessage());
+        }
+    }
+
+    /**
+     * Export semua role realm ini sebagai NDJSON, di-stream langsung dari
+     * cursor database (untuk audit dan clone environment). Dikompres gzip
+     * kalau client mengirim Accept-Encoding: gzip, atau diunduh sebagai file
+     * .ndjson.gz dengan ?gzip=true.
+     */
+    @GET
+    @Path("export")
+    @Produces({ NDJSON, "application/gzip" })
+    public Response exportRoles(@QueryParam("gzip") boolean gzipFile,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        RealmModel realm = authorizedRealm();
+        CustomRoleStorageProvider provider = roleStorage(realm);
+        if (!provider.isExportAvailable()) {
+            throw new ServiceUnavailableException("Role database unavailable, export is not possible from snapshot");
+        }
+        boolean gzip = gzipFile || acceptsGzip(acceptEncoding);
+        StreamingOutput body = output -> provider.exportRoles(realm, output, gzip);
+        if (gzipFile) {
+            return Response.ok(body, "application/gzip")
+                    .header("Content-Disposition",
+                            "attachment; filename=\"roles-" + realm.getName() + ".ndjson.gz\"")
+                    .build();
+        }
+        Response.ResponseBuilder response = Response.ok(body, NDJSON).header(HttpHeaders.VARY,
+                HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.build();
+    }
+
+    // gzip diterima kecuali ditolak eksplisit dengan q=0
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equals("gzip")) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Realm dari path, setelah memastikan pemanggil boleh melihat datanya
+     */
+    private RealmModel authorizedRealm() {
+        visibleRealmId(null);
+        return session.getContext().getRealm();
+    }
+
+    /**
+     * Provider role storage realm ini (instance per session dari Keycloak)
+     */
+    private CustomRoleStorageProvider roleStorage(RealmModel realm) {
+        ComponentModel component = realm.getComponentsStream(realm.getId(), RoleStorageProvider.class.getName())
+                .filter(candidate -> CustomRoleStorageProviderFactory.PROVIDER_ID.equals(candidate.getProviderId()))
+                .findFirst()
+                .orElseThrow(() -> new NotFoundException("Custom role storage is not configured for this realm"));
+        return (CustomRoleStorageProvider) session.getComponentProvider(RoleStorageProvider.class,
+                component.getId(), sessionFactory -> component);
+    }
+
+    /**
+     * Realm yang boleh dilihat pemanggil; null berarti semua realm (admin master)
+     */
+    private String visibleRealmId(String realmName) {
+        RealmModel realm = session.getContext().getRealm();
+        UserModel user = authenticate();
+
+        if (isMasterAdmin(realm, user)) {
+            if (realmName == null || realmName.isEmpty()) {
+                return null;
+            }
+            RealmModel filtered = session.realms().getRealmByName(realmName);
+            if (filtered == null) {
+                throw new NotFoundException("Realm not found");
+            }
+            return filtered.getId();
+        }
+
+        ClientModel realmManagement = realm.getClientByClientId(Constants.REALM_MANAGEMENT_CLIENT_ID);
+        RoleModel viewRealm = realmManagement != null ? realmManagement.getRole(AdminRoles.VIEW_REALM) : null;
+        if (viewRealm == null || !user.hasRole(viewRealm)) {
+            throw new ForbiddenException();
+        }
+        return realm.getId();
+    }
+
+    private UserModel authenticate() {
+        AuthResult auth = new AppAuthManager.BearerTokenAuthenticator(session).authenticate();
+        if (auth == null) {
+            throw new NotAuthorizedException("Bearer");
+        }
+        return auth.getUser();
+    }
+
+    private boolean isMasterAdmin(RealmModel realm, UserModel user) {
+        if (!Config.getAdminRealm().equals(realm.getName())) {
+            return false;
+        }
+        RoleModel admin = realm.getRole(AdminRoles.ADMIN);
+        return admin != null && user.hasRole(admin);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,37 @@
+package id.co.swamdia.provider;
+
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.services.resource.RealmResourceProvider;
+import org.keycloak.services.resource.RealmResourceProviderFactory;
+
+/**
+ * Factory untuk endpoint admin role storage (/realms/{realm}/role-store)
+ */
+public class RoleStoreResourceProviderFactory implements RealmResourceProviderFactory {
+
+    private static final String PROVIDER_ID = "role-store";
+
+    @Override
+    public RealmResourceProvider create(KeycloakSession session) {
+        return new RoleStoreResourceProvider(session);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+}
@@ -0,0 +1,185 @@
+package id.co.swamdia.repository;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+import id.co.swamdia.service.DatabaseService;
+import id.co.swamdia.service.RealmAdmission;
+import id.co.swamdia.service.Workload;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Export custom_roles satu realm sebagai NDJSON (satu role per baris).
+ * Memakai JDBC langsung dengan cursor di server (fetch size, autocommit off)
+ * sehingga memory konstan berapa pun jumlah role, dan berjalan di dalam
+ * transaksi REPEATABLE READ read-only supaya hasilnya satu snapshot konsisten.
+ */
+public class CustomRoleExporter {
+    private static final Logger logger = Logger.getLogger(CustomRoleExporter.class);
+
+    private static final String EXPORT_SQL = "SELECT id, name, description, realm_id, client_id, created_at, updated_at "
+            + "FROM custom_roles WHERE realm_id = ? ORDER BY name, client_id";
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private final DatabaseService databaseService;
+    private final int fetchSize;
+    private final long statementTimeoutMillis;
+
+    public CustomRoleExporter(DatabaseService databaseService) {
+        this(databaseService,
+                Integer.getInteger("quarkus.datasource.user-store.export.fetch-size", 1000),
+                Long.getLong("quarkus.datasource.user-store.export.statement-timeout-ms", 0L));
+    }
+
+    /**
+     * @param statementTimeoutMillis batas waktu query export; 0 berarti tanpa batas
+     */
+    public CustomRoleExporter(DatabaseService databaseService, int fetchSize, long statementTimeoutMillis) {
+        this.databaseService = databaseService;
+        this.fetchSize = fetchSize;
+        this.statementTimeoutMillis = statementTimeoutMillis;
+    }
+
+    /**
+     * Hasil export
+     */
+    public static final class ExportResult {
+        private final String realmId;
+        private final long rows;
+        private final long durationMillis;
+
+        ExportResult(String realmId, long rows, long durationMillis) {
+            this.realmId = realmId;
+            this.rows = rows;
+            this.durationMillis = durationMillis;
+        }
+
+        public String getRealmId() {
+            return realmId;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public double getRowsPerSecond() {
+            return durationMillis > 0 ? rows * 1000.0 / durationMillis : rows;
+        }
+    }
+
+    /**
+     * Tulis semua role realm ke output sebagai NDJSON. Output tidak ditutup;
+     * kalau gzip, stream gzip di-finish sebelum method selesai.
+     */
+    public ExportResult exportRealm(String realmId, OutputStream output, boolean gzip) throws IOException {
+        long start = System.nanoTime();
+        GZIPOutputStream gzipOutput = gzip ? new GZIPOutputStream(output, 64 * 1024) : null;
+        long rows;
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(
+                gzipOutput != null ? gzipOutput : output, JsonEncoding.UTF8)) {
+            // Pemisah antar objek ditulis sendiri sebagai newline
+            generator.setRootValueSeparator(null);
+            rows = writeRows(realmId, generator);
+        }
+        if (gzipOutput != null) {
+            gzipOutput.finish();
+        }
+        output.flush();
+
+        ExportResult result = new ExportResult(realmId, rows, (System.nanoTime() - start) / 1_000_000);
+        logger.infof("Exported %d roles for realm %s in %d ms (%.0f rows/s)",
+                result.getRows(), realmId, result.getDurationMillis(), result.getRowsPerSecond());
+        return result;
+    }
+
+    private long writeRows(String realmId, JsonGenerator generator) throws IOException {
+        // Export memegang satu connection lama; tetap dihitung dalam kuota realm
+        try (RealmAdmission.Permit permit = databaseService.getRealmAdmission().acquire(realmId,
+                Workload.SCAN);
+                Connection connection = databaseService.getDataSource(Workload.SCAN).getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            int isolation = connection.getTransactionIsolation();
+            boolean readOnly = connection.isReadOnly();
+            try {
+                // Cursor server-side di PostgreSQL hanya dipakai kalau autocommit off
+                connection.setAutoCommit(false);
+                connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                connection.setReadOnly(true);
+                try (Statement statement = connection.createStatement()) {
+                    // Pool memasang statement_timeout global; export boleh lebih lama
+                    statement.execute("SET LOCAL statement_timeout = " + statementTimeoutMillis);
+                }
+
+                long rows = 0;
+                try (PreparedStatement statement = connection.prepareStatement(EXPORT_SQL,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    statement.setFetchSize(fetchSize);
+                    statement.setString(1, realmId);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            writeRow(generator, resultSet);
+                            rows++;
+                        }
+                    }
+                }
+                connection.commit();
+                return rows;
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setReadOnly(readOnly);
+                connection.setTransactionIsolation(isolation);
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to export roles for realm " + realmId, e);
+        }
+    }
+
+    private static void writeRow(JsonGenerator generator, ResultSet resultSet) throws SQLException, IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", resultSet.getString("id"));
+        generator.writeStringField("name", resultSet.getString("name"));
+        writeNullableField(generator, "description", resultSet.getString("description"));
+        generator.writeStringField("realmId", resultSet.getString("realm_id"));
+        writeNullableField(generator, "clientId", resultSet.getString("client_id"));
+        writeTimestampField(generator, "createdAt", resultSet.getObject("created_at", LocalDateTime.class));
+        writeTimestampField(generator, "updatedAt", resultSet.getObject("updated_at", LocalDateTime.class));
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private static void writeNullableField(JsonGenerator generator, String field, String value) throws IOException {
+        if (value == null) {
+            generator.writeNullField(field);
+        } else {
+            generator.writeStringField(field, value);
+        }
+    }
+
+    private static void writeTimestampField(JsonGenerator generator, String field, LocalDateTime value)
+            throws IOException {
+        writeNullableField(generator, field, value != null ? value.toString() : null);
+    }
+}
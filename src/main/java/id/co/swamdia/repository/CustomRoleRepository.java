@@ -3,161 +3,860 @@ package id.co.swamdia.repository;
 import org.jboss.logging.Logger;
 
 import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.entity.RoleIds;
+import id.co.swamdia.entity.RoleView;
+import id.co.swamdia.jfr.RoleQueryEvent;
+import id.co.swamdia.jfr.RoleStorageEvent;
+import id.co.swamdia.service.CircuitBreaker;
+import id.co.swamdia.service.DatabaseService;
+import id.co.swamdia.service.RealmAdmission;
+import id.co.swamdia.service.RealmAdmissionException;
+import id.co.swamdia.service.SlowQueryLog;
+import id.co.swamdia.service.StaleRoleStore;
+import id.co.swamdia.service.Workload;
+
+import org.hibernate.Session;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CustomRoleRepository {
     private static final Logger logger = Logger.getLogger(CustomRoleRepository.class);
+    private static final String QUERY_TIMEOUT_HINT = "jakarta.persistence.query.timeout";
+    private static final String FETCH_SIZE_HINT = "org.hibernate.fetchSize";
+    private static final int SCAN_FETCH_SIZE = 1000;
+    private static final int DESCRIPTION_BATCH_SIZE = 500;
+    // CAST supaya parameter null tetap punya tipe di PostgreSQL
+    private static final String UPSERT_SQL = "INSERT INTO custom_roles "
+            + "(id, name, description, realm_id, client_id, created_at, updated_at, version) "
+            + "VALUES (:id, :name, CAST(:description AS text), :realmId, CAST(:clientId AS varchar), :now, :now, 0) "
+            + "ON CONFLICT (realm_id, (COALESCE(client_id, '')), name) DO UPDATE SET "
+            + "description = EXCLUDED.description, updated_at = EXCLUDED.updated_at, "
+            + "version = custom_roles.version + 1 "
+            + "RETURNING id, (xmax = 0) AS inserted, version";
+    // Semua kolom entity, supaya hasil UPDATE langsung dipetakan ke CustomRoleEntity
+    private static final String UPDATE_RETURNING = " RETURNING id, name, description, realm_id, client_id, "
+            + "created_at, updated_at, version";
+
+    // Hapus per batch lewat primary key supaya setiap transaksi hanya mengunci sedikit baris
+    private static final String PURGE_REALM_SQL = "DELETE FROM custom_roles WHERE id IN "
+            + "(SELECT id FROM custom_roles WHERE realm_id = :realmId LIMIT :limit)";
+    private static final String PURGE_CLIENT_SQL = "DELETE FROM custom_roles WHERE id IN "
+            + "(SELECT id FROM custom_roles WHERE realm_id = :realmId AND client_id = :clientId LIMIT :limit)";
 
-    private final EntityManager entityManager;
+    private final DatabaseService databaseService;
+    // Setelah ada write, semua pembacaan di repository ini tetap ke primary (read-your-writes)
+    private volatile boolean pinnedToPrimary;
+    // EntityManager milik operasi baca yang sedang berjalan di thread ini (lihat inReadTransaction)
+    private final ThreadLocal<EntityManager> currentEntityManager = new ThreadLocal<>();
 
-    public CustomRoleRepository(EntityManager entityManager) {
-        this.entityManager = entityManager;
+    /**
+     * Repository tanpa state koneksi: setiap operasi membuka EntityManager dan
+     * transaksi sendiri, dan connection kembali ke pool begitu transaksi selesai.
+     * Pembacaan boleh ke read replica selama replica sehat dan belum ada write
+     * lewat repository ini.
+     */
+    public CustomRoleRepository(DatabaseService databaseService) {
+        this(databaseService, false);
     }
 
-    // Basic CRUD operations
-    public Optional<CustomRoleEntity> findById(String id) {
+    /**
+     * @param primaryOnly true untuk jalur sinkronisasi yang membaca lalu menulis
+     */
+    public CustomRoleRepository(DatabaseService databaseService, boolean primaryOnly) {
+        this.databaseService = databaseService;
+        this.pinnedToPrimary = primaryOnly;
+    }
+
+    private EntityManager readEntityManager() {
+        EntityManager entityManager = currentEntityManager.get();
+        if (entityManager == null) {
+            throw new IllegalStateException("Read query outside of inReadTransaction");
+        }
+        return entityManager;
+    }
+
+    /**
+     * Jalankan pembacaan dalam transaksi read-only singkat dengan EntityManager
+     * baru dari lane workload; hasil entity sudah detached begitu method ini selesai
+     */
+    private <T> T inReadTransaction(Workload workload, Supplier<T> work) {
+        if (currentEntityManager.get() != null) {
+            return work.get();
+        }
+        EntityManager entityManager = (pinnedToPrimary
+                ? databaseService.getEntityManagerFactory(workload)
+                : databaseService.getReadEntityManagerFactory(workload)).createEntityManager();
+        entityManager.unwrap(Session.class).setDefaultReadOnly(true);
+        currentEntityManager.set(entityManager);
+        EntityTransaction transaction = entityManager.getTransaction();
         try {
-            CustomRoleEntity role = entityManager.find(CustomRoleEntity.class, id);
-            return Optional.ofNullable(role);
+            transaction.begin();
+            T result = work.get();
+            transaction.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        } finally {
+            currentEntityManager.remove();
+            entityManager.close();
+        }
+    }
+
+    /**
+     * inReadTransaction di dalam kuota realm, direkam sebagai event JFR RoleQuery
+     * (kalau diaktifkan); statement lambat di dalamnya dicatat dengan realm ini
+     * di SlowQueryLog
+     */
+    private <T> T traced(String realmId, String operation, Workload workload, Supplier<T> work) {
+        RoleQueryEvent event = new RoleQueryEvent();
+        event.start(realmId, operation);
+        RealmAdmission.Permit permit = admit(event, realmId, workload);
+        String previousRealm = SlowQueryLog.enterRealm(realmId);
+        int rows = 0;
+        try {
+            T result = inReadTransaction(workload, work);
+            rows = RoleStorageEvent.rowsOf(result);
+            return result;
+        } catch (RuntimeException e) {
+            event.setCache(RoleStorageEvent.CACHE_ERROR);
+            throw e;
+        } finally {
+            SlowQueryLog.exitRealm(previousRealm);
+            permit.close();
+            event.finish(rows);
+        }
+    }
+
+    /**
+     * Ambil permit kuota realm; kalau ditolak, event langsung ditutup sebagai rejected
+     */
+    private RealmAdmission.Permit admit(RoleQueryEvent event, String realmId, Workload workload) {
+        try {
+            RealmAdmission.Permit permit = databaseService.getRealmAdmission().acquire(realmId, workload);
+            event.setAdmissionWait(permit.getWaitNanos());
+            return permit;
+        } catch (RealmAdmissionException e) {
+            event.setCache(RoleStorageEvent.CACHE_REJECTED);
+            event.finish(0);
+            throw e;
+        }
+    }
+
+    // Event JFR untuk hasil yang dilayani tanpa query (breaker OPEN)
+    private static <T> T servedStale(String realmId, String operation, T result) {
+        RoleQueryEvent event = new RoleQueryEvent();
+        event.start(realmId, operation);
+        event.setCache(RoleStorageEvent.CACHE_STALE);
+        event.finish(RoleStorageEvent.rowsOf(result));
+        return result;
+    }
+
+    /**
+     * Jalankan query baca lewat circuit breaker. Kalau breaker OPEN atau query
+     * gagal, kembalikan data terakhir yang diketahui (stale) bila ada.
+     */
+    private Optional<CustomRoleEntity> readOne(String realmId, String operation, String staleKey,
+            String errorMessage, Supplier<Optional<CustomRoleEntity>> query) {
+        CircuitBreaker breaker = databaseService.getCircuitBreaker(Workload.LOOKUP);
+        StaleRoleStore staleStore = databaseService.getStaleRoleStore();
+        if (!breaker.allowRequest()) {
+            logger.debugf("Circuit breaker open, serving stale data for %s", staleKey);
+            return servedStale(realmId, operation, staleStore.getOne(staleKey).orElse(Optional.empty()));
+        }
+        try {
+            Optional<CustomRoleEntity> result = traced(realmId, operation, Workload.LOOKUP, query);
+            breaker.recordSuccess();
+            if (staleStore.shouldRecord(staleKey)) {
+                staleStore.putOne(staleKey, result);
+            }
+            return result;
+        } catch (RealmAdmissionException e) {
+            breaker.recordSkipped();
+            logger.debugf("%s, serving stale data for %s", e.getMessage(), staleKey);
+            return staleStore.getOne(staleKey).orElse(Optional.empty());
         } catch (Exception e) {
-            logger.error("Error finding role by ID: " + id, e);
-            return Optional.empty();
+            breaker.recordFailure();
+            logger.error(errorMessage, e);
+            return staleStore.getOne(staleKey).orElse(Optional.empty());
         }
     }
 
-    public List<CustomRoleEntity> findByRealm(String realmId) {
+    private List<CustomRoleEntity> readList(String realmId, String operation, String staleKey,
+            String errorMessage, Supplier<List<CustomRoleEntity>> query) {
+        CircuitBreaker breaker = databaseService.getCircuitBreaker(Workload.SCAN);
+        StaleRoleStore staleStore = databaseService.getStaleRoleStore();
+        if (!breaker.allowRequest()) {
+            logger.debugf("Circuit breaker open, serving stale data for %s", staleKey);
+            return servedStale(realmId, operation,
+                    staleKey != null ? staleStore.getList(staleKey).orElse(List.of()) : List.of());
+        }
         try {
-            logger.infof("Finding all realm roles for realmId: %s", realmId);
-            TypedQuery<CustomRoleEntity> query = entityManager.createNamedQuery(
-                    "CustomRoleEntity.findByRealm", CustomRoleEntity.class);
-            query.setParameter("realmId", realmId);
-            List<CustomRoleEntity> results = query.getResultList();
-            logger.infof("Found %d realm roles for realmId: %s", results.size(), realmId);
-            if (!results.isEmpty()) {
-                logger.debugf("Role names: %s", 
-                        results.stream()
-                                .map(CustomRoleEntity::getName)
-                                .collect(java.util.stream.Collectors.joining(", ")));
+            List<CustomRoleEntity> results = traced(realmId, operation, Workload.SCAN, query);
+            breaker.recordSuccess();
+            if (staleKey != null && staleStore.shouldRecord(staleKey)) {
+                staleStore.putList(staleKey, results);
             }
             return results;
+        } catch (RealmAdmissionException e) {
+            breaker.recordSkipped();
+            logger.debugf("%s, serving stale data for %s", e.getMessage(), staleKey);
+            return staleKey != null ? staleStore.getList(staleKey).orElse(List.of()) : List.of();
         } catch (Exception e) {
-            logger.error("Error finding roles by realm: " + realmId, e);
-            return List.of();
+            breaker.recordFailure();
+            logger.error(errorMessage, e);
+            return staleKey != null ? staleStore.getList(staleKey).orElse(List.of()) : List.of();
         }
     }
 
-    public List<CustomRoleEntity> findByRealmAndClient(String realmId, String clientId) {
+    /**
+     * Seperti readList untuk proyeksi RoleView. Data stale disimpan sebagai
+     * entity tanpa deskripsi, jadi deskripsi tetap dimuat terpisah.
+     */
+    private List<RoleView> readViews(String realmId, String operation, String staleKey, String errorMessage,
+            Supplier<List<RoleView>> query) {
+        CircuitBreaker breaker = databaseService.getCircuitBreaker(Workload.SCAN);
+        StaleRoleStore staleStore = databaseService.getStaleRoleStore();
+        if (!breaker.allowRequest()) {
+            logger.debugf("Circuit breaker open, serving stale data for %s", staleKey);
+            return servedStale(realmId, operation, staleViews(staleStore, staleKey));
+        }
         try {
-            TypedQuery<CustomRoleEntity> query = entityManager.createNamedQuery(
-                    "CustomRoleEntity.findByRealmAndClient", CustomRoleEntity.class);
-            query.setParameter("realmId", realmId);
-            query.setParameter("clientId", clientId);
-            return query.getResultList();
+            List<RoleView> results = traced(realmId, operation, Workload.SCAN, query);
+            breaker.recordSuccess();
+            if (staleKey != null && staleStore.shouldRecord(staleKey)) {
+                staleStore.putList(staleKey, results.stream().map(RoleView::toEntity).collect(Collectors.toList()));
+            }
+            return results;
+        } catch (RealmAdmissionException e) {
+            breaker.recordSkipped();
+            logger.debugf("%s, serving stale data for %s", e.getMessage(), staleKey);
+            return staleViews(staleStore, staleKey);
         } catch (Exception e) {
-            logger.error("Error finding roles by realm and client", e);
+            breaker.recordFailure();
+            logger.error(errorMessage, e);
+            return staleViews(staleStore, staleKey);
+        }
+    }
+
+    private static List<RoleView> staleViews(StaleRoleStore staleStore, String staleKey) {
+        if (staleKey == null) {
             return List.of();
         }
+        return staleStore.getList(staleKey).orElse(List.of()).stream()
+                .map(role -> new RoleView(role.getId(), role.getName(), role.getRealmId(), role.getClientId()))
+                .collect(Collectors.toList());
     }
 
-    public Optional<CustomRoleEntity> findByNameAndRealm(String name, String realmId) {
+    /**
+     * COUNT lewat circuit breaker; -1 kalau breaker OPEN, kuota realm habis
+     * atau query gagal
+     */
+    private long readCount(String realmId, String operation, String errorMessage, Supplier<Long> query) {
+        CircuitBreaker breaker = databaseService.getCircuitBreaker(Workload.SCAN);
+        if (!breaker.allowRequest()) {
+            logger.debugf("Circuit breaker open, skipping count: %s", errorMessage);
+            return -1;
+        }
         try {
-            TypedQuery<CustomRoleEntity> query = entityManager.createNamedQuery(
-                    "CustomRoleEntity.findByNameAndRealm", CustomRoleEntity.class);
-            query.setParameter("name", name);
-            query.setParameter("realmId", realmId);
-            return query.getResultStream().findFirst();
+            long count = traced(realmId, operation, Workload.SCAN, query);
+            breaker.recordSuccess();
+            return count;
+        } catch (RealmAdmissionException e) {
+            breaker.recordSkipped();
+            logger.debugf("%s, skipping count: %s", e.getMessage(), errorMessage);
+            return -1;
         } catch (Exception e) {
-            logger.error("Error finding role by name and realm", e);
+            breaker.recordFailure();
+            logger.error(errorMessage, e);
+            return -1;
+        }
+    }
+
+    private <T> TypedQuery<T> namedQuery(String name, Class<T> resultClass, boolean lookup) {
+        TypedQuery<T> query = readEntityManager().createNamedQuery(name, resultClass);
+        query.setHint(QUERY_TIMEOUT_HINT, lookup
+                ? databaseService.getLookupTimeoutMillis()
+                : databaseService.getSearchTimeoutMillis());
+        return query;
+    }
+
+    /**
+     * False kalau ID pasti tidak ada di tabel: dengan kolom id bertipe uuid,
+     * ID yang bukan UUID ditolak PostgreSQL dengan error (dan akan dihitung
+     * circuit breaker), jadi tidak dikirim sama sekali
+     */
+    private boolean isStoredId(String id) {
+        return id != null && (!databaseService.isNativeUuid() || RoleIds.isUuid(id));
+    }
+
+    // Basic CRUD operations
+    /**
+     * @param realmId realm pemanggil untuk kuota dan tracing; bukan filter query
+     */
+    public Optional<CustomRoleEntity> findById(String realmId, String id) {
+        if (!isStoredId(id)) {
             return Optional.empty();
         }
+        return readOne(realmId, "findById", StaleRoleStore.idKey(id), "Error finding role by ID: " + id, () -> {
+            Map<String, Object> hints = Map.of(QUERY_TIMEOUT_HINT, databaseService.getLookupTimeoutMillis());
+            CustomRoleEntity role = readEntityManager().find(CustomRoleEntity.class, id, hints);
+            return Optional.ofNullable(role);
+        });
     }
 
-    public Optional<CustomRoleEntity> findByNameAndRealmAndClient(String name, String realmId, String clientId) {
-        try {
-            TypedQuery<CustomRoleEntity> query = entityManager.createNamedQuery(
-                    "CustomRoleEntity.findByNameAndRealmAndClient", CustomRoleEntity.class);
-            query.setParameter("name", name);
+    /**
+     * Realm roles tanpa deskripsi (proyeksi RoleView)
+     */
+    public List<RoleView> findViewsByRealm(String realmId) {
+        return readViews(realmId, "findViewsByRealm", StaleRoleStore.realmViewsKey(realmId),
+                "Error finding roles by realm: " + realmId, () -> {
+            logger.infof("Finding all realm roles for realmId: %s", realmId);
+            TypedQuery<RoleView> query = namedQuery("CustomRoleEntity.findViewsByRealm", RoleView.class, false);
+            query.setParameter("realmId", realmId);
+            List<RoleView> results = query.getResultList();
+            logger.infof("Found %d realm roles for realmId: %s", results.size(), realmId);
+            return results;
+        });
+    }
+
+    public List<CustomRoleEntity> findByRealmAndClient(String realmId, String clientId) {
+        return readList(realmId, "findByRealmAndClient", StaleRoleStore.clientKey(realmId, clientId),
+                "Error finding roles by realm and client", () -> {
+            TypedQuery<CustomRoleEntity> query = namedQuery(
+                    "CustomRoleEntity.findByRealmAndClient", CustomRoleEntity.class, false);
             query.setParameter("realmId", realmId);
             query.setParameter("clientId", clientId);
+            return query.getResultList();
+        });
+    }
+
+    public Optional<CustomRoleEntity> findByNameAndRealm(String name, String realmId) {
+        return readOne(realmId, "findByNameAndRealm", StaleRoleStore.nameKey(realmId, null, name),
+                "Error finding role by name and realm", () -> {
+            TypedQuery<CustomRoleEntity> query = namedQuery(
+                    "CustomRoleEntity.findByNameAndRealm", CustomRoleEntity.class, true);
+            query.setParameter("name", name);
+            query.setParameter("realmId", realmId);
             return query.getResultStream().findFirst();
-        } catch (Exception e) {
-            logger.error("Error finding role by name, realm and client", e);
-            return Optional.empty();
-        }
+        });
     }
 
-    public List<CustomRoleEntity> search(String realmId, String searchTerm) {
+    public Optional<CustomRoleEntity> findByNameAndRealmAndClient(String name, String realmId, String clientId) {
+        return readOne(realmId, "findByNameAndRealmAndClient", StaleRoleStore.nameKey(realmId, clientId, name),
+                "Error finding role by name, realm and client", () -> {
+                    TypedQuery<CustomRoleEntity> query = namedQuery(
+                            "CustomRoleEntity.findByNameAndRealmAndClient", CustomRoleEntity.class, true);
+                    query.setParameter("name", name);
+                    query.setParameter("realmId", realmId);
+                    query.setParameter("clientId", clientId);
+                    return query.getResultStream().findFirst();
+                });
+    }
+
+    /**
+     * Role yang nama atau deskripsinya cocok dengan search term; deskripsi
+     * hanya dipakai untuk filter di database, tidak ikut dikirim
+     */
+    public List<RoleView> searchViews(String realmId, String searchTerm) {
+        return readViews(realmId, "searchViews", StaleRoleStore.searchViewsKey(realmId, searchTerm),
+                "Error searching roles for realmId: " + realmId + " with searchTerm: " + searchTerm, () -> {
+                    logger.infof("Searching roles for realmId: %s with searchTerm: '%s'", realmId, searchTerm);
+                    TypedQuery<RoleView> query = namedQuery("CustomRoleEntity.searchViews", RoleView.class, false);
+                    query.setParameter("realmId", realmId);
+                    query.setParameter("search", "%" + searchTerm + "%");
+                    List<RoleView> results = query.getResultList();
+                    logger.infof("Found %d roles matching searchTerm '%s' for realmId: %s",
+                            results.size(), searchTerm, realmId);
+                    return results;
+                });
+    }
+
+    /**
+     * Search client roles yang dibatasi ke daftar client ID tertentu (satu chunk)
+     */
+    public List<RoleView> searchViewsByClients(String realmId, String searchTerm, List<String> clientIds) {
+        String term = searchTerm == null ? "" : searchTerm;
+        // Tanpa stale key: key berisi ratusan client ID terlalu mahal untuk disimpan
+        return readViews(realmId, "searchViewsByClients", null,
+                "Error searching client roles for realmId: " + realmId, () -> {
+                    TypedQuery<RoleView> query = namedQuery(
+                            "CustomRoleEntity.searchViewsByClients", RoleView.class, false);
+                    query.setParameter("realmId", realmId);
+                    query.setParameter("clientIds", clientIds);
+                    query.setParameter("search", "%" + term + "%");
+                    return query.getResultList();
+                });
+    }
+
+    /**
+     * Seperti searchViews / searchViewsByClients, tapi tanpa data stale:
+     * kalau breaker OPEN, kuota realm habis atau query gagal, exception dilempar
+     * ke pemanggil. Dipakai untuk mengisi cache hasil search supaya hasil kosong
+     * karena error tidak ikut tersimpan.
+     *
+     * @param clientIds null untuk semua role di realm
+     */
+    public List<RoleView> fetchSearchViews(String realmId, String searchTerm, List<String> clientIds) {
+        CircuitBreaker breaker = databaseService.getCircuitBreaker(Workload.SCAN);
+        if (!breaker.allowRequest()) {
+            throw new IllegalStateException("Circuit breaker open, skipping role search for realm " + realmId);
+        }
+        String operation = clientIds == null ? "searchViews" : "searchViewsByClients";
         try {
-            logger.infof("Searching roles for realmId: %s with searchTerm: '%s'", realmId, searchTerm);
-            TypedQuery<CustomRoleEntity> query = entityManager.createNamedQuery(
-                    "CustomRoleEntity.search", CustomRoleEntity.class);
-            query.setParameter("realmId", realmId);
-            query.setParameter("search", "%" + searchTerm + "%");
-            List<CustomRoleEntity> results = query.getResultList();
-            logger.infof("Found %d roles matching searchTerm '%s' for realmId: %s", 
-                    results.size(), searchTerm, realmId);
-            if (!results.isEmpty()) {
-                logger.debugf("Matching role names: %s", 
-                        results.stream()
-                                .map(CustomRoleEntity::getName)
-                                .collect(java.util.stream.Collectors.joining(", ")));
-            }
+            List<RoleView> results = traced(realmId, operation, Workload.SCAN, () -> {
+                TypedQuery<RoleView> query = namedQuery("CustomRoleEntity." + operation, RoleView.class, false);
+                query.setParameter("realmId", realmId);
+                if (clientIds != null) {
+                    query.setParameter("clientIds", clientIds);
+                }
+                query.setParameter("search", "%" + searchTerm + "%");
+                return query.getResultList();
+            });
+            breaker.recordSuccess();
             return results;
-        } catch (Exception e) {
-            logger.error("Error searching roles for realmId: " + realmId + " with searchTerm: " + searchTerm, e);
-            return List.of();
+        } catch (RealmAdmissionException e) {
+            breaker.recordSkipped();
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.recordFailure();
+            throw e;
         }
     }
 
-    public long countByRealm(String realmId) {
-        try {
-            TypedQuery<Long> query = entityManager.createNamedQuery(
-                    "CustomRoleEntity.countByRealm", Long.class);
+    /**
+     * Role di realm untuk sekumpulan ID (satu query per chunk ID, lewat primary
+     * key); ID yang tidak ditemukan tidak ada di hasil dan urutan hasil tidak
+     * mengikuti urutan ID. Error dilempar ke pemanggil.
+     */
+    public List<RoleView> findViewsByIds(String realmId, List<String> ids) {
+        List<RoleView> views = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += DESCRIPTION_BATCH_SIZE) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + DESCRIPTION_BATCH_SIZE));
+            views.addAll(traced(realmId, "findViewsByIds", Workload.LOOKUP, () -> {
+                TypedQuery<RoleView> query = namedQuery("CustomRoleEntity.findViewsByIds", RoleView.class, true);
+                query.setParameter("realmId", realmId);
+                query.setParameter("ids", chunk);
+                return query.getResultList();
+            }));
+        }
+        return views;
+    }
+
+    /**
+     * Deskripsi untuk sekumpulan role (satu query per chunk ID); ID yang tidak
+     * ditemukan tidak ada di map. Error dilempar ke pemanggil.
+     */
+    public Map<String, String> findDescriptions(String realmId, List<String> ids) {
+        Map<String, String> descriptions = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += DESCRIPTION_BATCH_SIZE) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + DESCRIPTION_BATCH_SIZE));
+            traced(realmId, "findDescriptions", Workload.LOOKUP, () -> {
+                TypedQuery<Object[]> query = namedQuery("CustomRoleEntity.findDescriptions", Object[].class, true);
+                query.setParameter("ids", chunk);
+                List<Object[]> rows = query.getResultList();
+                for (Object[] row : rows) {
+                    descriptions.put((String) row[0], (String) row[1]);
+                }
+                return rows.size();
+            });
+        }
+        return descriptions;
+    }
+
+    /**
+     * Baca semua realm roles secara streaming (cursor server-side, tanpa entity
+     * managed) untuk membangun index di memory. Error dilempar ke pemanggil.
+     */
+    public void scanRealmRoles(String realmId, RoleRowConsumer consumer) {
+        traced(realmId, "scanRealmRoles", Workload.SCAN, () -> {
+            TypedQuery<Object[]> query = namedQuery("CustomRoleEntity.scanRealmRoles", Object[].class, false);
+            query.setParameter("realmId", realmId);
+            query.setHint(FETCH_SIZE_HINT, SCAN_FETCH_SIZE);
+            int[] count = { 0 };
+            try (Stream<Object[]> rows = query.getResultStream()) {
+                rows.forEach(row -> {
+                    consumer.accept((String) row[0], (String) row[1], (String) row[2], null);
+                    count[0]++;
+                });
+            }
+            return count[0];
+        });
+    }
+
+    /**
+     * Seperti scanRealmRoles, tapi termasuk client roles di realm tersebut
+     */
+    public void scanAllRoles(String realmId, RoleRowConsumer consumer) {
+        traced(realmId, "scanAllRoles", Workload.SCAN, () -> {
+            TypedQuery<Object[]> query = namedQuery("CustomRoleEntity.scanAllRoles", Object[].class, false);
+            query.setParameter("realmId", realmId);
+            query.setHint(FETCH_SIZE_HINT, SCAN_FETCH_SIZE);
+            int[] count = { 0 };
+            try (Stream<Object[]> rows = query.getResultStream()) {
+                rows.forEach(row -> {
+                    consumer.accept((String) row[0], (String) row[1], (String) row[2], (String) row[3]);
+                    count[0]++;
+                });
+            }
+            return count[0];
+        });
+    }
+
+    /**
+     * Role realm yang berubah setelah waktu tertentu (delta untuk snapshot).
+     * Error dilempar ke pemanggil.
+     */
+    public List<CustomRoleEntity> findUpdatedSince(String realmId, LocalDateTime since) {
+        return traced(realmId, "findUpdatedSince", Workload.SCAN, () -> {
+            TypedQuery<CustomRoleEntity> query = namedQuery(
+                    "CustomRoleEntity.findUpdatedSince", CustomRoleEntity.class, false);
+            query.setParameter("realmId", realmId);
+            query.setParameter("since", since);
+            return query.getResultList();
+        });
+    }
+
+    /**
+     * Semua ID role di realm, untuk mendeteksi role yang sudah dihapus
+     */
+    public List<String> findIdsByRealm(String realmId) {
+        return traced(realmId, "findIdsByRealm", Workload.SCAN, () -> {
+            TypedQuery<String> query = namedQuery("CustomRoleEntity.findIdsByRealm", String.class, false);
+            query.setParameter("realmId", realmId);
+            query.setHint(FETCH_SIZE_HINT, SCAN_FETCH_SIZE);
+            return query.getResultList();
+        });
+    }
+
+    /**
+     * updated_at terbesar di realm, null kalau realm kosong
+     */
+    public LocalDateTime findMaxUpdatedAt(String realmId) {
+        return traced(realmId, "findMaxUpdatedAt", Workload.LOOKUP, () -> {
+            TypedQuery<LocalDateTime> query = namedQuery("CustomRoleEntity.maxUpdatedAt", LocalDateTime.class, false);
             query.setParameter("realmId", realmId);
             return query.getSingleResult();
+        });
+    }
+
+    @FunctionalInterface
+    public interface RoleRowConsumer {
+        void accept(String id, String name, String description, String clientId);
+    }
+
+    public long countByRealm(String realmId) {
+        try {
+            return traced(realmId, "countByRealm", Workload.SCAN, () -> {
+                TypedQuery<Long> query = namedQuery(
+                        "CustomRoleEntity.countByRealm", Long.class, false);
+                query.setParameter("realmId", realmId);
+                return query.getSingleResult();
+            });
         } catch (Exception e) {
             logger.error("Error counting roles by realm", e);
             return 0;
         }
     }
 
-    // Save operations with transaction management
+    /**
+     * Jumlah realm roles (client_id NULL); -1 kalau gagal
+     */
+    public long countRealmRoles(String realmId) {
+        return readCount(realmId, "countRealmRoles", "Error counting realm roles for realmId: " + realmId, () -> {
+            TypedQuery<Long> query = namedQuery("CustomRoleEntity.countRealmRoles", Long.class, false);
+            query.setParameter("realmId", realmId);
+            return query.getSingleResult();
+        });
+    }
+
+    /**
+     * Jumlah client roles untuk satu client; -1 kalau gagal
+     */
+    public long countByRealmAndClient(String realmId, String clientId) {
+        return readCount(realmId, "countByRealmAndClient",
+                "Error counting client roles for client: " + clientId, () -> {
+            TypedQuery<Long> query = namedQuery("CustomRoleEntity.countByRealmAndClient", Long.class, false);
+            query.setParameter("realmId", realmId);
+            query.setParameter("clientId", clientId);
+            return query.getSingleResult();
+        });
+    }
+
+    /**
+     * Jumlah role yang cocok dengan search term (sama seperti search()); -1 kalau gagal
+     */
+    public long countSearch(String realmId, String searchTerm) {
+        return readCount(realmId, "countSearch",
+                "Error counting roles for realmId: " + realmId + " with searchTerm: " + searchTerm, () -> {
+            TypedQuery<Long> query = namedQuery("CustomRoleEntity.countSearch", Long.class, false);
+            query.setParameter("realmId", realmId);
+            query.setParameter("search", "%" + searchTerm + "%");
+            return query.getSingleResult();
+        });
+    }
+
+    public long countSearchByClient(String realmId, String clientId, String searchTerm) {
+        return readCount(realmId, "countSearchByClient",
+                "Error counting client roles for client: " + clientId + " with searchTerm: " + searchTerm,
+                () -> {
+                    TypedQuery<Long> query = namedQuery("CustomRoleEntity.countSearchByClient", Long.class, false);
+                    query.setParameter("realmId", realmId);
+                    query.setParameter("clientId", clientId);
+                    query.setParameter("search", "%" + searchTerm + "%");
+                    return query.getSingleResult();
+                });
+    }
+
+    public List<String> findDistinctRealmIds() {
+        try {
+            return traced(null, "findDistinctRealmIds", Workload.SCAN, () -> {
+                TypedQuery<String> query = namedQuery(
+                        "CustomRoleEntity.findDistinctRealmIds", String.class, false);
+                return query.getResultList();
+            });
+        } catch (Exception e) {
+            logger.error("Error finding distinct realm IDs", e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Insert role baru, atau merge role yang sudah ada. Merge hanya menulis kolom
+     * yang berubah dan gagal (OptimisticLockException) kalau versi role sudah
+     * tidak sama dengan di database; untuk mengubah kolom pakai update().
+     */
     public CustomRoleEntity save(CustomRoleEntity role) {
         EntityTransaction transaction = null;
+        pinnedToPrimary = true;
+        RoleQueryEvent event = new RoleQueryEvent();
+        event.start(role.getRealmId(), "save");
+        RealmAdmission.Permit permit = admit(event, role.getRealmId(), Workload.WRITE);
+        String previousRealm = SlowQueryLog.enterRealm(role.getRealmId());
+        int rows = 0;
+        EntityManager entityManager = databaseService.getEntityManagerFactory(Workload.WRITE).createEntityManager();
         try {
             transaction = entityManager.getTransaction();
             transaction.begin();
 
+            boolean created;
             if (role.getId() == null) {
                 // Generate UUID if not provided
-                role.setId(java.util.UUID.randomUUID().toString());
+                role.setId(RoleIds.newId());
                 entityManager.persist(role);
+                created = true;
             } else {
+                // role selalu detached di sini; find dulu supaya tahu insert/update
+                // dan merge sesudahnya tidak SELECT lagi
+                created = entityManager.find(CustomRoleEntity.class, role.getId()) == null;
                 role = entityManager.merge(role);
             }
 
             entityManager.flush();
             transaction.commit();
 
+            rows = 1;
             logger.infof("Saved role: %s in realm: %s", role.getName(), role.getRealmId());
+            RoleChangeNotifier.roleSaved(role, created);
             return role;
 
         } catch (Exception e) {
             if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
+            event.setCache(RoleStorageEvent.CACHE_ERROR);
             logger.error("Error saving role", e);
             throw new RuntimeException("Failed to save role", e);
+        } finally {
+            entityManager.close();
+            SlowQueryLog.exitRealm(previousRealm);
+            permit.close();
+            event.finish(rows);
+        }
+    }
+
+    /**
+     * Ubah kolom role dengan satu statement UPDATE ... RETURNING: tanpa SELECT
+     * sebelumnya, hanya kolom yang ada di changes, dan versi dinaikkan. Kalau
+     * expectedVersion diisi, baris hanya diubah selama versinya masih sama.
+     *
+     * @param expectedVersion versi yang terakhir dibaca; null untuk update tanpa cek versi
+     * @return role setelah diubah (termasuk versi baru)
+     * @throws OptimisticLockException kalau baris sudah diubah atau dihapus pihak lain
+     */
+    public CustomRoleEntity update(String realmId, String id, Long expectedVersion, RoleUpdate changes) {
+        if (changes.isEmpty()) {
+            throw new IllegalArgumentException("No role columns to update");
+        }
+        if (!isStoredId(id)) {
+            throw new OptimisticLockException("Role " + id + " was modified or deleted concurrently");
+        }
+        StringBuilder sql = new StringBuilder("UPDATE custom_roles SET ");
+        if (changes.isNameChanged()) {
+            sql.append("name = :name, ");
+        }
+        if (changes.isDescriptionChanged()) {
+            sql.append("description = CAST(:description AS text), ");
+        }
+        sql.append("updated_at = :now, version = version + 1 WHERE id = :id");
+        if (expectedVersion != null) {
+            sql.append(" AND version = :version");
+        }
+        sql.append(UPDATE_RETURNING);
+
+        EntityTransaction transaction = null;
+        pinnedToPrimary = true;
+        RoleQueryEvent event = new RoleQueryEvent();
+        event.start(realmId, "update");
+        RealmAdmission.Permit permit = admit(event, realmId, Workload.WRITE);
+        String previousRealm = SlowQueryLog.enterRealm(realmId);
+        int rows = 0;
+        EntityManager entityManager = databaseService.getEntityManagerFactory(Workload.WRITE).createEntityManager();
+        try {
+            transaction = entityManager.getTransaction();
+            transaction.begin();
+
+            Query query = entityManager.createNativeQuery(sql.toString(), CustomRoleEntity.class)
+                    .setParameter("now", LocalDateTime.now())
+                    .setParameter("id", id);
+            if (changes.isNameChanged()) {
+                query.setParameter("name", changes.getName());
+            }
+            if (changes.isDescriptionChanged()) {
+                query.setParameter("description", changes.getDescription());
+            }
+            if (expectedVersion != null) {
+                query.setParameter("version", expectedVersion);
+            }
+            List<?> updated = query.getResultList();
+            if (updated.isEmpty()) {
+                transaction.rollback();
+                throw new OptimisticLockException("Role " + id + " was modified or deleted concurrently");
+            }
+            transaction.commit();
+
+            CustomRoleEntity role = (CustomRoleEntity) updated.get(0);
+            rows = 1;
+            logger.infof("Updated role: %s in realm: %s (version %d)", role.getName(), role.getRealmId(),
+                    role.getVersion());
+            RoleChangeNotifier.roleSaved(role, false);
+            return role;
+
+        } catch (OptimisticLockException e) {
+            event.setCache(RoleStorageEvent.CACHE_ERROR);
+            logger.warnf("Concurrent update of role %s (expected version %s)", id, expectedVersion);
+            throw e;
+        } catch (Exception e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            event.setCache(RoleStorageEvent.CACHE_ERROR);
+            logger.error("Error updating role: " + id, e);
+            throw new RuntimeException("Failed to update role", e);
+        } finally {
+            entityManager.close();
+            SlowQueryLog.exitRealm(previousRealm);
+            permit.close();
+            event.finish(rows);
         }
     }
 
-    public boolean delete(String id) {
+    /**
+     * Insert atau update role berdasarkan (realm_id, client_id, name) dalam satu
+     * statement INSERT ... ON CONFLICT, tanpa find/merge terlebih dahulu dan
+     * aman terhadap create bersamaan. ID role diisi dengan ID baris di database.
+     * Butuh unique index DatabaseService.UPSERT_INDEX_NAME.
+     *
+     * @return true kalau baris baru di-insert, false kalau baris lama di-update
+     */
+    public boolean upsert(CustomRoleEntity role) {
         EntityTransaction transaction = null;
+        pinnedToPrimary = true;
+        RoleQueryEvent event = new RoleQueryEvent();
+        event.start(role.getRealmId(), "upsert");
+        RealmAdmission.Permit permit = admit(event, role.getRealmId(), Workload.WRITE);
+        String previousRealm = SlowQueryLog.enterRealm(role.getRealmId());
+        int rows = 0;
+        EntityManager entityManager = databaseService.getEntityManagerFactory(Workload.WRITE).createEntityManager();
+        try {
+            transaction = entityManager.getTransaction();
+            transaction.begin();
+
+            if (role.getId() == null) {
+                role.setId(RoleIds.newId());
+            }
+            LocalDateTime now = LocalDateTime.now();
+            // xmax = 0 hanya untuk tuple yang baru di-insert oleh statement ini
+            Object[] row = (Object[]) entityManager.createNativeQuery(UPSERT_SQL)
+                    .setParameter("id", role.getId())
+                    .setParameter("name", role.getName())
+                    .setParameter("description", role.getDescription())
+                    .setParameter("realmId", role.getRealmId())
+                    .setParameter("clientId", role.getClientId())
+                    .setParameter("now", now)
+                    .getSingleResult();
+            transaction.commit();
+
+            boolean inserted = (Boolean) row[1];
+            // Kolom uuid dikembalikan sebagai java.util.UUID
+            role.setId(row[0].toString());
+            role.setVersion(((Number) row[2]).longValue());
+            if (inserted) {
+                role.setCreatedAt(now);
+            }
+            role.setUpdatedAt(now);
+            rows = 1;
+
+            logger.infof("%s role: %s in realm: %s", inserted ? "Inserted" : "Updated",
+                    role.getName(), role.getRealmId());
+            RoleChangeNotifier.roleSaved(role, inserted);
+            return inserted;
+
+        } catch (Exception e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            event.setCache(RoleStorageEvent.CACHE_ERROR);
+            logger.error("Error upserting role", e);
+            throw new RuntimeException("Failed to upsert role", e);
+        } finally {
+            entityManager.close();
+            SlowQueryLog.exitRealm(previousRealm);
+            permit.close();
+            event.finish(rows);
+        }
+    }
+
+    /**
+     * @param realmId realm role untuk kuota dan tracing
+     */
+    public boolean delete(String realmId, String id) {
+        if (!isStoredId(id)) {
+            return false;
+        }
+        EntityTransaction transaction = null;
+        pinnedToPrimary = true;
+        RoleQueryEvent event = new RoleQueryEvent();
+        event.start(realmId, "delete");
+        RealmAdmission.Permit permit = admit(event, realmId, Workload.WRITE);
+        String previousRealm = SlowQueryLog.enterRealm(realmId);
+        int rows = 0;
+        EntityManager entityManager = databaseService.getEntityManagerFactory(Workload.WRITE).createEntityManager();
         try {
             transaction = entityManager.getTransaction();
             transaction.begin();
@@ -167,7 +866,9 @@ public class CustomRoleRepository {
                 entityManager.remove(role);
                 entityManager.flush();
                 transaction.commit();
+                rows = 1;
                 logger.infof("Deleted role: %s", role.getName());
+                RoleChangeNotifier.roleDeleted(role);
                 return true;
             }
 
@@ -180,8 +881,77 @@ public class CustomRoleRepository {
             if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
+            event.setCache(RoleStorageEvent.CACHE_ERROR);
             logger.error("Error deleting role: " + id, e);
             return false;
+        } finally {
+            entityManager.close();
+            SlowQueryLog.exitRealm(previousRealm);
+            permit.close();
+            event.finish(rows);
+        }
+    }
+
+    /**
+     * Hapus semua role realm (clientId null) atau satu client dengan DELETE
+     * per batch; setiap batch punya transaksi dan permit sendiri sehingga lock
+     * tidak dipegang lama untuk tenant besar. Cache di memory dan data stale
+     * dibuang sekali di akhir, juga kalau purge berhenti di tengah.
+     *
+     * @return jumlah baris yang dihapus
+     */
+    public long purge(String realmId, String clientId, int batchSize) {
+        pinnedToPrimary = true;
+        long total = 0;
+        try {
+            while (true) {
+                int rows = purgeBatch(realmId, clientId, batchSize);
+                total += rows;
+                if (rows < batchSize) {
+                    return total;
+                }
+                logger.debugf("Purged %d roles of realm %s so far", total, realmId);
+            }
+        } finally {
+            if (total > 0) {
+                // Termasuk StaleRoleStore semua DatabaseService, bukan hanya milik repository ini
+                RoleChangeNotifier.rolesPurged(realmId, clientId);
+            }
+        }
+    }
+
+    private int purgeBatch(String realmId, String clientId, int batchSize) {
+        EntityTransaction transaction = null;
+        RoleQueryEvent event = new RoleQueryEvent();
+        event.start(realmId, "purge");
+        RealmAdmission.Permit permit = admit(event, realmId, Workload.WRITE);
+        String previousRealm = SlowQueryLog.enterRealm(realmId);
+        int rows = 0;
+        EntityManager entityManager = databaseService.getEntityManagerFactory(Workload.WRITE).createEntityManager();
+        try {
+            transaction = entityManager.getTransaction();
+            transaction.begin();
+            Query query = entityManager.createNativeQuery(clientId != null ? PURGE_CLIENT_SQL : PURGE_REALM_SQL);
+            query.setParameter("realmId", realmId);
+            if (clientId != null) {
+                query.setParameter("clientId", clientId);
+            }
+            query.setParameter("limit", batchSize);
+            rows = query.executeUpdate();
+            transaction.commit();
+            return rows;
+        } catch (RuntimeException e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            event.setCache(RoleStorageEvent.CACHE_ERROR);
+            throw new RuntimeException("Failed to purge roles of realm " + realmId
+                    + (clientId != null ? " client " + clientId : ""), e);
+        } finally {
+            entityManager.close();
+            SlowQueryLog.exitRealm(previousRealm);
+            permit.close();
+            event.finish(rows);
         }
     }
 }
@@ -0,0 +1,20 @@
+package id.co.swamdia.repository;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+
+/**
+ * Dipanggil setelah write ke custom_roles berhasil di-commit.
+ * Entity yang diterima adalah salinan detached dan boleh disimpan.
+ */
+public interface RoleChangeListener {
+
+    void onRoleSaved(CustomRoleEntity role, boolean created);
+
+    void onRoleDeleted(CustomRoleEntity role);
+
+    /**
+     * Semua role satu realm (clientId null) atau satu client dihapus sekaligus,
+     * tanpa event per role
+     */
+    void onRolesPurged(String realmId, String clientId);
+}
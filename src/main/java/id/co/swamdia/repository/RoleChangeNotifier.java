@@ -0,0 +1,60 @@
+package id.co.swamdia.repository;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+
+import org.jboss.logging.Logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Meneruskan perubahan role dari repository ke cache/index di memory.
+ * Dibuat static karena cache dimiliki provider factory, sementara write juga
+ * datang dari event listener dan purge (dengan repository masing-masing).
+ */
+public final class RoleChangeNotifier {
+    private static final Logger logger = Logger.getLogger(RoleChangeNotifier.class);
+
+    private static final List<RoleChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private RoleChangeNotifier() {
+    }
+
+    public static void register(RoleChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void unregister(RoleChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    static void roleSaved(CustomRoleEntity role, boolean created) {
+        for (RoleChangeListener listener : listeners) {
+            try {
+                listener.onRoleSaved(role.copy(), created);
+            } catch (Exception e) {
+                logger.warn("Role change listener failed", e);
+            }
+        }
+    }
+
+    static void rolesPurged(String realmId, String clientId) {
+        for (RoleChangeListener listener : listeners) {
+            try {
+                listener.onRolesPurged(realmId, clientId);
+            } catch (Exception e) {
+                logger.warn("Role change listener failed", e);
+            }
+        }
+    }
+
+    static void roleDeleted(CustomRoleEntity role) {
+        for (RoleChangeListener listener : listeners) {
+            try {
+                listener.onRoleDeleted(role.copy());
+            } catch (Exception e) {
+                logger.warn("Role change listener failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package id.co.swamdia.repository;
+
+import id.co.swamdia.entity.RoleView;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deskripsi untuk satu halaman hasil listing. Dimuat sekaligus (satu query
+ * per 500 ID) saat getDescription() pertama kali dipanggil pada salah satu
+ * role di halaman tersebut; kalau tidak pernah diminta, tidak ada query.
+ */
+public class RoleDescriptionBatch {
+    private static final Logger logger = Logger.getLogger(RoleDescriptionBatch.class);
+
+    private final CustomRoleRepository repository;
+    private final String realmId;
+    private final List<String> ids = new ArrayList<>();
+    private volatile Map<String, String> descriptions;
+
+    public RoleDescriptionBatch(CustomRoleRepository repository, List<RoleView> views) {
+        this.repository = repository;
+        // Satu halaman listing selalu dari satu realm
+        this.realmId = views.isEmpty() ? null : views.get(0).getRealmId();
+        for (RoleView view : views) {
+            if (!view.isDescriptionLoaded()) {
+                ids.add(view.getId());
+            }
+        }
+    }
+
+    public String get(String id) {
+        Map<String, String> loaded = descriptions;
+        if (loaded == null) {
+            loaded = load();
+        }
+        return loaded.get(id);
+    }
+
+    private synchronized Map<String, String> load() {
+        if (descriptions == null) {
+            try {
+                descriptions = repository.findDescriptions(realmId, ids);
+                logger.debugf("Loaded descriptions for %d listed roles", ids.size());
+            } catch (RuntimeException e) {
+                // Deskripsi bukan data kritis: tampilkan kosong daripada gagal
+                logger.warnf("Failed to load role descriptions: %s", e.getMessage());
+                descriptions = Map.of();
+            }
+        }
+        return descriptions;
+    }
+}
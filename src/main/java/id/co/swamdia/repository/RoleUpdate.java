@@ -0,0 +1,45 @@
+package id.co.swamdia.repository;
+
+/**
+ * Kolom role yang diubah. Hanya kolom yang di-set ikut di UPDATE
+ * (lihat CustomRoleRepository.update); deskripsi boleh di-set ke null.
+ */
+public final class RoleUpdate {
+
+    private String name;
+    private boolean nameChanged;
+    private String description;
+    private boolean descriptionChanged;
+
+    public RoleUpdate setName(String name) {
+        this.name = name;
+        this.nameChanged = true;
+        return this;
+    }
+
+    public RoleUpdate setDescription(String description) {
+        this.description = description;
+        this.descriptionChanged = true;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isNameChanged() {
+        return nameChanged;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public boolean isDescriptionChanged() {
+        return descriptionChanged;
+    }
+
+    public boolean isEmpty() {
+        return !nameChanged && !descriptionChanged;
+    }
+}
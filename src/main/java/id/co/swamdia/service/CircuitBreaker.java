@@ -0,0 +1,105 @@
+package id.co.swamdia.service;
+
+import org.jboss.logging.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker sederhana untuk akses database.
+ * CLOSED -> OPEN setelah sejumlah kegagalan berturut-turut, OPEN -> HALF_OPEN
+ * setelah openMillis, lalu satu request percobaan menentukan CLOSED atau OPEN lagi.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    private final AtomicLong rejectedCalls = new AtomicLong();
+    private final AtomicLong transitions = new AtomicLong();
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * True kalau request boleh ke database. Saat HALF_OPEN hanya satu
+     * request percobaan yang diizinkan.
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        rejectedCalls.incrementAndGet();
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            transitionTo(State.CLOSED);
+        }
+    }
+
+    /**
+     * Request yang diizinkan tapi tidak sampai ke database (mis. ditolak kuota
+     * realm); slot percobaan HALF_OPEN dilepas tanpa mengubah state
+     */
+    public synchronized void recordSkipped() {
+        probeInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            openedAt = System.currentTimeMillis();
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State newState) {
+        State oldState = state;
+        state = newState;
+        transitions.incrementAndGet();
+        if (newState == State.OPEN) {
+            logger.warnf("Circuit breaker '%s' %s -> %s after %d consecutive failures (rejected so far: %d)",
+                    name, oldState, newState, consecutiveFailures, rejectedCalls.get());
+        } else {
+            logger.infof("Circuit breaker '%s' %s -> %s (rejected so far: %d)",
+                    name, oldState, newState, rejectedCalls.get());
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+
+    public long getTransitions() {
+        return transitions.get();
+    }
+}
@@ -4,6 +4,8 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
 import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.jfr.JdbcTimingListener;
+import id.co.swamdia.repository.RoleChangeNotifier;
 
 import org.jboss.logging.Logger;
 import org.hibernate.boot.MetadataSources;
@@ -14,47 +16,180 @@ import org.hibernate.SessionFactory;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
 
 /**
  * Database service using JPA with Hibernate
  * Uses Hibernate SessionFactory wrapped as EntityManagerFactory for JPA
  * compatibility
+ * <p>
+ * Connection dibagi ke lane per Workload (LOOKUP, SCAN, WRITE), masing-masing
+ * dengan pool Hikari dan SessionFactory sendiri, sehingga scan admin yang
+ * banyak tidak membuat lookup di jalur token menunggu connection.
  */
 public class DatabaseService {
     private static final Logger logger = Logger.getLogger(DatabaseService.class);
 
-    private HikariDataSource dataSource;
-    private SessionFactory sessionFactory;
-    private EntityManagerFactory entityManagerFactory;
+    private static final String PROPERTY_PREFIX = "quarkus.datasource.user-store.";
+    public static final int DEFAULT_MAXIMUM_POOL_SIZE = 10;
+
+    // Timeout (ms): antrian pool, batas atas semua statement, dan per jenis operasi
+    private final long connectionTimeoutMillis = Long.getLong(PROPERTY_PREFIX + "connection-timeout-ms", 5000L);
+    private final long statementTimeoutMillis = Long.getLong(PROPERTY_PREFIX + "statement-timeout-ms", 10000L);
+    private final int lookupTimeoutMillis = Integer.getInteger(PROPERTY_PREFIX + "lookup-timeout-ms", 2000);
+    private final int searchTimeoutMillis = Integer.getInteger(PROPERTY_PREFIX + "search-timeout-ms", 5000);
+
+    // Prefix nama pool Hikari (dan nama thread) milik database ini
+    private final String poolName;
+    // Breaker per lane: scan admin yang lambat tidak membuat lookup di jalur token ditolak
+    private final Map<Workload, CircuitBreaker> circuitBreakers = new EnumMap<>(Workload.class);
+    private final RealmAdmission realmAdmission;
+    private final StaleRoleStore staleRoleStore = new StaleRoleStore(
+            Integer.getInteger(PROPERTY_PREFIX + "stale.max-entries", 10000),
+            Integer.getInteger(PROPERTY_PREFIX + "stale.max-list-size", 1000));
+
+    // Unique index yang juga berlaku untuk realm roles (client_id NULL); target ON CONFLICT upsert
+    public static final String UPSERT_INDEX_NAME = "custom_roles_realm_client_name_uidx";
+    private static final String UPSERT_INDEX_DDL = "CREATE UNIQUE INDEX IF NOT EXISTS " + UPSERT_INDEX_NAME
+            + " ON custom_roles (realm_id, (COALESCE(client_id, '')), name)";
+
+    private final Map<Workload, Lane> lanes = new EnumMap<>(Workload.class);
+    private volatile boolean upsertSupported;
+
+    // Kolom id bertipe uuid (16 byte) alih-alih varchar(36); opsional karena migrasi menulis ulang tabel
+    private static final boolean nativeUuidRequested = Boolean.getBoolean(PROPERTY_PREFIX + "native-uuid");
+    private static final String ID_TYPE_QUERY = "SELECT data_type FROM information_schema.columns "
+            + "WHERE table_schema = current_schema() AND table_name = 'custom_roles' AND column_name = 'id'";
+    private static final String NON_UUID_ID_QUERY = "SELECT count(*) FROM custom_roles "
+            + "WHERE id !~ '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$'";
+    private static final String UUID_MIGRATION_DDL = "ALTER TABLE custom_roles ALTER COLUMN id TYPE uuid USING id::uuid";
+    // Node lain yang start bersamaan menunggu migrasi selesai lalu melihat kolom sudah uuid
+    private static final long UUID_MIGRATION_LOCK = 0x726f6c6575756964L;
+    private volatile boolean nativeUuid;
+
+    // Read replica (opsional), hanya lane LOOKUP dan SCAN
+    private static final String REPLICA_LAG_QUERY = "SELECT COALESCE(CASE "
+            + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())) * 1000 END, 0)";
+
+    private final Map<Workload, Lane> replicaLanes = new EnumMap<>(Workload.class);
+    private ScheduledExecutorService replicaLagMonitor;
+    private long maxReplicaLagMillis;
+    private volatile long replicaLagMillis = Long.MAX_VALUE;
+    private volatile boolean replicaHealthy;
 
     public DatabaseService(String jdbcUrl, String username, String password, String driverClass) {
-        initializeDataSource(jdbcUrl, username, password, driverClass);
+        this(jdbcUrl, username, password, driverClass, DEFAULT_MAXIMUM_POOL_SIZE, null);
+    }
+
+    /**
+     * @param maximumPoolSize budget connection untuk database ini, dibagi ke semua lane
+     * @param poolName prefix nama pool Hikari (untuk metrics/log), null untuk "role-store"
+     */
+    public DatabaseService(String jdbcUrl, String username, String password, String driverClass,
+            int maximumPoolSize, String poolName) {
+        this.poolName = poolName != null ? poolName : "role-store";
+        for (Workload workload : Workload.values()) {
+            circuitBreakers.put(workload, new CircuitBreaker(
+                    this.poolName + "-" + workload.name().toLowerCase(Locale.ROOT),
+                    Integer.getInteger(PROPERTY_PREFIX + "breaker.failure-threshold", 5),
+                    Long.getLong(PROPERTY_PREFIX + "breaker.open-ms", 10000L)));
+        }
+        this.realmAdmission = new RealmAdmission(this.poolName, maximumPoolSize, connectionTimeoutMillis);
+        try {
+            for (Workload workload : Workload.values()) {
+                LaneSettings settings = laneSettings(workload, maximumPoolSize);
+                lanes.put(workload, new Lane(workload, createPool(jdbcUrl, username, password, driverClass,
+                        this.poolName + "-" + settings.name, settings, false)));
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
         initializeHibernate();
+        RoleChangeNotifier.register(staleRoleStore);
     }
 
-    private void initializeDataSource(String jdbcUrl, String username, String password, String driverClass) {
+    public String getPoolName() {
+        return poolName;
+    }
+
+    /**
+     * Ukuran dan timeout satu lane. Default: budget dibagi kira-kira 50% lookup,
+     * 30% scan, 20% write (minimal satu connection per lane); statement timeout
+     * lookup mengikuti lookup-timeout-ms, lane lain statement-timeout-ms.
+     */
+    private LaneSettings laneSettings(Workload workload, int budget) {
+        int lookupSize = Math.max(1, Math.round(budget * 0.5f));
+        int writeSize = Math.max(1, Math.round(budget * 0.2f));
+        int defaultSize;
+        long defaultStatementTimeout;
+        switch (workload) {
+            case LOOKUP:
+                defaultSize = lookupSize;
+                defaultStatementTimeout = lookupTimeoutMillis;
+                break;
+            case WRITE:
+                defaultSize = writeSize;
+                defaultStatementTimeout = statementTimeoutMillis;
+                break;
+            default:
+                defaultSize = Math.max(1, budget - lookupSize - writeSize);
+                defaultStatementTimeout = statementTimeoutMillis;
+                break;
+        }
+        String name = workload.name().toLowerCase(Locale.ROOT);
+        String lanePrefix = PROPERTY_PREFIX + "lane." + name + ".";
+        return new LaneSettings(name,
+                Math.max(1, Integer.getInteger(lanePrefix + "pool-size", defaultSize)),
+                Long.getLong(lanePrefix + "connection-timeout-ms", connectionTimeoutMillis),
+                Long.getLong(lanePrefix + "statement-timeout-ms", defaultStatementTimeout));
+    }
+
+    private static HikariDataSource createPool(String jdbcUrl, String username, String password,
+            String driverClass, String poolName, LaneSettings settings, boolean readOnly) {
         HikariConfig config = new HikariConfig();
         config.setJdbcUrl(jdbcUrl);
         config.setUsername(username);
         config.setPassword(password);
         config.setDriverClassName(driverClass);
+        config.setPoolName(poolName);
 
         // Connection pool settings
-        config.setMaximumPoolSize(10);
-        config.setMinimumIdle(2);
-        config.setConnectionTimeout(30000);
+        config.setMaximumPoolSize(settings.poolSize);
+        config.setMinimumIdle(Math.min(2, settings.poolSize));
+        config.setConnectionTimeout(settings.connectionTimeoutMillis);
         config.setIdleTimeout(300000);
         config.setMaxLifetime(1800000);
         config.setAutoCommit(false);
+        config.setReadOnly(readOnly);
 
         // PostgreSQL specific settings
+        config.addDataSourceProperty("options", "-c statement_timeout=" + settings.statementTimeoutMillis);
         config.addDataSourceProperty("cachePrepStmts", "true");
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        if (nativeUuidRequested) {
+            // Parameter String dikirim tanpa tipe, jadi PostgreSQL bisa membacanya sebagai uuid
+            config.addDataSourceProperty("stringtype", "unspecified");
+        }
 
-        this.dataSource = new HikariDataSource(config);
-        logger.info("PostgreSQL database connection pool initialized");
+        HikariDataSource dataSource = new HikariDataSource(config);
+        logger.infof("PostgreSQL connection pool %s initialized (size: %d, connection timeout: %d ms, "
+                + "statement timeout: %d ms)", poolName, settings.poolSize, settings.connectionTimeoutMillis,
+                settings.statementTimeoutMillis);
+        return dataSource;
     }
 
     /**
@@ -64,55 +199,364 @@ public class DatabaseService {
      */
     private void initializeHibernate() {
         try {
-            Properties settings = new Properties();
-            settings.put(AvailableSettings.DATASOURCE, dataSource);
-            settings.put(AvailableSettings.DIALECT, "org.hibernate.dialect.PostgreSQLDialect");
-            settings.put(AvailableSettings.SHOW_SQL, "false");
-            settings.put(AvailableSettings.FORMAT_SQL, "true");
-            settings.put(AvailableSettings.HBM2DDL_AUTO, "update");
-            settings.put(AvailableSettings.CURRENT_SESSION_CONTEXT_CLASS, "thread");
-            settings.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, "false");
-            settings.put(AvailableSettings.USE_QUERY_CACHE, "false");
-
-            StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
-                    .applySettings(settings)
-                    .build();
-
-            MetadataSources metadataSources = new MetadataSources(serviceRegistry);
-            metadataSources.addAnnotatedClass(CustomRoleEntity.class);
-
-            this.sessionFactory = metadataSources.buildMetadata()
-                    .buildSessionFactory();
-
-            // Wrap SessionFactory as EntityManagerFactory for JPA compatibility
-            // Hibernate 6 SessionFactory can be used as EntityManagerFactory
-            this.entityManagerFactory = new EntityManagerFactoryWrapper(sessionFactory);
+            // Schema di-update sekali lewat lane WRITE; EXPLAIN slow query memakai lane SCAN
+            DataSource explainSource = lanes.get(Workload.SCAN).dataSource;
+            for (Lane lane : lanes.values()) {
+                lane.open(buildSessionFactory(lane.dataSource, explainSource,
+                        lane.workload == Workload.WRITE ? "update" : "none"));
+            }
 
             logger.info("Hibernate EntityManagerFactory initialized for PostgreSQL");
+            if (nativeUuidRequested) {
+                migrateIdsToUuid();
+            }
+            createUpsertIndex();
 
         } catch (Exception e) {
             logger.error("Failed to initialize Hibernate with PostgreSQL", e);
+            close();
             throw new RuntimeException("PostgreSQL database initialization failed", e);
         }
     }
 
-    public EntityManagerFactory getEntityManagerFactory() {
-        return entityManagerFactory;
+    /**
+     * Buat unique index untuk upsert (tabel sudah dibuat hbm2ddl). Kalau gagal,
+     * mis. karena data duplikat yang sudah ada, upsert tidak dipakai.
+     */
+    private void createUpsertIndex() {
+        try (Connection connection = lanes.get(Workload.WRITE).dataSource.getConnection();
+                Statement statement = connection.createStatement()) {
+            statement.execute(UPSERT_INDEX_DDL);
+            connection.commit();
+            upsertSupported = true;
+            logger.debugf("Unique index %s ready for upserts", UPSERT_INDEX_NAME);
+        } catch (Exception e) {
+            logger.warnf(e, "Could not create unique index %s, upserts disabled", UPSERT_INDEX_NAME);
+        }
+    }
+
+    /**
+     * Ubah kolom id ke tipe uuid kalau belum. Semua ID harus berbentuk UUID
+     * kanonik (huruf kecil, supaya StorageId yang sudah dipakai Keycloak tidak
+     * berubah); kalau ada yang tidak, kolom dibiarkan varchar.
+     * ALTER menulis ulang tabel dan index dengan lock eksklusif, jadi untuk
+     * tabel besar jalankan saat maintenance.
+     */
+    private void migrateIdsToUuid() {
+        try (Connection connection = lanes.get(Workload.WRITE).dataSource.getConnection();
+                Statement statement = connection.createStatement()) {
+            try {
+                statement.execute("SELECT pg_advisory_xact_lock(" + UUID_MIGRATION_LOCK + ")");
+                String type = queryString(statement, ID_TYPE_QUERY);
+                if ("uuid".equals(type)) {
+                    nativeUuid = true;
+                    connection.rollback();
+                    logger.debug("custom_roles.id already uses the uuid type");
+                    return;
+                }
+                long invalid = Long.parseLong(queryString(statement, NON_UUID_ID_QUERY));
+                if (invalid > 0) {
+                    connection.rollback();
+                    logger.warnf("Not migrating custom_roles.id to uuid: %d IDs are not canonical UUIDs", invalid);
+                    return;
+                }
+                long start = System.nanoTime();
+                long indexBytes = Long.parseLong(queryString(statement, "SELECT pg_indexes_size('custom_roles')"));
+                statement.execute(UUID_MIGRATION_DDL);
+                long migratedBytes = Long.parseLong(queryString(statement, "SELECT pg_indexes_size('custom_roles')"));
+                connection.commit();
+                nativeUuid = true;
+                logger.infof("Migrated custom_roles.id to uuid in %d ms (index size %d kB -> %d kB)",
+                        (System.nanoTime() - start) / 1_000_000, indexBytes / 1024, migratedBytes / 1024);
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (Exception e) {
+            logger.warnf(e, "Could not migrate custom_roles.id to uuid, keeping varchar IDs");
+        }
     }
 
-    public void close() {
-        if (sessionFactory != null && sessionFactory.isOpen()) {
-            sessionFactory.close();
+    private static String queryString(Statement statement, String sql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        }
+    }
+
+    private static SessionFactory buildSessionFactory(HikariDataSource dataSource, DataSource explainSource,
+            String hbm2ddlAuto) {
+        Properties settings = new Properties();
+        // Statement lambat dicatat ke SlowQueryLog; EXPLAIN memakai pool tanpa proxy
+        settings.put(AvailableSettings.DATASOURCE,
+                SlowQueryLog.isEnabled() ? new SlowQueryDataSource(dataSource, explainSource) : dataSource);
+        settings.put(AvailableSettings.DIALECT, "org.hibernate.dialect.PostgreSQLDialect");
+        settings.put(AvailableSettings.SHOW_SQL, "false");
+        settings.put(AvailableSettings.FORMAT_SQL, "true");
+        settings.put(AvailableSettings.HBM2DDL_AUTO, hbm2ddlAuto);
+        settings.put(AvailableSettings.CURRENT_SESSION_CONTEXT_CLASS, "thread");
+        // Connection diambil saat statement pertama dan dikembalikan ke pool setelah commit/rollback
+        settings.put(AvailableSettings.CONNECTION_HANDLING, "DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION");
+        settings.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, "false");
+        settings.put(AvailableSettings.USE_QUERY_CACHE, "false");
+        // Waktu tunggu pool dan waktu SQL untuk event JFR (hanya tercatat kalau event aktif)
+        settings.put(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, JdbcTimingListener.class.getName());
+
+        StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
+                .applySettings(settings)
+                .build();
+
+        MetadataSources metadataSources = new MetadataSources(serviceRegistry);
+        metadataSources.addAnnotatedClass(CustomRoleEntity.class);
+
+        return metadataSources.buildMetadata()
+                .buildSessionFactory();
+    }
+
+    /**
+     * EntityManagerFactory lane primary untuk workload ini
+     */
+    public EntityManagerFactory getEntityManagerFactory(Workload workload) {
+        return lanes.get(workload).entityManagerFactory;
+    }
+
+    /**
+     * Aktifkan pool read-only ke replica (lane LOOKUP dan SCAN, ukuran dan
+     * timeout sama dengan primary). Lag replikasi dicek secara berkala; selama
+     * lag melebihi maxLagMillis (atau replica tidak bisa dihubungi) pembacaan
+     * otomatis kembali ke primary.
+     */
+    public void enableReadReplica(String jdbcUrl, String username, String password, String driverClass,
+            long maxLagMillis, long checkIntervalMillis) {
+        Map<Workload, Lane> opened = new EnumMap<>(Workload.class);
+        try {
+            DataSource explainSource = null;
+            for (Workload workload : new Workload[] { Workload.SCAN, Workload.LOOKUP }) {
+                LaneSettings settings = laneSettings(workload, getMaximumPoolSize());
+                Lane lane = new Lane(workload, createPool(jdbcUrl, username, password, driverClass,
+                        poolName + "-replica-" + settings.name, settings, true));
+                opened.put(workload, lane);
+                if (explainSource == null) {
+                    explainSource = lane.dataSource;
+                }
+                lane.open(buildSessionFactory(lane.dataSource, explainSource, "none"));
+            }
+        } catch (RuntimeException e) {
+            opened.values().forEach(Lane::close);
+            throw e;
+        }
+        this.replicaLanes.putAll(opened);
+        this.maxReplicaLagMillis = maxLagMillis;
+
+        this.replicaLagMonitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, poolName + "-replica-lag");
+            thread.setDaemon(true);
+            return thread;
+        });
+        replicaLagMonitor.scheduleWithFixedDelay(this::checkReplicaLag, 0, checkIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        logger.infof("Read replica pool %s-replica initialized (max lag: %d ms)", poolName, maxLagMillis);
+    }
+
+    private void checkReplicaLag() {
+        try (Connection connection = replicaLanes.get(Workload.SCAN).dataSource.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(REPLICA_LAG_QUERY)) {
+            long lag = resultSet.next() ? (long) resultSet.getDouble(1) : Long.MAX_VALUE;
+            boolean healthy = lag <= maxReplicaLagMillis;
+            if (healthy != replicaHealthy) {
+                logger.infof("Read replica %s (lag: %d ms, threshold: %d ms)",
+                        healthy ? "available" : "lagging, routing reads to primary", lag, maxReplicaLagMillis);
+            }
+            replicaLagMillis = lag;
+            replicaHealthy = healthy;
+        } catch (Exception e) {
+            if (replicaHealthy) {
+                logger.warn("Read replica unreachable, routing reads to primary", e);
+            }
+            replicaLagMillis = Long.MAX_VALUE;
+            replicaHealthy = false;
+        }
+    }
+
+    /**
+     * True kalau replica terkonfigurasi dan lag-nya masih di bawah threshold
+     */
+    public boolean isReplicaAvailable() {
+        return !replicaLanes.isEmpty() && replicaHealthy;
+    }
+
+    /**
+     * DataSource lane primary untuk operasi JDBC langsung (mis. export di lane SCAN)
+     */
+    public DataSource getDataSource(Workload workload) {
+        return lanes.get(workload).dataSource;
+    }
+
+    /**
+     * True kalau unique index upsert tersedia (lihat CustomRoleRepository.upsert)
+     */
+    public boolean isUpsertSupported() {
+        return upsertSupported;
+    }
+
+    /**
+     * True kalau kolom id bertipe uuid; ID yang bukan UUID pasti tidak ada
+     * dan tidak boleh dikirim ke database
+     */
+    public boolean isNativeUuid() {
+        return nativeUuid;
+    }
+
+    /**
+     * Jumlah connection semua lane primary
+     */
+    public int getMaximumPoolSize() {
+        int size = 0;
+        for (Lane lane : lanes.values()) {
+            size += lane.dataSource.getMaximumPoolSize();
         }
-        if (entityManagerFactory != null && entityManagerFactory.isOpen()) {
-            entityManagerFactory.close();
+        return size;
+    }
+
+    /**
+     * Jumlah connection satu lane primary
+     */
+    public int getMaximumPoolSize(Workload workload) {
+        return lanes.get(workload).dataSource.getMaximumPoolSize();
+    }
+
+    public CircuitBreaker getCircuitBreaker(Workload workload) {
+        return circuitBreakers.get(workload);
+    }
+
+    /**
+     * Kuota konkurensi per realm untuk pool ini
+     */
+    public RealmAdmission getRealmAdmission() {
+        return realmAdmission;
+    }
+
+    public StaleRoleStore getStaleRoleStore() {
+        return staleRoleStore;
+    }
+
+    public int getLookupTimeoutMillis() {
+        return lookupTimeoutMillis;
+    }
+
+    public int getSearchTimeoutMillis() {
+        return searchTimeoutMillis;
+    }
+
+    public long getReplicaLagMillis() {
+        return replicaLagMillis;
+    }
+
+    /**
+     * EntityManagerFactory untuk pembacaan: lane replica kalau sehat, selain
+     * itu lane primary. WRITE selalu ke primary.
+     */
+    public EntityManagerFactory getReadEntityManagerFactory(Workload workload) {
+        Lane replica = replicaLanes.get(workload);
+        return replica != null && replicaHealthy ? replica.entityManagerFactory : getEntityManagerFactory(workload);
+    }
+
+    /**
+     * Tutup setelah connection yang sedang dipakai dikembalikan: connection idle
+     * langsung dibuang, lalu tunggu sampai tidak ada connection aktif (paling
+     * lama drainTimeoutMillis) sebelum close() biasa.
+     */
+    public void closeGracefully(long drainTimeoutMillis) {
+        long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+        try {
+            for (Lane lane : lanes.values()) {
+                lane.dataSource.getHikariPoolMXBean().softEvictConnections();
+            }
+            for (Lane lane : replicaLanes.values()) {
+                lane.dataSource.getHikariPoolMXBean().softEvictConnections();
+            }
+            while (activeConnections() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            if (activeConnections() > 0) {
+                logger.warnf("Closing database pool with %d connections still in use after %d ms",
+                        activeConnections(), drainTimeoutMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    private int activeConnections() {
+        int active = 0;
+        for (Lane lane : lanes.values()) {
+            active += lane.dataSource.getHikariPoolMXBean().getActiveConnections();
+        }
+        for (Lane lane : replicaLanes.values()) {
+            active += lane.dataSource.getHikariPoolMXBean().getActiveConnections();
+        }
+        return active;
+    }
+
+    public void close() {
+        RoleChangeNotifier.unregister(staleRoleStore);
+        if (realmAdmission != null) {
+            realmAdmission.close();
         }
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
+        if (replicaLagMonitor != null) {
+            replicaLagMonitor.shutdownNow();
         }
+        replicaLanes.values().forEach(Lane::close);
+        lanes.values().forEach(Lane::close);
         logger.info("PostgreSQL database connections closed");
     }
 
+    private static final class LaneSettings {
+        private final String name;
+        private final int poolSize;
+        private final long connectionTimeoutMillis;
+        private final long statementTimeoutMillis;
+
+        private LaneSettings(String name, int poolSize, long connectionTimeoutMillis, long statementTimeoutMillis) {
+            this.name = name;
+            this.poolSize = poolSize;
+            this.connectionTimeoutMillis = connectionTimeoutMillis;
+            this.statementTimeoutMillis = statementTimeoutMillis;
+        }
+    }
+
+    /**
+     * Pool Hikari satu workload beserta SessionFactory-nya
+     */
+    private static final class Lane {
+        private final Workload workload;
+        private final HikariDataSource dataSource;
+        private SessionFactory sessionFactory;
+        private EntityManagerFactory entityManagerFactory;
+
+        private Lane(Workload workload, HikariDataSource dataSource) {
+            this.workload = workload;
+            this.dataSource = dataSource;
+        }
+
+        private void open(SessionFactory sessionFactory) {
+            this.sessionFactory = sessionFactory;
+            // Wrap SessionFactory as EntityManagerFactory for JPA compatibility
+            this.entityManagerFactory = new EntityManagerFactoryWrapper(sessionFactory);
+        }
+
+        private void close() {
+            if (sessionFactory != null && sessionFactory.isOpen()) {
+                sessionFactory.close();
+            }
+            if (!dataSource.isClosed()) {
+                dataSource.close();
+            }
+        }
+    }
+
     /**
      * Simple wrapper to adapt Hibernate SessionFactory to EntityManagerFactory
      * In Hibernate 6, SessionFactory can be used directly as EntityManagerFactory
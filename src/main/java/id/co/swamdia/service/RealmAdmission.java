@@ -0,0 +1,246 @@
+package id.co.swamdia.service;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Kuota konkurensi per realm untuk satu pool. Setiap realm punya semaphore
+ * fair (FIFO) dengan sejumlah permit; operasi scan memakai lebih banyak permit
+ * daripada lookup dan write. Dengan begitu satu realm yang melakukan listing
+ * besar atau bulk sync tidak bisa memakai semua connection dan membuat realm
+ * lain menunggu.
+ * <p>
+ * Operasi tanpa realm (mis. findDistinctRealmIds) tidak dibatasi. Operasi
+ * bersarang di thread yang sudah memegang permit tidak mengambil permit lagi.
+ */
+public class RealmAdmission {
+    private static final Logger logger = Logger.getLogger(RealmAdmission.class);
+
+    private static final String PROPERTY_PREFIX = "quarkus.datasource.user-store.admission.";
+    private static final int REJECTION_LOG_INTERVAL = 100;
+
+    // Semua instance yang masih hidup, untuk endpoint admin (lihat RoleStoreResourceProvider)
+    private static final Set<RealmAdmission> instances = new CopyOnWriteArraySet<>();
+    // Thread yang sedang memegang permit (dari pool manapun)
+    private static final ThreadLocal<Permit> held = new ThreadLocal<>();
+
+    private final String poolName;
+    private final int defaultPermits;
+    private final int scanWeight;
+    private final long queueTimeoutMillis;
+    private final int maxQueue;
+    private final Map<String, Quota> quotas = new ConcurrentHashMap<>();
+
+    /**
+     * @param poolSize ukuran pool; default permit per realm = 3/4 pool
+     */
+    public RealmAdmission(String poolName, int poolSize, long defaultQueueTimeoutMillis) {
+        this.poolName = poolName;
+        this.defaultPermits = Integer.getInteger(PROPERTY_PREFIX + "realm-permits", Math.max(1, poolSize * 3 / 4));
+        this.scanWeight = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "scan-weight", 2));
+        this.queueTimeoutMillis = Long.getLong(PROPERTY_PREFIX + "queue-timeout-ms", defaultQueueTimeoutMillis);
+        this.maxQueue = Integer.getInteger(PROPERTY_PREFIX + "max-queue", 50);
+        if (defaultPermits > 0) {
+            instances.add(this);
+            logger.infof("Realm admission for pool %s: %d permits per realm (scan weight %d, queue timeout %d ms)",
+                    poolName, defaultPermits, scanWeight, queueTimeoutMillis);
+        }
+    }
+
+    /**
+     * Ambil permit untuk realm; tunggu (FIFO) paling lama queue-timeout-ms.
+     * Selalu tutup Permit yang dikembalikan (try-with-resources).
+     *
+     * @throws RealmAdmissionException kalau antrian realm penuh atau waktu tunggu habis
+     */
+    public Permit acquire(String realmId, Workload workload) {
+        if (realmId == null || defaultPermits <= 0 || held.get() != null) {
+            return Permit.NONE;
+        }
+        Quota quota = quotas.computeIfAbsent(realmId, this::newQuota);
+        int weight = Math.min(workload == Workload.SCAN ? scanWeight : 1, quota.permits);
+
+        if (quota.semaphore.getQueueLength() >= maxQueue) {
+            throw quota.reject(realmId, workload, "queue full");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = quota.semaphore.tryAcquire(weight, queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw quota.reject(realmId, workload, "interrupted");
+        }
+        long waitNanos = System.nanoTime() - start;
+        quota.totalWaitNanos.add(waitNanos);
+        quota.maxWaitNanos.accumulate(waitNanos);
+        if (!acquired) {
+            throw quota.reject(realmId, workload, "timed out after " + queueTimeoutMillis + " ms");
+        }
+        quota.admitted.increment();
+        Permit permit = new Permit(quota.semaphore, weight, waitNanos);
+        held.set(permit);
+        return permit;
+    }
+
+    private Quota newQuota(String realmId) {
+        int permits = Integer.getInteger(PROPERTY_PREFIX + "realm-permits." + realmId, defaultPermits);
+        return new Quota(Math.max(1, permits));
+    }
+
+    /**
+     * Statistik per realm untuk pool ini
+     *
+     * @param realmId null untuk semua realm
+     */
+    public List<Stats> getStats(String realmId) {
+        List<Stats> result = new ArrayList<>();
+        quotas.forEach((id, quota) -> {
+            if (realmId == null || realmId.equals(id)) {
+                result.add(new Stats(poolName, id, quota));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Statistik dari semua pool yang masih terbuka
+     */
+    public static List<Stats> getAllStats(String realmId) {
+        List<Stats> result = new ArrayList<>();
+        for (RealmAdmission admission : instances) {
+            result.addAll(admission.getStats(realmId));
+        }
+        return result;
+    }
+
+    public void close() {
+        instances.remove(this);
+    }
+
+    private static final class Quota {
+        final int permits;
+        final Semaphore semaphore;
+        final LongAdder admitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder totalWaitNanos = new LongAdder();
+        final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+        Quota(int permits) {
+            this.permits = permits;
+            this.semaphore = new Semaphore(permits, true);
+        }
+
+        RealmAdmissionException reject(String realmId, Workload workload, String reason) {
+            rejected.increment();
+            long total = rejected.sum();
+            if (total % REJECTION_LOG_INTERVAL == 1) {
+                logger.warnf("Realm %s exceeded its database quota (%d permits), %s rejected: %s "
+                        + "(rejected so far: %d)", realmId, permits, workload, reason, total);
+            }
+            return new RealmAdmissionException("Database quota exceeded for realm " + realmId + ": " + reason);
+        }
+    }
+
+    /**
+     * Permit yang sedang dipegang; close() mengembalikannya ke semaphore realm
+     */
+    public static final class Permit implements AutoCloseable {
+        static final Permit NONE = new Permit(null, 0, 0);
+
+        private final Semaphore semaphore;
+        private final int weight;
+        private final long waitNanos;
+
+        private Permit(Semaphore semaphore, int weight, long waitNanos) {
+            this.semaphore = semaphore;
+            this.weight = weight;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * Lama menunggu di antrian realm (0 kalau tidak dibatasi)
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        @Override
+        public void close() {
+            if (semaphore != null) {
+                held.remove();
+                semaphore.release(weight);
+            }
+        }
+    }
+
+    public static final class Stats {
+        private final String pool;
+        private final String realm;
+        private final int permits;
+        private final int inUse;
+        private final int queued;
+        private final long admitted;
+        private final long rejected;
+        private final double totalWaitMillis;
+        private final double maxWaitMillis;
+
+        private Stats(String pool, String realm, Quota quota) {
+            this.pool = pool;
+            this.realm = realm;
+            this.permits = quota.permits;
+            this.inUse = quota.permits - quota.semaphore.availablePermits();
+            this.queued = quota.semaphore.getQueueLength();
+            this.admitted = quota.admitted.sum();
+            this.rejected = quota.rejected.sum();
+            this.totalWaitMillis = quota.totalWaitNanos.sum() / 1_000_000.0;
+            this.maxWaitMillis = quota.maxWaitNanos.get() / 1_000_000.0;
+        }
+
+        public String getPool() {
+            return pool;
+        }
+
+        public String getRealm() {
+            return realm;
+        }
+
+        public int getPermits() {
+            return permits;
+        }
+
+        public int getInUse() {
+            return inUse;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getAdmitted() {
+            return admitted;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public double getTotalWaitMillis() {
+            return totalWaitMillis;
+        }
+
+        public double getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package id.co.swamdia.service;
+
+/**
+ * Operasi ditolak karena kuota konkurensi realm habis (lihat RealmAdmission).
+ * Bukan kegagalan database, jadi tidak dihitung oleh circuit breaker.
+ */
+public class RealmAdmissionException extends RuntimeException {
+
+    public RealmAdmissionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,204 @@
+package id.co.swamdia.service;
+
+import org.jboss.logging.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Memetakan realm ID ke salah satu shard database.
+ * Realm yang ada di static map selalu ke shard tersebut, sisanya ke shard
+ * default (strategy "static") atau lewat consistent hashing (strategy "hash").
+ * Setiap shard punya DatabaseService sendiri (pool + SessionFactory sendiri).
+ */
+public class ShardRouter {
+    private static final Logger logger = Logger.getLogger(ShardRouter.class);
+
+    public static final String DEFAULT_SHARD = "default";
+
+    private static final String PROPERTY_PREFIX = "quarkus.datasource.user-store.";
+    private static final String STRATEGY_HASH = "hash";
+    private static final int VIRTUAL_NODES = 128;
+
+    private final Map<String, DatabaseService> shards;
+    private final Map<String, String> staticMap;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final boolean hashUnmapped;
+
+    public ShardRouter(Map<String, DatabaseService> shards, Map<String, String> staticMap, boolean hashUnmapped) {
+        if (shards.isEmpty() || !shards.containsKey(DEFAULT_SHARD)) {
+            throw new IllegalArgumentException("Shard router requires a '" + DEFAULT_SHARD + "' shard");
+        }
+        this.shards = Collections.unmodifiableMap(new LinkedHashMap<>(shards));
+        this.staticMap = Map.copyOf(staticMap);
+        this.hashUnmapped = hashUnmapped;
+
+        for (String shardName : this.staticMap.values()) {
+            if (!this.shards.containsKey(shardName)) {
+                throw new IllegalArgumentException("Shard map refers to unknown shard: " + shardName);
+            }
+        }
+        for (String shardName : this.shards.keySet()) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(shardName + "#" + i), shardName);
+            }
+        }
+
+        logger.infof("Shard router initialized with shards %s (strategy: %s, static mappings: %d)",
+                this.shards.keySet(), hashUnmapped ? STRATEGY_HASH : "static", this.staticMap.size());
+    }
+
+    /**
+     * Router dengan satu shard saja (perilaku lama sebelum sharding)
+     */
+    public static ShardRouter single(DatabaseService databaseService) {
+        return new ShardRouter(Map.of(DEFAULT_SHARD, databaseService), Map.of(), false);
+    }
+
+    /**
+     * Buat router dari system properties. Shard tambahan dikonfigurasi via:
+     * quarkus.datasource.user-store.shards=shard1,shard2
+     * quarkus.datasource.user-store.shard.shard1.jdbc.url=...
+     * quarkus.datasource.user-store.shard.shard1.username / .password (opsional)
+     * quarkus.datasource.user-store.shard-map=realmA:shard1,realmB:shard2
+     * quarkus.datasource.user-store.shard-strategy=static|hash
+     * Read replica per shard: ...replica.jdbc.url atau ...shard.shard1.replica.jdbc.url
+     */
+    public static ShardRouter fromSystemProperties(DatabaseService defaultShard, String defaultUsername,
+            String defaultPassword, String driverClass) {
+        configureReplica(defaultShard, PROPERTY_PREFIX, defaultUsername, defaultPassword, driverClass);
+
+        String shardNames = System.getProperty(PROPERTY_PREFIX + "shards");
+        if (shardNames == null || shardNames.trim().isEmpty()) {
+            return single(defaultShard);
+        }
+
+        Map<String, DatabaseService> shards = new LinkedHashMap<>();
+        shards.put(DEFAULT_SHARD, defaultShard);
+        try {
+            for (String rawName : shardNames.split(",")) {
+                String shardName = rawName.trim();
+                if (shardName.isEmpty() || shards.containsKey(shardName)) {
+                    continue;
+                }
+                String prefix = PROPERTY_PREFIX + "shard." + shardName + ".";
+                String url = System.getProperty(prefix + "jdbc.url");
+                if (url == null || url.trim().isEmpty()) {
+                    throw new IllegalStateException("Missing JDBC URL for shard: " + shardName);
+                }
+                String username = System.getProperty(prefix + "username", defaultUsername);
+                String password = System.getProperty(prefix + "password", defaultPassword);
+
+                logger.infof("Initializing shard '%s'. URL: %s, Username: %s", shardName, url, username);
+                // Nama pool sendiri per shard supaya pool dan metrics-nya bisa dibedakan
+                DatabaseService shard = new DatabaseService(url, username, password, driverClass,
+                        DatabaseService.DEFAULT_MAXIMUM_POOL_SIZE, defaultShard.getPoolName() + "-" + shardName);
+                shards.put(shardName, shard);
+                configureReplica(shard, prefix, username, password, driverClass);
+            }
+
+            boolean hashUnmapped = STRATEGY_HASH.equalsIgnoreCase(
+                    System.getProperty(PROPERTY_PREFIX + "shard-strategy", "static").trim());
+            return new ShardRouter(shards, parseShardMap(System.getProperty(PROPERTY_PREFIX + "shard-map")),
+                    hashUnmapped);
+        } catch (RuntimeException e) {
+            // Jangan bocorkan pool shard yang sudah terlanjur dibuat
+            shards.forEach((name, service) -> {
+                if (service != defaultShard) {
+                    service.close();
+                }
+            });
+            throw e;
+        }
+    }
+
+    private static void configureReplica(DatabaseService service, String prefix, String defaultUsername,
+            String defaultPassword, String driverClass) {
+        String replicaUrl = System.getProperty(prefix + "replica.jdbc.url");
+        if (replicaUrl == null || replicaUrl.trim().isEmpty()) {
+            return;
+        }
+        try {
+            service.enableReadReplica(replicaUrl,
+                    System.getProperty(prefix + "replica.username", defaultUsername),
+                    System.getProperty(prefix + "replica.password", defaultPassword),
+                    driverClass,
+                    Long.getLong(PROPERTY_PREFIX + "replica.max-lag-ms", 1000L),
+                    Long.getLong(PROPERTY_PREFIX + "replica.lag-check-interval-ms", 5000L));
+        } catch (Exception e) {
+            // Replica bersifat opsional, semua pembacaan tetap ke primary
+            logger.warnf(e, "Failed to initialize read replica %s, reads will use the primary", replicaUrl);
+        }
+    }
+
+    static Map<String, String> parseShardMap(String value) {
+        Map<String, String> mapping = new HashMap<>();
+        if (value == null || value.trim().isEmpty()) {
+            return mapping;
+        }
+        for (String entry : value.split(",")) {
+            int separator = entry.indexOf(':');
+            if (separator <= 0 || separator == entry.length() - 1) {
+                throw new IllegalArgumentException("Invalid shard map entry: " + entry);
+            }
+            mapping.put(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+        }
+        return mapping;
+    }
+
+    public String shardNameFor(String realmId) {
+        String mapped = staticMap.get(realmId);
+        if (mapped != null) {
+            return mapped;
+        }
+        if (!hashUnmapped || realmId == null) {
+            return DEFAULT_SHARD;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(realmId));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public DatabaseService forRealm(String realmId) {
+        return shards.get(shardNameFor(realmId));
+    }
+
+    public DatabaseService getShard(String shardName) {
+        return shards.get(shardName);
+    }
+
+    public Collection<String> getShardNames() {
+        return shards.keySet();
+    }
+
+    public void close() {
+        shards.values().forEach(DatabaseService::close);
+    }
+
+    /**
+     * Lihat DatabaseService.closeGracefully
+     */
+    public void closeGracefully(long drainTimeoutMillis) {
+        shards.values().forEach(shard -> shard.closeGracefully(drainTimeoutMillis));
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package id.co.swamdia.service;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * DataSource untuk Hibernate yang mengukur setiap eksekusi statement dan
+ * meneruskan statement yang melewati threshold ke SlowQueryLog. Parameter
+ * dicatat dari pemanggilan setXxx(index, value) pada PreparedStatement.
+ */
+class SlowQueryDataSource implements DataSource {
+
+    private final DataSource target;
+    private final DataSource explainSource;
+
+    /**
+     * @param explainSource pool tanpa proxy untuk EXPLAIN (lihat SlowQueryLog)
+     */
+    SlowQueryDataSource(DataSource target, DataSource explainSource) {
+        this.target = target;
+        this.explainSource = explainSource;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(target.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(target.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(SlowQueryDataSource.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConnectionHandler(connection));
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return target.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        target.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        target.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return target.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return target.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(target) ? iface.cast(target) : target.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(target) || target.isWrapperFor(iface);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = SlowQueryDataSource.invoke(connection, method, args);
+            if (result instanceof PreparedStatement && "prepareStatement".equals(method.getName())) {
+                return Proxy.newProxyInstance(SlowQueryDataSource.class.getClassLoader(),
+                        new Class<?>[] { PreparedStatement.class },
+                        new StatementHandler((Statement) result, (String) args[0]));
+            }
+            if (result instanceof Statement && "createStatement".equals(method.getName())) {
+                return Proxy.newProxyInstance(SlowQueryDataSource.class.getClassLoader(),
+                        new Class<?>[] { Statement.class }, new StatementHandler((Statement) result, null));
+            }
+            return result;
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String sql;
+        private final List<Object> parameters = new ArrayList<>();
+
+        StatementHandler(Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                long start = System.nanoTime();
+                try {
+                    return SlowQueryDataSource.invoke(statement, method, args);
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    if (elapsed >= SlowQueryLog.getThresholdNanos()) {
+                        // Statement biasa membawa SQL sebagai argumen execute
+                        boolean plain = args != null && args.length > 0 && args[0] instanceof String;
+                        String executed = plain ? (String) args[0] : sql;
+                        if (executed != null) {
+                            SlowQueryLog.record(executed, plain ? List.of() : parameters, elapsed, explainSource);
+                        }
+                    }
+                }
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                int index = (Integer) args[0];
+                Object value = "setNull".equals(name) ? new SlowQueryLog.NullParameter((Integer) args[1]) : args[1];
+                while (parameters.size() < index) {
+                    parameters.add(null);
+                }
+                parameters.set(index - 1, value);
+            } else if ("clearParameters".equals(name)) {
+                parameters.clear();
+            }
+            return SlowQueryDataSource.invoke(statement, method, args);
+        }
+    }
+}
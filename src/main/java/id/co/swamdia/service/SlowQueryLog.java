@@ -0,0 +1,254 @@
+package id.co.swamdia.service;
+
+import org.jboss.logging.Logger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Statement yang lebih lambat dari threshold beserta parameter (disamarkan),
+ * realm dan durasinya. Sebagian (sampling) di-EXPLAIN di background dan
+ * plan-nya disimpan bersama entry. Entry disimpan di ring buffer terbatas
+ * dan bisa dilihat lewat endpoint admin (RoleStoreResource).
+ * <p>
+ * Dibuat static seperti RoleChangeNotifier: setiap factory punya
+ * DatabaseService sendiri, tapi endpoint admin harus melihat semuanya.
+ */
+public final class SlowQueryLog {
+    private static final Logger logger = Logger.getLogger(SlowQueryLog.class);
+
+    private static final String PROPERTY_PREFIX = "quarkus.datasource.user-store.slow-query.";
+    // Literal string di plan PostgreSQL berisi nilai parameter
+    private static final Pattern PLAN_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final int MAX_SQL_LENGTH = 4096;
+
+    // Default nonaktif: selama aktif semua connection/statement lewat proxy reflection
+    private static final long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong(PROPERTY_PREFIX + "threshold-ms", 0L));
+    private static final double explainSampleRate = Double.parseDouble(
+            System.getProperty(PROPERTY_PREFIX + "explain-sample-rate", "0.1"));
+    private static final boolean redactParameters = Boolean.parseBoolean(
+            System.getProperty(PROPERTY_PREFIX + "redact-parameters", "true"));
+    private static final int capacity = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "capacity", 200));
+
+    private static final ThreadLocal<String> currentRealm = new ThreadLocal<>();
+    private static final Entry[] entries = new Entry[capacity];
+    private static long recorded;
+
+    // Satu thread EXPLAIN; kalau antrian penuh, sampel dibuang
+    private static final ThreadPoolExecutor explainExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(16), runnable -> {
+                Thread thread = new Thread(runnable, "role-store-explain");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    static {
+        explainExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private SlowQueryLog() {
+    }
+
+    /**
+     * False kalau threshold-ms tidak diset (atau 0); DataSource tidak dibungkus sama sekali
+     */
+    public static boolean isEnabled() {
+        return thresholdNanos > 0;
+    }
+
+    static long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * Tandai realm untuk statement yang dijalankan thread ini sampai exitRealm
+     *
+     * @return realm sebelumnya, untuk dikembalikan lewat exitRealm
+     */
+    public static String enterRealm(String realmId) {
+        String previous = currentRealm.get();
+        if (realmId != null) {
+            currentRealm.set(realmId);
+        }
+        return previous;
+    }
+
+    public static void exitRealm(String previous) {
+        if (previous == null) {
+            currentRealm.remove();
+        } else {
+            currentRealm.set(previous);
+        }
+    }
+
+    /**
+     * Catat statement lambat. Parameter asli hanya dipakai untuk EXPLAIN dan
+     * tidak disimpan kalau redact-parameters aktif.
+     *
+     * @param explainSource pool tanpa proxy untuk menjalankan EXPLAIN
+     */
+    static void record(String sql, List<Object> parameters, long nanos, DataSource explainSource) {
+        List<String> shown = new ArrayList<>(parameters.size());
+        for (Object parameter : parameters) {
+            shown.add(describe(parameter));
+        }
+        String realmId = currentRealm.get();
+        Entry entry = new Entry(System.currentTimeMillis(), realmId, nanos / 1_000_000.0, truncate(sql), shown);
+        synchronized (entries) {
+            entries[(int) (recorded++ % capacity)] = entry;
+        }
+        logger.warnf("Slow role query in realm %s (%.1f ms): %s %s", realmId, entry.getDurationMillis(),
+                entry.getSql(), shown);
+
+        if (explainSource != null && isExplainable(sql)
+                && ThreadLocalRandom.current().nextDouble() < explainSampleRate) {
+            List<Object> bound = new ArrayList<>(parameters);
+            explainExecutor.execute(() -> explain(entry, sql, bound, explainSource));
+        }
+    }
+
+    /**
+     * Entry terbaru lebih dulu
+     *
+     * @param realmId null untuk semua realm
+     */
+    public static List<Entry> getEntries(String realmId) {
+        List<Entry> result = new ArrayList<>();
+        synchronized (entries) {
+            long first = Math.max(0, recorded - capacity);
+            for (long i = recorded - 1; i >= first; i--) {
+                Entry entry = entries[(int) (i % capacity)];
+                if (realmId == null || realmId.equals(entry.getRealm())) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    public static void clear() {
+        synchronized (entries) {
+            Arrays.fill(entries, null);
+            recorded = 0;
+        }
+    }
+
+    private static void explain(Entry entry, String sql, List<Object> parameters, DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN (ANALYZE off) " + sql)) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    Object parameter = parameters.get(i);
+                    if (parameter instanceof NullParameter) {
+                        statement.setNull(i + 1, ((NullParameter) parameter).sqlType);
+                    } else {
+                        statement.setObject(i + 1, parameter);
+                    }
+                }
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        plan.append(resultSet.getString(1)).append('\n');
+                    }
+                }
+                String text = plan.toString();
+                entry.plan = redactParameters ? PLAN_LITERAL.matcher(text).replaceAll("'?'") : text;
+            } finally {
+                connection.rollback();
+            }
+        } catch (Exception e) {
+            entry.plan = "EXPLAIN failed: " + e.getMessage();
+            logger.debugf("EXPLAIN for slow role query failed: %s", e.getMessage());
+        }
+    }
+
+    private static boolean isExplainable(String sql) {
+        String start = sql.stripLeading().toLowerCase(Locale.ROOT);
+        return start.startsWith("select") || start.startsWith("with") || start.startsWith("update")
+                || start.startsWith("delete") || start.startsWith("insert");
+    }
+
+    private static String describe(Object parameter) {
+        if (parameter == null || parameter instanceof NullParameter) {
+            return "null";
+        }
+        if (!redactParameters) {
+            return String.valueOf(parameter);
+        }
+        if (parameter instanceof CharSequence) {
+            return "<string:" + ((CharSequence) parameter).length() + ">";
+        }
+        return "<" + parameter.getClass().getSimpleName() + ">";
+    }
+
+    private static String truncate(String sql) {
+        return sql.length() > MAX_SQL_LENGTH ? sql.substring(0, MAX_SQL_LENGTH) + "..." : sql;
+    }
+
+    /**
+     * Parameter yang di-set dengan setNull (tipe SQL dibutuhkan untuk EXPLAIN)
+     */
+    static final class NullParameter {
+        private final int sqlType;
+
+        NullParameter(int sqlType) {
+            this.sqlType = sqlType;
+        }
+    }
+
+    public static final class Entry {
+        private final long timestamp;
+        private final String realm;
+        private final double durationMillis;
+        private final String sql;
+        private final List<String> parameters;
+        private volatile String plan;
+
+        private Entry(long timestamp, String realm, double durationMillis, String sql, List<String> parameters) {
+            this.timestamp = timestamp;
+            this.realm = realm;
+            this.durationMillis = durationMillis;
+            this.sql = sql;
+            this.parameters = Collections.unmodifiableList(parameters);
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getRealm() {
+            return realm;
+        }
+
+        public double getDurationMillis() {
+            return durationMillis;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public List<String> getParameters() {
+            return parameters;
+        }
+
+        /**
+         * Plan EXPLAIN, null kalau tidak masuk sampel (atau belum selesai)
+         */
+        public String getPlan() {
+            return plan;
+        }
+    }
+}
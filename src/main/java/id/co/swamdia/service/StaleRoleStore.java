@@ -0,0 +1,211 @@
+package id.co.swamdia.service;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.repository.RoleChangeListener;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Menyimpan hasil query terakhir yang berhasil (salinan entity) supaya
+ * lookup masih bisa dijawab saat database lambat/mati dan circuit breaker OPEN.
+ * Dibatasi jumlah entry (kira-kira LRU) dan ukuran list yang disimpan.
+ * Tanpa lock global: lookup yang sering hanya disalin ke store kalau entry-nya
+ * belum ada atau sudah lebih lama dari REFRESH_MILLIS.
+ * <p>
+ * Terdaftar di RoleChangeNotifier supaya role yang diubah, dihapus atau
+ * di-purge lewat DatabaseService manapun ikut dibuang.
+ */
+public class StaleRoleStore implements RoleChangeListener {
+    private static final Logger logger = Logger.getLogger(StaleRoleStore.class);
+
+    private static final long REFRESH_MILLIS = 1000L;
+
+    private final int maxEntries;
+    private final int maxListSize;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    private final AtomicLong staleResponses = new AtomicLong();
+
+    private static final class Entry {
+        final List<CustomRoleEntity> roles;
+        final long storedAt = System.currentTimeMillis();
+        volatile long lastAccess = storedAt;
+
+        Entry(List<CustomRoleEntity> roles) {
+            this.roles = roles;
+        }
+    }
+
+    public StaleRoleStore(int maxEntries, int maxListSize) {
+        this.maxEntries = maxEntries;
+        this.maxListSize = maxListSize;
+    }
+
+    // Key entry; dipakai repository saat menyimpan dan di sini saat membuang entry
+
+    public static String idKey(String id) {
+        return "id:" + id;
+    }
+
+    public static String nameKey(String realmId, String clientId, String name) {
+        return clientId == null ? "name:" + realmId + "/" + name : "name:" + realmId + "/" + clientId + "/" + name;
+    }
+
+    public static String realmViewsKey(String realmId) {
+        return "view:realm:" + realmId;
+    }
+
+    public static String clientKey(String realmId, String clientId) {
+        return "client:" + realmId + "/" + clientId;
+    }
+
+    public static String searchViewsKey(String realmId, String searchTerm) {
+        return "view:search:" + realmId + "/" + searchTerm;
+    }
+
+    /**
+     * False kalau entry untuk key ini baru saja disimpan; pemanggil tidak perlu
+     * menyalin hasil query lagi
+     */
+    public boolean shouldRecord(String key) {
+        Entry entry = entries.get(key);
+        return entry == null || System.currentTimeMillis() - entry.storedAt >= REFRESH_MILLIS;
+    }
+
+    public void putOne(String key, Optional<CustomRoleEntity> role) {
+        put(key, role.map(entity -> List.of(entity.copy())).orElse(List.of()));
+    }
+
+    public void putList(String key, List<CustomRoleEntity> roles) {
+        if (roles.size() > maxListSize) {
+            // Listing besar tidak disimpan supaya memory tetap terkendali
+            entries.remove(key);
+            return;
+        }
+        List<CustomRoleEntity> copies = new ArrayList<>(roles.size());
+        for (CustomRoleEntity role : roles) {
+            copies.add(role.copy());
+        }
+        put(key, copies);
+    }
+
+    public Optional<Optional<CustomRoleEntity>> getOne(String key) {
+        return get(key).map(roles -> roles.isEmpty() ? Optional.empty() : Optional.of(roles.get(0).copy()));
+    }
+
+    public Optional<List<CustomRoleEntity>> getList(String key) {
+        return get(key).map(roles -> {
+            List<CustomRoleEntity> copies = new ArrayList<>(roles.size());
+            for (CustomRoleEntity role : roles) {
+                copies.add(role.copy());
+            }
+            return copies;
+        });
+    }
+
+    private void put(String key, List<CustomRoleEntity> roles) {
+        entries.put(key, new Entry(roles));
+        if (entries.size() > maxEntries) {
+            trim();
+        }
+    }
+
+    /**
+     * Buang entry yang paling lama tidak dipakai sampai 90% kapasitas; hanya
+     * satu thread yang membuang, thread lain langsung lanjut
+     */
+    private void trim() {
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int excess = entries.size() - maxEntries * 9 / 10;
+            if (excess <= 0) {
+                return;
+            }
+            // Batas waktu akses dari salinan nilai, karena lastAccess terus berubah
+            long[] accesses = entries.values().stream().mapToLong(entry -> entry.lastAccess).sorted().toArray();
+            long cutoff = accesses[Math.min(excess, accesses.length) - 1];
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                if (excess <= 0) {
+                    break;
+                }
+                Entry entry = candidate.getValue();
+                if (entry.lastAccess <= cutoff && entries.remove(candidate.getKey(), entry)) {
+                    excess--;
+                }
+            }
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    private Optional<List<CustomRoleEntity>> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        List<CustomRoleEntity> roles = entry.roles;
+        long served = staleResponses.incrementAndGet();
+        if (served == 1 || served % 100 == 0) {
+            logger.warnf("Serving stale role data from memory (stale responses served: %d)", served);
+        }
+        return Optional.of(roles);
+    }
+
+    /**
+     * Buang entry yang berisi role dari realm (clientId null) atau client yang
+     * sudah dihapus, supaya tidak dilayani lagi saat database tidak tersedia
+     */
+    private void evict(String realmId, String clientId) {
+        entries.values().removeIf(entry -> entry.roles.stream().anyMatch(role -> realmId.equals(role.getRealmId())
+                && (clientId == null || clientId.equals(role.getClientId()))));
+    }
+
+    /**
+     * Buang entry yang berisi role ini (by ID, nama lama, listing) dan lookup
+     * nama barunya, supaya role yang dihapus atau di-rename sebelum database
+     * mati tidak dilayani dengan state lama
+     */
+    private void evict(CustomRoleEntity role, boolean created) {
+        entries.values().removeIf(entry -> entry.roles.stream()
+                .anyMatch(stored -> role.getId().equals(stored.getId())));
+        entries.remove(nameKey(role.getRealmId(), role.getClientId(), role.getName()));
+        if (created) {
+            // Listing dan hasil search realm ini belum memuat role baru
+            entries.remove(role.getClientId() == null
+                    ? realmViewsKey(role.getRealmId())
+                    : clientKey(role.getRealmId(), role.getClientId()));
+            String searchPrefix = searchViewsKey(role.getRealmId(), "");
+            entries.keySet().removeIf(key -> key.startsWith(searchPrefix));
+        }
+    }
+
+    @Override
+    public void onRoleSaved(CustomRoleEntity role, boolean created) {
+        evict(role, created);
+    }
+
+    @Override
+    public void onRoleDeleted(CustomRoleEntity role) {
+        evict(role, false);
+    }
+
+    @Override
+    public void onRolesPurged(String realmId, String clientId) {
+        evict(realmId, clientId);
+    }
+
+    public long getStaleResponses() {
+        return staleResponses.get();
+    }
+}
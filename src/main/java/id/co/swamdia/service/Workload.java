@@ -0,0 +1,14 @@
+package id.co.swamdia.service;
+
+/**
+ * Kelas beban kerja operasi repository. Menentukan lane pool yang dipakai
+ * (DatabaseService) dan bobotnya di kuota realm (RealmAdmission).
+ */
+public enum Workload {
+    /** Lookup satu role (per ID/nama) di jalur token dan login */
+    LOOKUP,
+    /** Listing, search, count, export dan pembangunan index */
+    SCAN,
+    /** Save/upsert/delete, termasuk sinkronisasi dari RoleEventListener */
+    WRITE
+}
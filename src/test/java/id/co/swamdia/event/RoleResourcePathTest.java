@@ -0,0 +1,77 @@
+package id.co.swamdia.event;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoleResourcePathTest {
+
+    @Test
+    void parsesRealmRole() {
+        RoleResourcePath path = RoleResourcePath.parse("roles/admin");
+
+        assertNotNull(path);
+        assertNull(path.getClientId());
+        assertEquals("admin", path.getRoleName());
+        assertNull(path.getRoleId());
+        assertFalse(path.isById());
+    }
+
+    @Test
+    void parsesRealmRoleWithRealmPrefix() {
+        RoleResourcePath path = RoleResourcePath.parse("/realms/demo/roles/admin");
+
+        assertNotNull(path);
+        assertNull(path.getClientId());
+        assertEquals("admin", path.getRoleName());
+    }
+
+    @Test
+    void parsesClientRole() {
+        RoleResourcePath path = RoleResourcePath.parse("realms/demo/clients/3f2a-91c0/roles/viewer");
+
+        assertNotNull(path);
+        assertEquals("3f2a-91c0", path.getClientId());
+        assertEquals("viewer", path.getRoleName());
+        assertFalse(path.isById());
+    }
+
+    @Test
+    void parsesRoleById() {
+        RoleResourcePath path = RoleResourcePath.parse("/realms/demo/roles-by-id/7c1e-42");
+
+        assertNotNull(path);
+        assertTrue(path.isById());
+        assertEquals("7c1e-42", path.getRoleId());
+        assertNull(path.getRoleName());
+        assertNull(path.getClientId());
+    }
+
+    @Test
+    void acceptsTrailingSlash() {
+        assertEquals("admin", RoleResourcePath.parse("roles/admin/").getRoleName());
+        assertEquals("7c1e-42", RoleResourcePath.parse("roles-by-id/7c1e-42/").getRoleId());
+    }
+
+    @Test
+    void rejectsSubResources() {
+        assertNull(RoleResourcePath.parse("roles/admin/composites"));
+        assertNull(RoleResourcePath.parse("/realms/demo/clients/3f2a/roles/viewer/composites"));
+        assertNull(RoleResourcePath.parse("roles-by-id/7c1e-42/composites"));
+    }
+
+    @Test
+    void rejectsOtherOrIncompletePaths() {
+        assertNull(RoleResourcePath.parse(null));
+        assertNull(RoleResourcePath.parse("users/1234"));
+        assertNull(RoleResourcePath.parse("/realms/demo"));
+        assertNull(RoleResourcePath.parse("roles/"));
+        assertNull(RoleResourcePath.parse("roles-by-id/"));
+        assertNull(RoleResourcePath.parse("clients//roles/viewer"));
+        assertNull(RoleResourcePath.parse("clients/3f2a/groups/viewer"));
+    }
+}
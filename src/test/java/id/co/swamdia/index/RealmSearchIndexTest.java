@@ -0,0 +1,74 @@
+package id.co.swamdia.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RealmSearchIndexTest {
+
+    private final RealmSearchIndex index = new RealmSearchIndex(List.of(
+            new RealmSearchIndex.Entry("1", "sysadmin", null, null),
+            new RealmSearchIndex.Entry("2", "Admin", "Full access", null),
+            new RealmSearchIndex.Entry("3", "app-admin", null, "client-a"),
+            new RealmSearchIndex.Entry("4", "viewer", "Read-only access to billing", null),
+            new RealmSearchIndex.Entry("5", "auditor", "Reviews admin activity", null)));
+
+    @Test
+    void prefixMatchesComeFirst() {
+        // "admin" di deskripsi role 5 juga diawali batas kata
+        assertEquals(List.of("Admin", "app-admin", "auditor", "sysadmin"), names(index.search("admin")));
+    }
+
+    @Test
+    void matchesNameSubstringCaseInsensitive() {
+        assertEquals(List.of("Admin", "app-admin", "auditor", "sysadmin"),
+                names(index.search(RealmSearchIndex.normalize("ADMIN"))));
+        assertEquals(List.of("sysadmin"), names(index.search("sad")));
+    }
+
+    @Test
+    void shortTermScansAllNames() {
+        assertEquals(List.of("Admin", "app-admin", "sysadmin"), names(index.search("dm")));
+    }
+
+    @Test
+    void missingTrigramMatchesNothing() {
+        assertTrue(index.search("adminx").isEmpty());
+    }
+
+    @Test
+    void matchesDescriptionOnlyAtWordStart() {
+        assertEquals(List.of("viewer"), names(index.search("bill")));
+        assertEquals(List.of("viewer"), names(index.search("only access")));
+        assertTrue(index.search("illing").isEmpty());
+    }
+
+    @Test
+    void matchesAgreesWithSearch() {
+        RealmSearchIndex.Entry viewer = new RealmSearchIndex.Entry("4", "viewer", "Read-only access to billing", null);
+
+        assertTrue(RealmSearchIndex.matches(viewer, "view"));
+        assertTrue(RealmSearchIndex.matches(viewer, "bill"));
+        assertFalse(RealmSearchIndex.matches(viewer, "illing"));
+    }
+
+    @Test
+    void prefixReturnsSortedRange() {
+        assertEquals(List.of("Admin", "app-admin", "auditor"), names(index.prefix("a")));
+        assertEquals(List.of("app-admin"), names(index.prefix("ap")));
+        assertTrue(index.prefix("z").isEmpty());
+    }
+
+    private static List<String> names(List<RealmSearchIndex.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (RealmSearchIndex.Entry entry : entries) {
+            names.add(entry.name);
+        }
+        return names;
+    }
+}
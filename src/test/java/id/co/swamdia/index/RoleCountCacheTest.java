@@ -0,0 +1,157 @@
+package id.co.swamdia.index;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoleCountCacheTest {
+
+    private static final String REALM = "realm-1";
+
+    private final RoleCountCache cache = new RoleCountCache(8, 100, 60000L);
+
+    @Test
+    void cachesCountUntilRefresh() {
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(10, cache.count(REALM, null, counting(loads, 10)));
+        assertEquals(10, cache.count(REALM, null, counting(loads, 99)));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void createAndDeleteAdjustTotalsInScope() {
+        cache.count(REALM, null, () -> 10);
+        cache.count(REALM, "client-a", () -> 4);
+
+        cache.onRoleSaved(role("1", "admin", null, null), true);
+        cache.onRoleSaved(role("2", "viewer", null, "client-a"), true);
+        cache.onRoleDeleted(role("3", "auditor", null, "client-a"));
+
+        assertEquals(11, cache.count(REALM, null, failing()));
+        assertEquals(4, cache.count(REALM, "client-a", failing()));
+    }
+
+    @Test
+    void createAdjustsOnlyMatchingSearchCounts() {
+        cache.countSearch(REALM, null, "ADM", () -> 3);
+        cache.countSearch(REALM, null, "view", () -> 5);
+        cache.countSearch(REALM, "client-a", "adm", () -> 1);
+
+        cache.onRoleSaved(role("1", "sysadmin", null, null), true);
+        cache.onRoleSaved(role("2", "reader", "View-only access", null), true);
+
+        assertEquals(4, cache.countSearch(REALM, null, "adm", failing()));
+        assertEquals(6, cache.countSearch(REALM, null, "view", failing()));
+        // Realm role bukan bagian dari count client-a
+        assertEquals(1, cache.countSearch(REALM, "client-a", "adm", failing()));
+
+        cache.onRoleDeleted(role("1", "sysadmin", null, null));
+
+        assertEquals(3, cache.countSearch(REALM, null, "adm", failing()));
+    }
+
+    @Test
+    void updateClearsSearchCountsButKeepsTotals() {
+        AtomicInteger loads = new AtomicInteger();
+        cache.count(REALM, null, () -> 10);
+        cache.countSearch(REALM, null, "adm", counting(loads, 3));
+
+        // Rename: nama lama tidak diketahui, jadi count search dihitung ulang
+        cache.onRoleSaved(role("1", "viewer", null, null), false);
+
+        assertEquals(10, cache.count(REALM, null, failing()));
+        assertEquals(2, cache.countSearch(REALM, null, "adm", counting(loads, 2)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void countLoadedAcrossVersionBumpIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        LongSupplier racingLoader = () -> {
+            loads.incrementAndGet();
+            // Role dibuat (dan adjustment dijalankan) selama COUNT berjalan
+            cache.onRoleSaved(role("1", "admin", null, null), true);
+            return 10;
+        };
+
+        assertEquals(10, cache.count(REALM, null, racingLoader));
+        assertEquals(11, cache.count(REALM, null, counting(loads, 11)));
+        assertEquals(2, loads.get());
+        assertEquals(11, cache.count(REALM, null, failing()));
+    }
+
+    @Test
+    void searchCountLoadedAcrossDeleteIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        LongSupplier racingLoader = () -> {
+            loads.incrementAndGet();
+            cache.onRoleDeleted(role("1", "admin", null, null));
+            return 3;
+        };
+
+        assertEquals(3, cache.countSearch(REALM, null, "adm", racingLoader));
+        assertEquals(2, cache.countSearch(REALM, null, "adm", counting(loads, 2)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void failedLoadIsReturnedAndNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(-1, cache.count(REALM, null, counting(loads, -1)));
+        assertEquals(7, cache.count(REALM, null, counting(loads, 7)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void longOrWildcardTermsAreNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.countSearch(REALM, null, "administrator", counting(loads, 1));
+        cache.countSearch(REALM, null, "administrator", counting(loads, 1));
+        cache.countSearch(REALM, null, "ad%n", counting(loads, 1));
+        cache.countSearch(REALM, null, "ad%n", counting(loads, 1));
+
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void invalidateDropsRealm() {
+        AtomicInteger loads = new AtomicInteger();
+        cache.count(REALM, null, counting(loads, 10));
+
+        cache.invalidate(REALM);
+
+        assertEquals(12, cache.count(REALM, null, counting(loads, 12)));
+        assertEquals(2, loads.get());
+    }
+
+    private static LongSupplier counting(AtomicInteger loads, long value) {
+        return () -> {
+            loads.incrementAndGet();
+            return value;
+        };
+    }
+
+    private static LongSupplier failing() {
+        return () -> {
+            throw new AssertionError("count should be served from cache");
+        };
+    }
+
+    private static CustomRoleEntity role(String id, String name, String description, String clientId) {
+        CustomRoleEntity role = new CustomRoleEntity();
+        role.setId(id);
+        role.setName(name);
+        role.setDescription(description);
+        role.setRealmId(REALM);
+        role.setClientId(clientId);
+        return role;
+    }
+}
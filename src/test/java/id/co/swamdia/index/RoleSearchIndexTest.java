@@ -0,0 +1,83 @@
+package id.co.swamdia.index;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.repository.CustomRoleRepository.RoleRowConsumer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoleSearchIndexTest {
+
+    private static final String REALM = "realm-1";
+
+    private final RoleSearchIndex index = new RoleSearchIndex(60000L);
+    private final AtomicInteger scans = new AtomicInteger();
+    private final Consumer<RoleRowConsumer> scanner = consumer -> {
+        scans.incrementAndGet();
+        consumer.accept("1", "admin", null, null);
+        consumer.accept("2", "app-admin", null, "client-a");
+        consumer.accept("3", "viewer", "Read-only access", null);
+    };
+
+    @Test
+    void buildsOnceAndPaginates() {
+        assertEquals(List.of("admin", "app-admin"), names(index.search(REALM, "ADM", scanner)));
+        assertEquals(List.of("app-admin"), names(index.searchPage(REALM, "adm", 1, 1, scanner)));
+        assertEquals(1, scans.get());
+
+        CustomRoleEntity clientRole = index.search(REALM, "app", scanner).get(0);
+        assertEquals(REALM, clientRole.getRealmId());
+        assertEquals("client-a", clientRole.getClientId());
+    }
+
+    @Test
+    void writesAreVisibleWithoutRescan() {
+        index.search(REALM, "adm", scanner);
+
+        index.onRoleSaved(role("4", "sysadmin", null), true);
+        // Rename keluar dari term
+        index.onRoleSaved(role("1", "owner", null), false);
+        // Deskripsi baru cocok di awal kata
+        index.onRoleSaved(role("3", "viewer", "Admin dashboards, read-only"), false);
+
+        assertEquals(List.of("app-admin", "sysadmin", "viewer"), names(index.search(REALM, "adm", scanner)));
+
+        index.onRoleDeleted(role("4", "sysadmin", null));
+
+        assertEquals(List.of("app-admin", "viewer"), names(index.search(REALM, "adm", scanner)));
+        assertEquals(1, scans.get());
+    }
+
+    @Test
+    void purgeRebuildsFromScanner() {
+        index.search(REALM, "adm", scanner);
+
+        index.onRolesPurged(REALM, "client-a");
+        index.search(REALM, "adm", scanner);
+
+        assertEquals(2, scans.get());
+    }
+
+    private static List<String> names(List<CustomRoleEntity> roles) {
+        List<String> names = new ArrayList<>();
+        for (CustomRoleEntity role : roles) {
+            names.add(role.getName());
+        }
+        return names;
+    }
+
+    private static CustomRoleEntity role(String id, String name, String description) {
+        CustomRoleEntity role = new CustomRoleEntity();
+        role.setId(id);
+        role.setName(name);
+        role.setDescription(description);
+        role.setRealmId(REALM);
+        return role;
+    }
+}
@@ -0,0 +1,223 @@
+package id.co.swamdia.index;
+
+import id.co.swamdia.entity.CustomRoleEntity;
+import id.co.swamdia.entity.RoleView;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoleSearchResultCacheTest {
+
+    private static final String REALM = "realm-1";
+
+    private final RoleSearchResultCache cache = new RoleSearchResultCache(1000, 100, 60000L);
+    // Isi "database" untuk loader dan resolver
+    private final Map<String, RoleView> roles = new LinkedHashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void servesPagesFromCachedIds() {
+        store("1", "admin", null);
+        store("2", "app-admin", null);
+        store("3", "sysadmin", null);
+
+        assertEquals(List.of("1", "2"), ids(search(RoleSearchResultCache.Scope.allRoles(), "Admin", 0, 2)));
+        assertEquals(List.of("3"), ids(search(RoleSearchResultCache.Scope.allRoles(), "admin", 2, 2)));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void updateThatKeepsMembershipKeepsEntry() {
+        store("1", "admin", null);
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+
+        cache.onRoleSaved(role("1", "admin", "Administrators", null), false);
+        cache.onRoleSaved(role("2", "viewer", null, null), false);
+
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+        assertEquals(1, loads.get());
+        assertEquals(0, cache.getInvalidations());
+    }
+
+    @Test
+    void renameOutOfTermInvalidates() {
+        store("1", "admin", null);
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+
+        store("1", "viewer", null);
+        cache.onRoleSaved(role("1", "viewer", null, null), false);
+
+        assertTrue(search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null).isEmpty());
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test
+    void renameIntoTermInvalidates() {
+        store("1", "admin", null);
+        store("2", "viewer", null);
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+
+        store("2", "sysadmin", null);
+        cache.onRoleSaved(role("2", "sysadmin", null, null), false);
+
+        assertEquals(List.of("1", "2"), ids(search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void descriptionChangeIntoTermInvalidates() {
+        store("1", "admin", null);
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+
+        cache.onRoleSaved(role("2", "viewer", "Read-only admin", null), false);
+
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void createInvalidatesOnlyMatchingScope() {
+        store("1", "admin", null);
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+        search(RoleSearchResultCache.Scope.clientRoles(), "adm", null, null);
+        search(RoleSearchResultCache.Scope.clients(List.of("client-a")), "adm", null, null);
+        assertEquals(3, loads.get());
+
+        // Client role baru di client-b: entry allRoles dan clientRoles terpengaruh, client-a tidak
+        cache.onRoleSaved(role("2", "admin", null, "client-b"), true);
+        // Role baru yang tidak cocok dengan term tidak mengubah apa pun
+        cache.onRoleSaved(role("3", "viewer", null, null), true);
+        assertEquals(2, cache.getInvalidations());
+
+        search(RoleSearchResultCache.Scope.clients(List.of("client-a")), "adm", null, null);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void deleteInvalidatesEntriesContainingRole() {
+        store("1", "admin", null);
+        store("2", "viewer", null);
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+        search(RoleSearchResultCache.Scope.allRoles(), "view", null, null);
+
+        roles.remove("1");
+        cache.onRoleDeleted(role("1", "admin", null, null));
+
+        assertTrue(search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null).isEmpty());
+        search(RoleSearchResultCache.Scope.allRoles(), "view", null, null);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void roleDeletedElsewhereDropsEntry() {
+        store("1", "admin", null);
+        store("2", "sysadmin", null);
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+
+        // Dihapus di node lain: tidak ada event di node ini
+        roles.remove("1");
+
+        assertEquals(List.of("2"), ids(search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null)));
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void resultLoadedAcrossWriteIsNotCached() {
+        store("1", "admin", null);
+        Supplier<List<RoleView>> racingLoader = () -> {
+            List<RoleView> results = load("adm");
+            // Write di realm yang sama selama search berjalan
+            cache.onRoleSaved(role("2", "viewer", null, null), false);
+            return results;
+        };
+
+        cache.getPage(REALM, RoleSearchResultCache.Scope.allRoles(), "adm", null, null, racingLoader, this::resolve);
+        search(RoleSearchResultCache.Scope.allRoles(), "adm", null, null);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void oversizedResultIsNotCached() {
+        RoleSearchResultCache small = new RoleSearchResultCache(1000, 2, 60000L);
+        store("1", "admin", null);
+        store("2", "sysadmin", null);
+
+        small.getPage(REALM, RoleSearchResultCache.Scope.allRoles(), "adm", null, null, () -> load("adm"), this::resolve);
+        small.getPage(REALM, RoleSearchResultCache.Scope.allRoles(), "adm", null, null, () -> load("adm"), this::resolve);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void wildcardTermsAreNotCacheable() {
+        assertTrue(RoleSearchResultCache.isCacheable("admin"));
+        assertFalse(RoleSearchResultCache.isCacheable("ad%"));
+        assertFalse(RoleSearchResultCache.isCacheable("ad_min"));
+        assertFalse(RoleSearchResultCache.isCacheable("ad\\min"));
+        assertFalse(RoleSearchResultCache.isCacheable(null));
+    }
+
+    private List<RoleView> search(RoleSearchResultCache.Scope scope, String term, Integer first, Integer max) {
+        return cache.getPage(REALM, scope, term, first, max, () -> load(term), this::resolve);
+    }
+
+    private List<RoleView> load(String term) {
+        loads.incrementAndGet();
+        String normalized = term.toLowerCase();
+        List<RoleView> results = new ArrayList<>();
+        for (RoleView view : roles.values()) {
+            if (view.getName().contains(normalized)) {
+                results.add(view);
+            }
+        }
+        return results;
+    }
+
+    private List<RoleView> resolve(List<String> ids) {
+        List<RoleView> results = new ArrayList<>();
+        for (String id : ids) {
+            if (roles.containsKey(id)) {
+                results.add(roles.get(id));
+            }
+        }
+        return results;
+    }
+
+    private void store(String id, String name, String clientId) {
+        roles.put(id, new RoleView(id, name, REALM, clientId));
+    }
+
+    private static List<String> ids(List<RoleView> views) {
+        List<String> ids = new ArrayList<>();
+        for (RoleView view : views) {
+            ids.add(view.getId());
+        }
+        return ids;
+    }
+
+    private static CustomRoleEntity role(String id, String name, String description, String clientId) {
+        CustomRoleEntity role = new CustomRoleEntity();
+        role.setId(id);
+        role.setName(name);
+        role.setDescription(description);
+        role.setRealmId(REALM);
+        role.setClientId(clientId);
+        return role;
+    }
+}